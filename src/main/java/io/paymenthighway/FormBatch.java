@@ -0,0 +1,192 @@
+package io.paymenthighway;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Generates signed payment forms for a large number of payments in parallel, e.g. for payment links sent by email
+ * or printed on invoices.
+ * <p/>
+ * The payments are read from an iterator and each form is handed to a {@link Sink} as soon as it is signed, so
+ * only a bounded number of payments is in memory at any time. The form timestamps come from the clock of the
+ * FormBuilder, which formats each second only once, and every worker thread signs with its own Mac.
+ */
+public class FormBatch {
+
+  private static final int IN_FLIGHT_PER_THREAD = 64;
+
+  private final FormPlan plan;
+  private final ExecutorService executor;
+  private final int threads;
+  private final int maxInFlight;
+
+  /**
+   * Payment to generate a form for
+   */
+  public static class Payment {
+    private final String amount;
+    private final String currency;
+    private final String orderId;
+    private final String description;
+
+    /**
+     * @param amount The amount to pay.
+     * @param currency In which currency is the amount, e.g. "EUR"
+     * @param orderId A generated order ID, may for example be always unique or used multiple times for recurring transactions.
+     * @param description Description of the payment shown in the form.
+     */
+    public Payment(String amount, String currency, String orderId, String description) {
+      this.amount = amount;
+      this.currency = currency;
+      this.orderId = orderId;
+      this.description = description;
+    }
+
+    public String getAmount() {
+      return amount;
+    }
+
+    public String getCurrency() {
+      return currency;
+    }
+
+    public String getOrderId() {
+      return orderId;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+  }
+
+  /**
+   * Receives the generated forms. Calls to a sink are never concurrent, but they come from the worker threads
+   * and not in the order of the payments.
+   */
+  public interface Sink {
+    /**
+     * @param payment The payment
+     * @param form The signed form of the payment, see {@link FormContainer#getUrl()} for a link to the form
+     * @throws IOException to stop the batch
+     */
+    void accept(Payment payment, FormContainer form) throws IOException;
+  }
+
+  /**
+   * Generate the forms using one thread per available processor
+   *
+   * @param plan A plan of a Payment, Add Card and Pay or MobilePay form
+   */
+  public FormBatch(FormPlan plan) {
+    this(plan, null, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param plan A plan of a Payment, Add Card and Pay or MobilePay form
+   * @param executor The executor to generate the forms in, or null to create a pool of the given size for each run
+   * @param threads The number of threads the executor runs the batch with
+   */
+  public FormBatch(FormPlan plan, ExecutorService executor, int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    plan.requirePaymentParameters();
+
+    this.plan = plan;
+    this.executor = executor;
+    this.threads = threads;
+    this.maxInFlight = threads * IN_FLIGHT_PER_THREAD;
+  }
+
+  /**
+   * Generate a form for each payment. Stops at the first error.
+   *
+   * @param payments The payments
+   * @param sink Receives the forms
+   * @return The number of forms generated
+   * @throws IOException if the sink failed
+   * @throws InterruptedException
+   */
+  public long generate(Iterator<Payment> payments, Sink sink) throws IOException, InterruptedException {
+    ExecutorService pool = this.executor != null ? this.executor : Executors.newFixedThreadPool(threads);
+    try {
+      return generate(pool, payments, sink);
+    } finally {
+      if (pool != this.executor) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  /**
+   * Generate a form for each payment. Stops at the first error.
+   *
+   * @param payments The payments
+   * @param sink Receives the forms
+   * @return The number of forms generated
+   * @throws IOException if the sink failed
+   * @throws InterruptedException
+   */
+  public long generate(Iterable<Payment> payments, Sink sink) throws IOException, InterruptedException {
+    return generate(payments.iterator(), sink);
+  }
+
+  private long generate(ExecutorService pool, Iterator<Payment> payments, final Sink sink)
+      throws IOException, InterruptedException {
+
+    final Semaphore inFlight = new Semaphore(maxInFlight);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    final AtomicLong generated = new AtomicLong();
+
+    try {
+      while (failure.get() == null && payments.hasNext()) {
+        final Payment payment = payments.next();
+        inFlight.acquire();
+        try {
+          pool.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                if (failure.get() == null) {
+                  FormContainer form = plan.generate(payment.getAmount(), payment.getCurrency(),
+                      payment.getOrderId(), payment.getDescription());
+                  synchronized (sink) {
+                    sink.accept(payment, form);
+                  }
+                  generated.incrementAndGet();
+                }
+              } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+              } finally {
+                inFlight.release();
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          inFlight.release();
+          throw e;
+        }
+      }
+    } finally {
+      // wait for the submitted forms
+      inFlight.acquireUninterruptibly(maxInFlight);
+      inFlight.release(maxInFlight);
+    }
+
+    Throwable t = failure.get();
+    if (t instanceof IOException) {
+      throw (IOException) t;
+    } else if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+    return generated.get();
+  }
+}
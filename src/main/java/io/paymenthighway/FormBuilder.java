@@ -1,11 +1,11 @@
 package io.paymenthighway;
 
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.clock.UtcClock;
+import io.paymenthighway.id.BufferedRequestIdGenerator;
+import io.paymenthighway.id.RequestIdGenerator;
 import io.paymenthighway.security.SecureSigner;
-import org.apache.http.NameValuePair;
-import org.apache.http.message.BasicNameValuePair;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.UUID;
 
 /**
@@ -17,26 +17,12 @@ import java.util.UUID;
 public class FormBuilder {
 
   private final static String METHOD_POST = "POST";
-  private final static String SPH_API_VERSION = "sph-api-version";
-  private final static String SPH_ACCEPT_CVC_REQUIRED = "sph-accept-cvc-required";
-  private final static String SPH_ACCOUNT = "sph-account";
-  private final static String SPH_MERCHANT = "sph-merchant";
-  private final static String SPH_AMOUNT = "sph-amount";
-  private final static String SPH_CURRENCY = "sph-currency";
-  private final static String SPH_ORDER = "sph-order";
-  private final static String SPH_SUCCESS_URL = "sph-success-url";
-  private final static String SPH_FAILURE_URL = "sph-failure-url";
-  private final static String SPH_CANCEL_URL = "sph-cancel-url";
-  private final static String SPH_REQUEST_ID = "sph-request-id";
-  private final static String SPH_TIMESTAMP = "sph-timestamp";
-  private final static String SPH_TOKEN = "sph-token";
-  private final static String SPH_SKIP_FORM_NOTIFICATIONS = "sph-skip-form-notifications";
-  private final static String SPH_EXIT_IFRAME_ON_RESULT = "sph-exit-iframe-on-result";
-  private final static String SPH_EXIT_IFRAME_ON_THREE_D_SECURE = "sph-exit-iframe-on-three-d-secure";
-  private final static String SPH_USE_THREE_D_SECURE = "sph-use-three-d-secure";
-  private final static String LANGUAGE = "language";
-  private final static String DESCRIPTION = "description";
-  private final static String SIGNATURE = "signature";
+  private final static String FORM_API_VERSION = "20151028";
+  private final static String ADD_CARD_URI = "/form/view/add_card";
+  private final static String PAY_WITH_CARD_URI = "/form/view/pay_with_card";
+  private final static String ADD_CARD_AND_PAY_URI = "/form/view/add_and_pay_with_card";
+  private final static String PAY_WITH_TOKEN_AND_CVC_URI = "/form/view/pay_with_token_and_cvc";
+  private final static String MOBILEPAY_URI = "/form/view/mobilepay";
 
   private String method = METHOD_POST;
   private String baseUrl = null;
@@ -44,6 +30,14 @@ public class FormBuilder {
   private String merchant = null;
 
   SecureSigner ss = null;
+  private UtcClock clock = CachedUtcClock.INSTANCE;
+  private RequestIdGenerator requestIdGenerator = BufferedRequestIdGenerator.INSTANCE;
+
+  private final FormTemplate addCardTemplate;
+  private final FormTemplate paymentTemplate;
+  private final FormTemplate addCardAndPaymentTemplate;
+  private final FormTemplate payWithTokenAndCvcTemplate;
+  private final FormTemplate mobilePayTemplate;
 
   public FormBuilder(
       String method,
@@ -59,6 +53,53 @@ public class FormBuilder {
     this.baseUrl = baseUrl;
 
     this.ss = new SecureSigner(signatureKeyId, signatureSecret);
+
+    this.addCardTemplate = createTemplate(FormSpec.Type.ADD_CARD, createConstants());
+    this.paymentTemplate = createTemplate(FormSpec.Type.PAYMENT, createConstants());
+    this.addCardAndPaymentTemplate = createTemplate(FormSpec.Type.ADD_CARD_AND_PAYMENT, createConstants());
+    this.payWithTokenAndCvcTemplate = createTemplate(FormSpec.Type.PAY_WITH_TOKEN_AND_CVC, createConstants());
+    this.mobilePayTemplate = createTemplate(FormSpec.Type.MOBILEPAY, createConstants());
+  }
+
+  /**
+   * Set the clock the form timestamps are taken from
+   *
+   * @param clock The clock
+   */
+  public void setClock(UtcClock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Set the generator of the form request ids
+   *
+   * @param requestIdGenerator The generator
+   */
+  public void setRequestIdGenerator(RequestIdGenerator requestIdGenerator) {
+    this.requestIdGenerator = requestIdGenerator;
+  }
+
+  /**
+   * Compile a form spec into a plan that generates forms with the spec's configuration.
+   * <p/>
+   * The returned plan can be cached and reused from several threads.
+   *
+   * @param spec The form configuration
+   * @return FormPlan
+   */
+  public FormPlan compile(FormSpec spec) {
+    String[] constants = createConstants();
+    constants[FormTemplate.SUCCESS_URL] = spec.getSuccessUrl();
+    constants[FormTemplate.FAILURE_URL] = spec.getFailureUrl();
+    constants[FormTemplate.CANCEL_URL] = spec.getCancelUrl();
+    constants[FormTemplate.LANGUAGE] = spec.getLanguage();
+    constants[FormTemplate.ACCEPT_CVC_REQUIRED] = toString(spec.getAcceptCvcRequired());
+    constants[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(spec.getSkipFormNotifications());
+    constants[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(spec.getExitIframeOnResult());
+    constants[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(spec.getExitIframeOn3ds());
+    constants[FormTemplate.USE_THREE_D_SECURE] = toString(spec.getUse3ds());
+
+    return new FormPlan(spec, createTemplate(spec.getType(), constants), this);
   }
 
   /**
@@ -73,16 +114,9 @@ public class FormBuilder {
   public FormContainer generateAddCardParameters(String successUrl, String failureUrl,
                                                  String cancelUrl, String language) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
-
-    String addCardUri = "/form/view/add_card";
-    String signature = this.createSignature(addCardUri, nameValuePairs);
-
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    String[] values = createCommonValues(addCardTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    return new FormContainer(this.method, this.baseUrl, addCardUri, nameValuePairs, requestId);
+    return addCardTemplate.generate(values);
   }
 
   /**
@@ -98,18 +132,11 @@ public class FormBuilder {
   public FormContainer generateAddCardParameters(String successUrl, String failureUrl,
                                                  String cancelUrl, String language, Boolean acceptCvcRequired) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
+    String[] values = createCommonValues(addCardTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    nameValuePairs.add(new BasicNameValuePair(SPH_ACCEPT_CVC_REQUIRED, acceptCvcRequired.toString()));
+    values[FormTemplate.ACCEPT_CVC_REQUIRED] = acceptCvcRequired.toString();
 
-    String addCardUri = "/form/view/add_card";
-    String signature = this.createSignature(addCardUri, nameValuePairs);
-
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
-
-    return new FormContainer(this.method, this.baseUrl, addCardUri, nameValuePairs, requestId);
+    return addCardTemplate.generate(values);
   }
 
   /**
@@ -134,29 +161,14 @@ public class FormBuilder {
                                                  Boolean skipFormNotifications, Boolean exitIframeOnResult,
                                                  Boolean exitIframeOn3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
-
-    if(acceptCvcRequired != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_ACCEPT_CVC_REQUIRED, acceptCvcRequired.toString()));
-    }
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-
-    String addCardUri = "/form/view/add_card";
-    String signature = this.createSignature(addCardUri, nameValuePairs);
+    String[] values = createCommonValues(addCardTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.ACCEPT_CVC_REQUIRED] = toString(acceptCvcRequired);
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
 
-    return new FormContainer(this.method, this.baseUrl, addCardUri, nameValuePairs, requestId);
+    return addCardTemplate.generate(values);
   }
 
   /**
@@ -183,32 +195,15 @@ public class FormBuilder {
                                                  Boolean skipFormNotifications, Boolean exitIframeOnResult,
                                                  Boolean exitIframeOn3ds, Boolean use3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-        cancelUrl, language, requestId);
+    String[] values = createCommonValues(addCardTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    if(acceptCvcRequired != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_ACCEPT_CVC_REQUIRED, acceptCvcRequired.toString()));
-    }
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-    if(use3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_USE_THREE_D_SECURE, use3ds.toString()));
-    }
-
-    String addCardUri = "/form/view/add_card";
-    String signature = this.createSignature(addCardUri, nameValuePairs);
-
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.ACCEPT_CVC_REQUIRED] = toString(acceptCvcRequired);
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
+    values[FormTemplate.USE_THREE_D_SECURE] = toString(use3ds);
 
-    return new FormContainer(this.method, this.baseUrl, addCardUri, nameValuePairs, requestId);
+    return addCardTemplate.generate(values);
   }
 
   /**
@@ -228,21 +223,14 @@ public class FormBuilder {
                                                  String language, String amount, String currency, String orderId,
                                                  String description) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
+    String[] values = createCommonValues(paymentTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    String payWithCardUri = "/form/view/pay_with_card";
-    String signature = this.createSignature(payWithCardUri, nameValuePairs);
-
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
-
-    return new FormContainer(this.method, this.baseUrl, payWithCardUri, nameValuePairs, requestId);
+    return paymentTemplate.generate(values);
   }
 
   /**
@@ -269,30 +257,18 @@ public class FormBuilder {
                                                  String description, Boolean skipFormNotifications,
                                                  Boolean exitIframeOnResult, Boolean exitIframeOn3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
+    String[] values = createCommonValues(paymentTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-
-    String payWithCardUri = "/form/view/pay_with_card";
-    String signature = this.createSignature(payWithCardUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
 
-    return new FormContainer(this.method, this.baseUrl, payWithCardUri, nameValuePairs, requestId);
+    return paymentTemplate.generate(values);
   }
 
   /**
@@ -321,33 +297,19 @@ public class FormBuilder {
       String description, Boolean skipFormNotifications,
       Boolean exitIframeOnResult, Boolean exitIframeOn3ds, Boolean use3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-        cancelUrl, language, requestId);
-
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-    if(use3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_USE_THREE_D_SECURE, use3ds.toString()));
-    }
+    String[] values = createCommonValues(paymentTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    String payWithCardUri = "/form/view/pay_with_card";
-    String signature = this.createSignature(payWithCardUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
+    values[FormTemplate.USE_THREE_D_SECURE] = toString(use3ds);
 
-    return new FormContainer(this.method, this.baseUrl, payWithCardUri, nameValuePairs, requestId);
+    return paymentTemplate.generate(values);
   }
 
   /**
@@ -367,21 +329,14 @@ public class FormBuilder {
                                                            String language, String amount, String currency,
                                                            String orderId, String description) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
-
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
+    String[] values = createCommonValues(addCardAndPaymentTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    String addCardAndPayUri = "/form/view/add_and_pay_with_card";
-    String signature = this.createSignature(addCardAndPayUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
-
-    return new FormContainer(method, this.baseUrl, addCardAndPayUri, nameValuePairs, requestId);
+    return addCardAndPaymentTemplate.generate(values);
   }
 
   /**
@@ -409,30 +364,18 @@ public class FormBuilder {
                                                            Boolean skipFormNotifications, Boolean exitIframeOnResult,
                                                            Boolean exitIframeOn3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
+    String[] values = createCommonValues(addCardAndPaymentTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-
-    String addCardAndPayUri = "/form/view/add_and_pay_with_card";
-    String signature = this.createSignature(addCardAndPayUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
 
-    return new FormContainer(method, this.baseUrl, addCardAndPayUri, nameValuePairs, requestId);
+    return addCardAndPaymentTemplate.generate(values);
   }
 
   /**
@@ -462,33 +405,19 @@ public class FormBuilder {
       Boolean skipFormNotifications, Boolean exitIframeOnResult,
       Boolean exitIframeOn3ds, Boolean use3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-        cancelUrl, language, requestId);
+    String[] values = createCommonValues(addCardAndPaymentTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-    if(use3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_USE_THREE_D_SECURE, use3ds.toString()));
-    }
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    String addCardAndPayUri = "/form/view/add_and_pay_with_card";
-    String signature = this.createSignature(addCardAndPayUri, nameValuePairs);
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
+    values[FormTemplate.USE_THREE_D_SECURE] = toString(use3ds);
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
-
-    return new FormContainer(method, this.baseUrl, addCardAndPayUri, nameValuePairs, requestId);
+    return addCardAndPaymentTemplate.generate(values);
   }
 
   /**
@@ -509,22 +438,15 @@ public class FormBuilder {
                                                             String cancelUrl, String language, String amount,
                                                             String currency, String orderId, String description) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
-
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(SPH_TOKEN, token.toString()));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
+    String[] values = createCommonValues(payWithTokenAndCvcTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    String payWithTokenAndCvcUri = "/form/view/pay_with_token_and_cvc";
-    String signature = this.createSignature(payWithTokenAndCvcUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.TOKEN] = token.toString();
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
-
-    return new FormContainer(method, this.baseUrl, payWithTokenAndCvcUri, nameValuePairs, requestId);
+    return payWithTokenAndCvcTemplate.generate(values);
   }
 
   /**
@@ -553,31 +475,19 @@ public class FormBuilder {
                                                             Boolean skipFormNotifications, Boolean exitIframeOnResult,
                                                             Boolean exitIframeOn3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-            cancelUrl, language, requestId);
-
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(SPH_TOKEN, token.toString()));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
+    String[] values = createCommonValues(payWithTokenAndCvcTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    String payWithTokenAndCvcUri = "/form/view/pay_with_token_and_cvc";
-    String signature = this.createSignature(payWithTokenAndCvcUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.TOKEN] = token.toString();
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
 
-    return new FormContainer(method, this.baseUrl, payWithTokenAndCvcUri, nameValuePairs, requestId);
+    return payWithTokenAndCvcTemplate.generate(values);
   }
 
   /**
@@ -608,34 +518,20 @@ public class FormBuilder {
       Boolean skipFormNotifications, Boolean exitIframeOnResult,
       Boolean exitIframeOn3ds, Boolean use3ds) {
 
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl,
-        cancelUrl, language, requestId);
-
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(SPH_TOKEN, token.toString()));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
-    if(skipFormNotifications != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_SKIP_FORM_NOTIFICATIONS, skipFormNotifications.toString()));
-    }
-    if(exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
-    if(exitIframeOn3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_THREE_D_SECURE, exitIframeOn3ds.toString()));
-    }
-    if(use3ds != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_USE_THREE_D_SECURE, use3ds.toString()));
-    }
+    String[] values = createCommonValues(payWithTokenAndCvcTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    String payWithTokenAndCvcUri = "/form/view/pay_with_token_and_cvc";
-    String signature = this.createSignature(payWithTokenAndCvcUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.TOKEN] = token.toString();
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.SKIP_FORM_NOTIFICATIONS] = toString(skipFormNotifications);
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
+    values[FormTemplate.EXIT_IFRAME_ON_THREE_D_SECURE] = toString(exitIframeOn3ds);
+    values[FormTemplate.USE_THREE_D_SECURE] = toString(use3ds);
 
-    return new FormContainer(method, this.baseUrl, payWithTokenAndCvcUri, nameValuePairs, requestId);
+    return payWithTokenAndCvcTemplate.generate(values);
   }
 
   /**
@@ -663,44 +559,72 @@ public class FormBuilder {
       String description,
       Boolean exitIframeOnResult
   ) {
-    String requestId = PaymentHighwayUtility.createRequestId();
-    List<NameValuePair> nameValuePairs = createCommonNameValuePairs(successUrl, failureUrl, cancelUrl, language, requestId);
-
-    nameValuePairs.add(new BasicNameValuePair(SPH_AMOUNT, amount));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CURRENCY, currency));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ORDER, orderId));
-    nameValuePairs.add(new BasicNameValuePair(DESCRIPTION, description));
 
-    if (exitIframeOnResult != null) {
-      nameValuePairs.add(new BasicNameValuePair(SPH_EXIT_IFRAME_ON_RESULT, exitIframeOnResult.toString()));
-    }
+    String[] values = createCommonValues(mobilePayTemplate, successUrl, failureUrl, cancelUrl, language);
 
-    String mobilePayUri = "/form/view/mobilepay";
-    String signature = this.createSignature(mobilePayUri, nameValuePairs);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
 
-    nameValuePairs.add(new BasicNameValuePair(SIGNATURE, signature));
+    values[FormTemplate.EXIT_IFRAME_ON_RESULT] = toString(exitIframeOnResult);
 
-    return new FormContainer(method, this.baseUrl, mobilePayUri, nameValuePairs, requestId);
+    return mobilePayTemplate.generate(values);
   }
 
-  private List<NameValuePair> createCommonNameValuePairs(String successUrl, String failureUrl, String cancelUrl, String language, String requestId) {
+  private String[] createConstants() {
+    String[] constants = new String[FormTemplate.FIELD_COUNT];
+    constants[FormTemplate.API_VERSION] = FORM_API_VERSION;
+    constants[FormTemplate.ACCOUNT] = account;
+    constants[FormTemplate.MERCHANT] = merchant;
+    return constants;
+  }
 
-    List<NameValuePair> nameValuePairs = new ArrayList<>();
-    nameValuePairs.add(new BasicNameValuePair(SPH_API_VERSION, "20151028"));
-    nameValuePairs.add(new BasicNameValuePair(SPH_ACCOUNT, account));
-    nameValuePairs.add(new BasicNameValuePair(SPH_MERCHANT, merchant));
-    nameValuePairs.add(new BasicNameValuePair(SPH_TIMESTAMP, PaymentHighwayUtility.getUtcTimestamp()));
-    nameValuePairs.add(new BasicNameValuePair(SPH_CANCEL_URL, cancelUrl));
-    nameValuePairs.add(new BasicNameValuePair(SPH_FAILURE_URL, failureUrl));
-    nameValuePairs.add(new BasicNameValuePair(SPH_SUCCESS_URL, successUrl));
-    nameValuePairs.add(new BasicNameValuePair(SPH_REQUEST_ID, requestId));
-    nameValuePairs.add(new BasicNameValuePair(LANGUAGE, language));
+  private FormTemplate createTemplate(FormSpec.Type type, String[] constants) {
+    switch (type) {
+      case ADD_CARD:
+        return new FormTemplate(this.method, this.baseUrl, ADD_CARD_URI, this.ss, constants);
+      case PAYMENT:
+        return new FormTemplate(this.method, this.baseUrl, PAY_WITH_CARD_URI, this.ss, constants,
+            FormTemplate.AMOUNT, FormTemplate.CURRENCY, FormTemplate.ORDER, FormTemplate.DESCRIPTION);
+      case ADD_CARD_AND_PAYMENT:
+        return new FormTemplate(this.method, this.baseUrl, ADD_CARD_AND_PAY_URI, this.ss, constants,
+            FormTemplate.AMOUNT, FormTemplate.CURRENCY, FormTemplate.ORDER, FormTemplate.DESCRIPTION);
+      case PAY_WITH_TOKEN_AND_CVC:
+        return new FormTemplate(this.method, this.baseUrl, PAY_WITH_TOKEN_AND_CVC_URI, this.ss, constants,
+            FormTemplate.AMOUNT, FormTemplate.CURRENCY, FormTemplate.ORDER, FormTemplate.TOKEN,
+            FormTemplate.DESCRIPTION);
+      case MOBILEPAY:
+        return new FormTemplate(this.method, this.baseUrl, MOBILEPAY_URI, this.ss, constants,
+            FormTemplate.AMOUNT, FormTemplate.CURRENCY, FormTemplate.ORDER, FormTemplate.DESCRIPTION);
+      default:
+        throw new IllegalArgumentException("Unknown form type " + type);
+    }
+  }
 
-    return nameValuePairs;
+  /**
+   * @return Values for a new form with the timestamp and request id set
+   */
+  String[] createValues(FormTemplate template) {
+    String[] values = template.newValues();
+    values[FormTemplate.TIMESTAMP] = clock.getUtcTimestamp();
+    values[FormTemplate.REQUEST_ID] = requestIdGenerator.createRequestId();
+    return values;
   }
 
-  private String createSignature(String uri, List<NameValuePair> nameValuePairs) {
+  private String[] createCommonValues(FormTemplate template, String successUrl, String failureUrl,
+                                      String cancelUrl, String language) {
+
+    String[] values = createValues(template);
+    values[FormTemplate.CANCEL_URL] = cancelUrl;
+    values[FormTemplate.FAILURE_URL] = failureUrl;
+    values[FormTemplate.SUCCESS_URL] = successUrl;
+    values[FormTemplate.LANGUAGE] = language;
+
+    return values;
+  }
 
-    return ss.createSignature(this.method, uri, nameValuePairs, "");
+  private static String toString(Boolean value) {
+    return value != null ? value.toString() : null;
   }
 }
@@ -2,13 +2,23 @@ package io.paymenthighway;
 
 import org.apache.http.NameValuePair;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
  * Everything you need for a form
+ * <p/>
+ * The form can be rendered directly into a Writer, OutputStream or any other Appendable, either as an HTML form
+ * or as a URL with the fields in the query string.
  */
 public class FormContainer {
 
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
   private String method;
   private String baseUrl;
   private String actionUrl;
@@ -31,6 +41,23 @@ public class FormContainer {
     return this.baseUrl + this.actionUrl;
   }
 
+  /**
+   * The form as a single link with the fields in the query string. Only usable with forms created with the GET
+   * method, as the method is part of the signature.
+   *
+   * @return String URL
+   */
+  public String getUrl() {
+    StringBuilder url = new StringBuilder(1024);
+    try {
+      writeUrl(url);
+    } catch (IOException e) {
+      // StringBuilder does not throw
+      throw new IllegalStateException(e);
+    }
+    return url.toString();
+  }
+
   public List<NameValuePair> getFields() {
     return nameValuePairs;
   }
@@ -38,4 +65,187 @@ public class FormContainer {
   public String getRequestId() {
     return requestId;
   }
+
+  /**
+   * Write the form as a link, see {@link #getUrl()}
+   *
+   * @param out The output
+   * @throws IOException
+   */
+  public void writeUrl(Appendable out) throws IOException {
+    out.append(this.baseUrl).append(this.actionUrl).append('?');
+    writeQueryString(out);
+  }
+
+  /**
+   * Write the URL-encoded fields, e.g. "sph-account=test&sph-merchant=test_merchantId&..."
+   *
+   * @param out The output
+   * @throws IOException
+   */
+  public void writeQueryString(Appendable out) throws IOException {
+    boolean first = true;
+    for (NameValuePair field : nameValuePairs) {
+      if (!first) {
+        out.append('&');
+      }
+      first = false;
+
+      if (field instanceof FormField) {
+        out.append(((FormField) field).name().urlEncoded);
+      } else {
+        appendUrlEncoded(out, field.getName());
+      }
+      if (field.getValue() != null) {
+        out.append('=');
+        appendUrlEncoded(out, field.getValue());
+      }
+    }
+  }
+
+  /**
+   * Write the fields as hidden HTML inputs, one per line
+   *
+   * @param out The output
+   * @throws IOException
+   */
+  public void writeHtmlInputs(Appendable out) throws IOException {
+    for (NameValuePair field : nameValuePairs) {
+      if (field instanceof FormField) {
+        out.append(((FormField) field).name().htmlPrefix);
+      } else {
+        out.append("<input type=\"hidden\" name=\"");
+        appendHtmlEscaped(out, field.getName());
+        out.append("\" value=\"");
+      }
+      if (field.getValue() != null) {
+        appendHtmlEscaped(out, field.getValue());
+      }
+      out.append("\">\n");
+    }
+  }
+
+  /**
+   * Write an HTML form with the fields as hidden inputs. The form has no submit button, it is closed right
+   * after the inputs.
+   *
+   * @param out The output
+   * @throws IOException
+   */
+  public void writeHtmlForm(Appendable out) throws IOException {
+    out.append("<form method=\"");
+    appendHtmlEscaped(out, this.method);
+    out.append("\" action=\"");
+    appendHtmlEscaped(out, this.baseUrl);
+    appendHtmlEscaped(out, this.actionUrl);
+    out.append("\">\n");
+    writeHtmlInputs(out);
+    out.append("</form>\n");
+  }
+
+  /**
+   * Write an HTML form in UTF-8, see {@link #writeHtmlForm(Appendable)}. The stream is flushed but not closed.
+   *
+   * @param out The output
+   * @throws IOException
+   */
+  public void writeHtmlForm(OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    writeHtmlForm(writer);
+    writer.flush();
+  }
+
+  /**
+   * Write the form as a link, see {@link #getUrl()}. The stream is flushed but not closed.
+   *
+   * @param out The output
+   * @throws IOException
+   */
+  public void writeUrl(OutputStream out) throws IOException {
+    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+    writeUrl(writer);
+    writer.flush();
+  }
+
+  /**
+   * Append the value with the HTML special characters replaced by character references
+   */
+  static void appendHtmlEscaped(Appendable out, CharSequence value) throws IOException {
+    int start = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      String reference;
+      switch (value.charAt(i)) {
+        case '&':
+          reference = "&amp;";
+          break;
+        case '<':
+          reference = "&lt;";
+          break;
+        case '>':
+          reference = "&gt;";
+          break;
+        case '"':
+          reference = "&quot;";
+          break;
+        case '\'':
+          reference = "&#39;";
+          break;
+        default:
+          continue;
+      }
+      out.append(value, start, i).append(reference);
+      start = i + 1;
+    }
+    out.append(value, start, length);
+  }
+
+  /**
+   * Append the value encoded as application/x-www-form-urlencoded in UTF-8, the same way as
+   * {@link org.apache.http.client.utils.URLEncodedUtils#format(Iterable, java.nio.charset.Charset)}
+   */
+  static void appendUrlEncoded(Appendable out, CharSequence value) throws IOException {
+    int start = 0;
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (isUrlSafe(c)) {
+        continue;
+      }
+      out.append(value, start, i);
+
+      if (c == ' ') {
+        out.append('+');
+      } else if (c < 0x80) {
+        appendPercentEncoded(out, c);
+      } else if (c < 0x800) {
+        appendPercentEncoded(out, 0xc0 | (c >> 6));
+        appendPercentEncoded(out, 0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        appendPercentEncoded(out, 0xf0 | (codePoint >> 18));
+        appendPercentEncoded(out, 0x80 | ((codePoint >> 12) & 0x3f));
+        appendPercentEncoded(out, 0x80 | ((codePoint >> 6) & 0x3f));
+        appendPercentEncoded(out, 0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogates are replaced like the UTF-8 encoder does
+        appendPercentEncoded(out, '?');
+      } else {
+        appendPercentEncoded(out, 0xe0 | (c >> 12));
+        appendPercentEncoded(out, 0x80 | ((c >> 6) & 0x3f));
+        appendPercentEncoded(out, 0x80 | (c & 0x3f));
+      }
+      start = i + 1;
+    }
+    out.append(value, start, length);
+  }
+
+  private static boolean isUrlSafe(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+        || c == '-' || c == '_' || c == '.' || c == '*';
+  }
+
+  private static void appendPercentEncoded(Appendable out, int b) throws IOException {
+    out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+  }
 }
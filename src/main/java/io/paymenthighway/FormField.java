@@ -0,0 +1,49 @@
+package io.paymenthighway;
+
+import org.apache.http.message.BasicNameValuePair;
+
+import java.io.IOException;
+
+/**
+ * Form field created by a {@link FormTemplate}. Carries the escaped HTML and URL fragments of its name, so that
+ * rendering a form only needs to escape the values.
+ */
+final class FormField extends BasicNameValuePair {
+
+  private static final long serialVersionUID = 1L;
+
+  private final Name name;
+
+  FormField(Name name, String value) {
+    super(name.name, value);
+    this.name = name;
+  }
+
+  Name name() {
+    return name;
+  }
+
+  /**
+   * Field name with its rendered fragments
+   */
+  static final class Name {
+    final String name;
+    final String htmlPrefix;
+    final String urlEncoded;
+
+    Name(String name) {
+      try {
+        StringBuilder html = new StringBuilder("<input type=\"hidden\" name=\"");
+        FormContainer.appendHtmlEscaped(html, name);
+        this.htmlPrefix = html.append("\" value=\"").toString();
+
+        StringBuilder encoded = new StringBuilder();
+        FormContainer.appendUrlEncoded(encoded, name);
+        this.urlEncoded = encoded.toString();
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      this.name = name;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package io.paymenthighway;
+
+import java.util.UUID;
+
+/**
+ * Compiled {@link FormSpec}. Generates signed forms with the configuration of the spec.
+ * <p/>
+ * A plan is immutable and can be cached and used from several threads at the same time.
+ */
+public final class FormPlan {
+
+  private final FormSpec spec;
+  private final FormTemplate template;
+  private final FormBuilder formBuilder;
+
+  FormPlan(FormSpec spec, FormTemplate template, FormBuilder formBuilder) {
+    this.spec = spec;
+    this.template = template;
+    this.formBuilder = formBuilder;
+  }
+
+  /**
+   * @return The spec this plan was compiled from
+   */
+  public FormSpec getSpec() {
+    return spec;
+  }
+
+  /**
+   * Generate an Add Card form
+   *
+   * @return FormContainer
+   */
+  public FormContainer generate() {
+    requireType(FormSpec.Type.ADD_CARD);
+
+    return template.generate(formBuilder.createValues(template));
+  }
+
+  /**
+   * Generate a Payment, Add Card and Pay or MobilePay form
+   *
+   * @param amount The amount to pay.
+   * @param currency In which currency is the amount, e.g. "EUR"
+   * @param orderId A generated order ID, may for example be always unique or used multiple times for recurring transactions.
+   * @param description Description of the payment shown in the form.
+   * @return FormContainer
+   */
+  public FormContainer generate(String amount, String currency, String orderId, String description) {
+    requirePaymentParameters();
+
+    String[] values = formBuilder.createValues(template);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.DESCRIPTION] = description;
+
+    return template.generate(values);
+  }
+
+  /**
+   * Generate a Pay with Token and CVC form
+   *
+   * @param token The card token to charge from.
+   * @param amount The amount to pay.
+   * @param currency In which currency is the amount, e.g. "EUR"
+   * @param orderId A generated order ID, may for example be always unique or used multiple times for recurring transactions.
+   * @param description Description of the payment shown in the form.
+   * @return FormContainer
+   */
+  public FormContainer generate(UUID token, String amount, String currency, String orderId, String description) {
+    requireType(FormSpec.Type.PAY_WITH_TOKEN_AND_CVC);
+
+    String[] values = formBuilder.createValues(template);
+    values[FormTemplate.AMOUNT] = amount;
+    values[FormTemplate.CURRENCY] = currency;
+    values[FormTemplate.ORDER] = orderId;
+    values[FormTemplate.TOKEN] = token.toString();
+    values[FormTemplate.DESCRIPTION] = description;
+
+    return template.generate(values);
+  }
+
+  void requirePaymentParameters() {
+    if (spec.getType() == FormSpec.Type.ADD_CARD || spec.getType() == FormSpec.Type.PAY_WITH_TOKEN_AND_CVC) {
+      throw new IllegalStateException("Form type " + spec.getType() + " can not be generated from payment parameters");
+    }
+  }
+
+  private void requireType(FormSpec.Type type) {
+    if (spec.getType() != type) {
+      throw new IllegalStateException("Form type " + spec.getType() + " can not be generated as " + type);
+    }
+  }
+}
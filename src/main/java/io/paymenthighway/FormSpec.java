@@ -0,0 +1,182 @@
+package io.paymenthighway;
+
+/**
+ * Form configuration that stays the same across checkouts: the form type, the redirect URLs, the language and
+ * the optional form settings.
+ * <p/>
+ * Specs are immutable. Compile a spec once with {@link FormBuilder#compile(FormSpec)} and reuse the resulting
+ * {@link FormPlan} for every checkout with the same configuration.
+ */
+public final class FormSpec {
+
+  /**
+   * Form types
+   */
+  public enum Type {
+    ADD_CARD,
+    PAYMENT,
+    ADD_CARD_AND_PAYMENT,
+    PAY_WITH_TOKEN_AND_CVC,
+    MOBILEPAY
+  }
+
+  private final Type type;
+  private final String successUrl;
+  private final String failureUrl;
+  private final String cancelUrl;
+  private final String language;
+  private final Boolean acceptCvcRequired;
+  private final Boolean skipFormNotifications;
+  private final Boolean exitIframeOnResult;
+  private final Boolean exitIframeOn3ds;
+  private final Boolean use3ds;
+
+  public static Builder Builder(Type type, String successUrl, String failureUrl, String cancelUrl, String language) {
+    return new Builder(type, successUrl, failureUrl, cancelUrl, language);
+  }
+
+  public static class Builder {
+
+    private Type type = null;
+    private String successUrl = null;
+    private String failureUrl = null;
+    private String cancelUrl = null;
+    private String language = null;
+
+    private Boolean acceptCvcRequired = null;
+    private Boolean skipFormNotifications = null;
+    private Boolean exitIframeOnResult = null;
+    private Boolean exitIframeOn3ds = null;
+    private Boolean use3ds = null;
+
+    /**
+     * @param type The form type
+     * @param successUrl The URL the user is redirected after the transaction is handled. The payment itself may still be rejected.
+     * @param failureUrl The URL the user is redirected after a failure such as an authentication or connectivity error.
+     * @param cancelUrl The URL the user is redirected after cancelling the transaction (clicking on the cancel button).
+     * @param language The language the form is displayed in.
+     */
+    public Builder(Type type, String successUrl, String failureUrl, String cancelUrl, String language) {
+      if (type == null) {
+        throw new IllegalArgumentException("type must not be null");
+      }
+      this.type = type;
+      this.successUrl = successUrl;
+      this.failureUrl = failureUrl;
+      this.cancelUrl = cancelUrl;
+      this.language = language;
+    }
+
+    /**
+     * @param acceptCvcRequired Accept a payment card token even if the card requires CVC for payments. Add card forms only.
+     */
+    public Builder setAcceptCvcRequired(Boolean acceptCvcRequired) {
+      if (acceptCvcRequired != null && type != Type.ADD_CARD) {
+        throw new IllegalStateException("acceptCvcRequired is only supported by add card forms");
+      }
+      this.acceptCvcRequired = acceptCvcRequired;
+      return this;
+    }
+
+    /**
+     * @param skipFormNotifications Skip notifications displayed on the Payment Highway form.
+     */
+    public Builder setSkipFormNotifications(Boolean skipFormNotifications) {
+      if (skipFormNotifications != null && type == Type.MOBILEPAY) {
+        throw new IllegalStateException("skipFormNotifications is not supported by MobilePay forms");
+      }
+      this.skipFormNotifications = skipFormNotifications;
+      return this;
+    }
+
+    /**
+     * @param exitIframeOnResult Exit from iframe after a result.
+     */
+    public Builder setExitIframeOnResult(Boolean exitIframeOnResult) {
+      this.exitIframeOnResult = exitIframeOnResult;
+      return this;
+    }
+
+    /**
+     * @param exitIframeOn3ds Exit from iframe when redirecting the user to 3DS.
+     */
+    public Builder setExitIframeOn3ds(Boolean exitIframeOn3ds) {
+      if (exitIframeOn3ds != null && type == Type.MOBILEPAY) {
+        throw new IllegalStateException("exitIframeOn3ds is not supported by MobilePay forms");
+      }
+      this.exitIframeOn3ds = exitIframeOn3ds;
+      return this;
+    }
+
+    /**
+     * @param use3ds Force enable/disable 3ds. Null to use default configured parameter.
+     */
+    public Builder setUse3ds(Boolean use3ds) {
+      if (use3ds != null && type == Type.MOBILEPAY) {
+        throw new IllegalStateException("use3ds is not supported by MobilePay forms");
+      }
+      this.use3ds = use3ds;
+      return this;
+    }
+
+    public FormSpec build() {
+      return new FormSpec(this);
+    }
+  }
+
+  private FormSpec(Builder builder) {
+    // Required parameters
+    this.type       = builder.type;
+    this.successUrl = builder.successUrl;
+    this.failureUrl = builder.failureUrl;
+    this.cancelUrl  = builder.cancelUrl;
+    this.language   = builder.language;
+
+    // Optional parameters
+    this.acceptCvcRequired     = builder.acceptCvcRequired;
+    this.skipFormNotifications = builder.skipFormNotifications;
+    this.exitIframeOnResult    = builder.exitIframeOnResult;
+    this.exitIframeOn3ds       = builder.exitIframeOn3ds;
+    this.use3ds                = builder.use3ds;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public String getSuccessUrl() {
+    return successUrl;
+  }
+
+  public String getFailureUrl() {
+    return failureUrl;
+  }
+
+  public String getCancelUrl() {
+    return cancelUrl;
+  }
+
+  public String getLanguage() {
+    return language;
+  }
+
+  public Boolean getAcceptCvcRequired() {
+    return acceptCvcRequired;
+  }
+
+  public Boolean getSkipFormNotifications() {
+    return skipFormNotifications;
+  }
+
+  public Boolean getExitIframeOnResult() {
+    return exitIframeOnResult;
+  }
+
+  public Boolean getExitIframeOn3ds() {
+    return exitIframeOn3ds;
+  }
+
+  public Boolean getUse3ds() {
+    return use3ds;
+  }
+}
@@ -0,0 +1,230 @@
+package io.paymenthighway;
+
+import io.paymenthighway.security.SecureSigner;
+import io.paymenthighway.security.SigningTemplate;
+import org.apache.http.NameValuePair;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Precompiled form of a single type.
+ * <p/>
+ * All form fields have a fixed slot. The canonical order of the signed "sph-" fields is resolved once, and the
+ * fields that are constant for the template are rendered into their canonical "name:value" form up front, so
+ * generating a form only fills in the dynamic values. The canonical string and the form fields are produced in
+ * the same pass over the slots.
+ * <p/>
+ * The generated fields carry the escaped fragments of their names for rendering the form as HTML or as a URL.
+ * <p/>
+ * Templates are immutable and can be shared between threads.
+ */
+final class FormTemplate {
+
+  static final int API_VERSION = 0;
+  static final int ACCOUNT = 1;
+  static final int MERCHANT = 2;
+  static final int TIMESTAMP = 3;
+  static final int CANCEL_URL = 4;
+  static final int FAILURE_URL = 5;
+  static final int SUCCESS_URL = 6;
+  static final int REQUEST_ID = 7;
+  static final int LANGUAGE = 8;
+  static final int AMOUNT = 9;
+  static final int CURRENCY = 10;
+  static final int ORDER = 11;
+  static final int TOKEN = 12;
+  static final int DESCRIPTION = 13;
+  static final int ACCEPT_CVC_REQUIRED = 14;
+  static final int SKIP_FORM_NOTIFICATIONS = 15;
+  static final int EXIT_IFRAME_ON_RESULT = 16;
+  static final int EXIT_IFRAME_ON_THREE_D_SECURE = 17;
+  static final int USE_THREE_D_SECURE = 18;
+
+  static final int FIELD_COUNT = 19;
+
+  /**
+   * Field names in the order they are added to the form
+   */
+  private static final String[] NAMES = {
+      "sph-api-version",
+      "sph-account",
+      "sph-merchant",
+      "sph-timestamp",
+      "sph-cancel-url",
+      "sph-failure-url",
+      "sph-success-url",
+      "sph-request-id",
+      "language",
+      "sph-amount",
+      "sph-currency",
+      "sph-order",
+      "sph-token",
+      "description",
+      "sph-accept-cvc-required",
+      "sph-skip-form-notifications",
+      "sph-exit-iframe-on-result",
+      "sph-exit-iframe-on-three-d-secure",
+      "sph-use-three-d-secure"
+  };
+
+  /**
+   * Slots of the signed fields, sorted by name
+   */
+  private static final int[] SIGNED_ORDER = signedOrder();
+
+  /**
+   * Slots in the order they are processed: the signed fields in canonical order first, then the unsigned ones
+   */
+  private static final int[] EMIT_ORDER = emitOrder();
+
+  private static final int[] COMMON_FIELDS = {
+      API_VERSION, ACCOUNT, MERCHANT, TIMESTAMP, CANCEL_URL, FAILURE_URL, SUCCESS_URL, REQUEST_ID, LANGUAGE
+  };
+
+  private static final FormField.Name[] FIELD_NAMES = fieldNames();
+
+  private static final FormField.Name SIGNATURE = new FormField.Name("signature");
+
+  private final String method;
+  private final String baseUrl;
+  private final String uri;
+  private final SigningTemplate signer;
+  private final String[] constants;
+  private final boolean[] required = new boolean[FIELD_COUNT];
+  private final String[] canonicalConstants = new String[FIELD_COUNT];
+  private final FormField[] constantFields = new FormField[FIELD_COUNT];
+
+  /**
+   * @param method The form method
+   * @param baseUrl The Payment Highway service URL
+   * @param uri The form URI
+   * @param signer The signer of the form
+   * @param constants Values of the fields that are the same on every form, indexed by slot. Null for dynamic fields.
+   * @param requiredFields Slots of the fields other than the common ones that are always present, even if null
+   */
+  FormTemplate(String method, String baseUrl, String uri, SecureSigner signer, String[] constants,
+               int... requiredFields) {
+    this.method = method;
+    this.baseUrl = baseUrl;
+    this.uri = uri;
+    this.signer = signer.getTemplate(method, uri);
+    this.constants = constants.clone();
+
+    for (int field : COMMON_FIELDS) {
+      required[field] = true;
+    }
+    for (int field : requiredFields) {
+      required[field] = true;
+    }
+    for (int field = 0; field < FIELD_COUNT; field++) {
+      if (this.constants[field] != null) {
+        constantFields[field] = new FormField(FIELD_NAMES[field], this.constants[field]);
+      }
+    }
+    for (int field : SIGNED_ORDER) {
+      if (this.constants[field] != null) {
+        canonicalConstants[field] = NAMES[field] + ":" + this.constants[field];
+      }
+    }
+  }
+
+  /**
+   * @return A new array for the dynamic values of a form
+   */
+  String[] newValues() {
+    return new String[FIELD_COUNT];
+  }
+
+  /**
+   * Generate a signed form
+   *
+   * @param values The dynamic field values indexed by slot. Optional fields that are null are left out.
+   * @return FormContainer
+   */
+  FormContainer generate(String[] values) {
+    FormField[] fields = new FormField[FIELD_COUNT];
+    StringBuilder keyValues = new StringBuilder(512);
+    int count = 0;
+
+    for (int i = 0; i < EMIT_ORDER.length; i++) {
+      int field = EMIT_ORDER[i];
+      FormField pair = constantFields[field];
+      if (pair == null) {
+        String value = values[field];
+        if (value == null && !required[field]) {
+          continue;
+        }
+        pair = new FormField(FIELD_NAMES[field], value);
+      }
+      fields[field] = pair;
+      count++;
+
+      if (i < SIGNED_ORDER.length) {
+        if (keyValues.length() > 0) {
+          keyValues.append('\n');
+        }
+        if (canonicalConstants[field] != null) {
+          keyValues.append(canonicalConstants[field]);
+        } else {
+          keyValues.append(NAMES[field]).append(':').append(pair.getValue());
+        }
+      }
+    }
+
+    List<NameValuePair> nameValuePairs = new ArrayList<>(count + 1);
+    for (FormField pair : fields) {
+      if (pair != null) {
+        nameValuePairs.add(pair);
+      }
+    }
+
+    String signature = signer.createSignature(keyValues, "");
+    nameValuePairs.add(new FormField(SIGNATURE, signature));
+
+    return new FormContainer(method, baseUrl, uri, nameValuePairs, values[REQUEST_ID]);
+  }
+
+  private static int[] signedOrder() {
+    List<Integer> signed = new ArrayList<>();
+    for (int field = 0; field < FIELD_COUNT; field++) {
+      if (NAMES[field].startsWith("sph-")) {
+        signed.add(field);
+      }
+    }
+    Integer[] fields = signed.toArray(new Integer[signed.size()]);
+    Arrays.sort(fields, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer f1, Integer f2) {
+        return NAMES[f1].compareTo(NAMES[f2]);
+      }
+    });
+
+    int[] order = new int[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      order[i] = fields[i];
+    }
+    return order;
+  }
+
+  private static FormField.Name[] fieldNames() {
+    FormField.Name[] names = new FormField.Name[FIELD_COUNT];
+    for (int field = 0; field < FIELD_COUNT; field++) {
+      names[field] = new FormField.Name(NAMES[field]);
+    }
+    return names;
+  }
+
+  private static int[] emitOrder() {
+    int[] order = Arrays.copyOf(SIGNED_ORDER, FIELD_COUNT);
+    int next = SIGNED_ORDER.length;
+    for (int field = 0; field < FIELD_COUNT; field++) {
+      if (!NAMES[field].startsWith("sph-")) {
+        order[next++] = field;
+      }
+    }
+    return order;
+  }
+}
@@ -0,0 +1,155 @@
+package io.paymenthighway;
+
+import io.paymenthighway.connect.PaymentAPIConnection;
+import io.paymenthighway.json.ParallelReportParser;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Payment API handles for many merchants, sharing one HTTP connection pool and one signer per signature key.
+ * <p/>
+ * The account and merchant are part of every Payment API request, so a marketplace needs a PaymentAPI for each of
+ * its sub-merchants. Created on its own, each PaymentAPI has a connection pool of its own and a signer with its own
+ * key, Mac instances and signing templates. The handles of a registry hold little more than the account and
+ * merchant, so the memory use and the number of sockets do not grow with the number of merchants. The JSON mappers,
+ * with their serializer and deserializer caches, are shared by all the connections. The handles are created on
+ * first use and kept until the key they sign with is replaced.
+ * <p/>
+ * Thread safe.
+ */
+public class MerchantRegistry implements Closeable {
+
+  private static final int DEFAULT_MAX_CONNECTIONS = 50;
+  private static final String SEPARATOR = "\n";
+
+  private final String serviceUrl;
+  private final CloseableHttpClient httpClient;
+  private final ConcurrentHashMap<String, SecureSigner> signers = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, String> secrets = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<String, PaymentAPI> handles = new ConcurrentHashMap<>();
+  private volatile ParallelReportParser reportParser;
+
+  /**
+   * Constructor with a pool of 50 connections
+   *
+   * @param serviceUrl The Payment API service URL
+   */
+  public MerchantRegistry(String serviceUrl) {
+    this(serviceUrl, DEFAULT_MAX_CONNECTIONS);
+  }
+
+  /**
+   * @param serviceUrl The Payment API service URL
+   * @param maxConnections The size of the connection pool shared by all the merchants
+   */
+  public MerchantRegistry(String serviceUrl, int maxConnections) {
+    this(serviceUrl, HttpClients.custom()
+        .setMaxConnPerRoute(maxConnections)
+        .setMaxConnTotal(maxConnections)
+        .build());
+  }
+
+  /**
+   * @param serviceUrl The Payment API service URL
+   * @param httpClient The client shared by all the merchants, closed with the registry
+   */
+  public MerchantRegistry(String serviceUrl, CloseableHttpClient httpClient) {
+    this.serviceUrl = serviceUrl;
+    this.httpClient = httpClient;
+  }
+
+  /**
+   * Decode the settlements of large reconciliation reports in parallel, for the handles created after this call
+   *
+   * @param reportParser The parser shared by the handles, or null to decode reports on the calling thread
+   */
+  public void setReportParser(ParallelReportParser reportParser) {
+    this.reportParser = reportParser;
+  }
+
+  /**
+   * Add a signature key. Replacing the secret of a key drops the handles that sign with it, they are created again
+   * with the new secret on their next use.
+   *
+   * @param keyId The signature key id
+   * @param secret The signature secret
+   */
+  public synchronized void addKey(String keyId, String secret) {
+    if (secret.equals(secrets.get(keyId))) {
+      return;
+    }
+    secrets.put(keyId, secret);
+    signers.put(keyId, new SecureSigner(keyId, secret));
+
+    Iterator<String> keys = handles.keySet().iterator();
+    while (keys.hasNext()) {
+      if (keys.next().startsWith(keyId + SEPARATOR)) {
+        keys.remove();
+      }
+    }
+  }
+
+  /**
+   * @param keyId The id of an added signature key
+   * @param account The account
+   * @param merchant The merchant
+   * @return The Payment API of the merchant, the same instance for each call. Closing it does not close the shared
+   * connection pool.
+   * @throws IllegalArgumentException if the key has not been added
+   */
+  public PaymentAPI getPaymentAPI(String keyId, String account, String merchant) {
+    String key = keyId + SEPARATOR + account + SEPARATOR + merchant;
+    PaymentAPI handle = handles.get(key);
+    return handle != null ? handle : createPaymentAPI(key, keyId, account, merchant);
+  }
+
+  /**
+   * Synchronized with {@link #addKey}, so a handle is never cached with a replaced signer
+   */
+  private synchronized PaymentAPI createPaymentAPI(String key, String keyId, String account, String merchant) {
+    PaymentAPI handle = handles.get(key);
+    if (handle == null) {
+      SecureSigner signer = signers.get(keyId);
+      if (signer == null) {
+        throw new IllegalArgumentException("Unknown signature key " + keyId);
+      }
+      PaymentAPIConnection connection = new PaymentAPIConnection(serviceUrl, signer, account, merchant, httpClient);
+      connection.setReportParser(reportParser);
+      handle = new PaymentAPI(connection);
+      handles.put(key, handle);
+    }
+    return handle;
+  }
+
+  /**
+   * @param keyId The signature key id
+   * @return The signer shared by the merchants that sign with the key, or null if the key has not been added
+   */
+  public SecureSigner getSigner(String keyId) {
+    return signers.get(keyId);
+  }
+
+  /**
+   * @return The number of merchant handles
+   */
+  public int getMerchantCount() {
+    return handles.size();
+  }
+
+  /**
+   * Close the shared connection pool
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    handles.clear();
+    httpClient.close();
+  }
+}
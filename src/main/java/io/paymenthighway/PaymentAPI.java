@@ -1,17 +1,31 @@
 package io.paymenthighway;
 
+import io.paymenthighway.bulk.BulkExecutor;
+import io.paymenthighway.bulk.BulkListener;
+import io.paymenthighway.bulk.BulkOperation;
+import io.paymenthighway.bulk.BulkOutcome;
+import io.paymenthighway.bulk.BulkStatistics;
+import io.paymenthighway.bulk.CommitItem;
+import io.paymenthighway.clock.UtcClock;
 import io.paymenthighway.connect.PaymentAPIConnection;
+import io.paymenthighway.id.RequestIdGenerator;
 import io.paymenthighway.exception.AuthenticationException;
+import io.paymenthighway.journal.PaymentJournal;
+import io.paymenthighway.json.ParallelReportParser;
 import io.paymenthighway.model.request.CommitTransactionRequest;
 import io.paymenthighway.model.request.RevertTransactionRequest;
 import io.paymenthighway.model.request.TransactionRequest;
 import io.paymenthighway.model.response.*;
+import io.paymenthighway.stream.JsonArrayPublisher;
+import io.paymenthighway.stream.Publisher;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.impl.client.CloseableHttpClient;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 
 /**
  * Payment Highway Payment API Service.
@@ -22,16 +36,70 @@ public class PaymentAPI implements Closeable {
    * These need to be defined
    */
   private PaymentAPIConnection paymentApi = null;
+  private volatile TransactionIdPool transactionIdPool = null;
 
   public PaymentAPI(String serviceUrl, String signatureKeyId, String signatureSecret, String account, String merchant) {
 
     paymentApi = new PaymentAPIConnection(serviceUrl, signatureKeyId, signatureSecret, account, merchant);
   }
 
+  /**
+   * @param paymentApi The connection, e.g. one sharing its signer and HTTP client, see {@link MerchantRegistry}
+   */
+  PaymentAPI(PaymentAPIConnection paymentApi) {
+    this.paymentApi = paymentApi;
+  }
+
   public void setHttpClient(CloseableHttpClient httpClient) {
     this.paymentApi.setHttpClient(httpClient);
   }
 
+  /**
+   * Decode the settlements of large reconciliation reports in parallel.
+   *
+   * @param reportParser The parser, or null to decode reports on the calling thread
+   */
+  public void setReportParser(ParallelReportParser reportParser) {
+    this.paymentApi.setReportParser(reportParser);
+  }
+
+  /**
+   * Set the clock the request timestamps are taken from
+   *
+   * @param clock The clock
+   */
+  public void setClock(UtcClock clock) {
+    this.paymentApi.setClock(clock);
+  }
+
+  /**
+   * Set the generator of the request ids
+   *
+   * @param requestIdGenerator The generator
+   */
+  public void setRequestIdGenerator(RequestIdGenerator requestIdGenerator) {
+    this.paymentApi.setRequestIdGenerator(requestIdGenerator);
+  }
+
+  /**
+   * Record the debit, credit, commit and revert requests in a write-ahead journal, see
+   * {@link PaymentJournal#recover(PaymentAPI)}
+   *
+   * @param journal The journal, or null to not record the requests
+   */
+  public void setJournal(PaymentJournal journal) {
+    this.paymentApi.setJournal(journal);
+  }
+
+  /**
+   * Take the transaction ids of {@link #initTransaction()} from a pool of ids initialized in advance
+   *
+   * @param transactionIdPool The pool, or null to send an init transaction request for each transaction
+   */
+  public void setTransactionIdPool(TransactionIdPool transactionIdPool) {
+    this.transactionIdPool = transactionIdPool;
+  }
+
   /**
    * Payment Highway Init Transaction
    *
@@ -42,6 +110,17 @@ public class PaymentAPI implements Closeable {
    */
   public InitTransactionResponse initTransaction() throws IOException {
 
+    TransactionIdPool pool = this.transactionIdPool;
+    if (pool != null) {
+      return pool.take();
+    }
+    return paymentApi.initTransactionHandle();
+  }
+
+  /**
+   * Init transaction request that bypasses the transaction id pool
+   */
+  InitTransactionResponse fetchTransactionId() throws IOException {
     return paymentApi.initTransactionHandle();
   }
 
@@ -139,6 +218,61 @@ public class PaymentAPI implements Closeable {
     return paymentApi.commitTransaction(transactionId, commitRequest);
   }
 
+  /**
+   * Commit many transactions concurrently. Returns when all of them have been committed or have failed.
+   *
+   * @param items The transactions to commit
+   * @param executor Runs the commits with the wanted concurrency and rate limit
+   * @param listener Receives the CommitTransactionResponse or error of each transaction as soon as it finishes
+   * @return BulkStatistics of the run
+   * @throws InterruptedException
+   */
+  public BulkStatistics commitTransactions(Iterator<CommitItem> items, BulkExecutor executor,
+                                           BulkListener<CommitItem, CommitTransactionResponse> listener)
+      throws InterruptedException {
+
+    return executor.execute(items, commitOperation(), listener);
+  }
+
+  /**
+   * Commit many transactions concurrently. Returns when all of them have been committed or have failed.
+   *
+   * @param items The transactions to commit
+   * @param executor Runs the commits with the wanted concurrency and rate limit
+   * @param listener Receives the CommitTransactionResponse or error of each transaction as soon as it finishes
+   * @return BulkStatistics of the run
+   * @throws InterruptedException
+   */
+  public BulkStatistics commitTransactions(Iterable<CommitItem> items, BulkExecutor executor,
+                                           BulkListener<CommitItem, CommitTransactionResponse> listener)
+      throws InterruptedException {
+
+    return commitTransactions(items.iterator(), executor, listener);
+  }
+
+  /**
+   * Commit many transactions concurrently, publishing the outcome of each. The commits are sent only as fast as the
+   * subscriber requests their outcomes.
+   *
+   * @param items The transactions to commit
+   * @param executor Runs the commits with the wanted concurrency and rate limit
+   * @return Publisher of the CommitTransactionResponse or error of each transaction, for a single subscriber
+   */
+  public Publisher<BulkOutcome<CommitItem, CommitTransactionResponse>> publishCommitTransactions(
+      Iterator<CommitItem> items, BulkExecutor executor) {
+
+    return executor.publish(items, commitOperation());
+  }
+
+  private BulkOperation<CommitItem, CommitTransactionResponse> commitOperation() {
+    return new BulkOperation<CommitItem, CommitTransactionResponse>() {
+      @Override
+      public CommitTransactionResponse execute(CommitItem item) throws IOException {
+        return commitTransaction(item.getTransactionId(), item.getAmount(), item.getCurrency());
+      }
+    };
+  }
+
   /**
    * Payment Highway Transaction Result Request
    * Used to find out whether or not an uncommitted transaction succeeded, without actually committing (capturing) it.
@@ -180,6 +314,23 @@ public class PaymentAPI implements Closeable {
     return paymentApi.fetchReport(date);
   }
 
+  /**
+   * Payment Highway Daily Report Request, publishing the settlements one at a time as the subscriber requests them.
+   * The report is fetched for each subscriber on its first request.
+   *
+   * @param date The date to fetch the report for
+   * @return Publisher of the settlements with their transactions
+   */
+  public Publisher<Settlement> publishDailyReport(final String date) {
+
+    return new JsonArrayPublisher<>(new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        return paymentApi.fetchReportJson(date);
+      }
+    }, "settlements", Settlement.class);
+  }
+
   /**
    * Payment Highway Reconciliation Report Request
    *
@@ -194,6 +345,23 @@ public class PaymentAPI implements Closeable {
     return paymentApi.fetchReconciliationReport(date);
   }
 
+  /**
+   * Payment Highway Reconciliation Report Request, publishing the settlements one at a time as the subscriber
+   * requests them. The report is fetched for each subscriber on its first request.
+   *
+   * @param date The date to fetch the reconciliation report for
+   * @return Publisher of the settlements with their transactions
+   */
+  public Publisher<ReconciliationSettlement> publishReconciliationReport(final String date) {
+
+    return new JsonArrayPublisher<>(new Callable<String>() {
+      @Override
+      public String call() throws IOException {
+        return paymentApi.fetchReconciliationReportJson(date, false);
+      }
+    }, "settlements", ReconciliationSettlement.class);
+  }
+
   /**
    * Payment Highway Reconciliation Report Request
    *
@@ -213,6 +381,9 @@ public class PaymentAPI implements Closeable {
 
   @Override
   public void close() throws IOException {
+    if (transactionIdPool != null) {
+      transactionIdPool.close();
+    }
     if (paymentApi != null) {
       paymentApi.close();
     }
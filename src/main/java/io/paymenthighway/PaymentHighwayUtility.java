@@ -1,10 +1,13 @@
 package io.paymenthighway;
 
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.id.BufferedRequestIdGenerator;
 import org.apache.http.NameValuePair;
 import org.apache.http.message.BasicNameValuePair;
 
 import java.io.*;
-import java.text.SimpleDateFormat;
 import java.util.*;
 
 /**
@@ -18,7 +21,7 @@ public class PaymentHighwayUtility {
    * @return String UUID.
    */
   public static String createRequestId() {
-    return java.util.UUID.randomUUID().toString();
+    return BufferedRequestIdGenerator.INSTANCE.createRequestId();
   }
 
   /**
@@ -27,9 +30,7 @@ public class PaymentHighwayUtility {
    * @return String timestamp Example: 2014-09-18T10:32:59Z
    */
   public static String getUtcTimestamp() {
-    SimpleDateFormat timeFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    timeFormatter.setTimeZone(new SimpleTimeZone(SimpleTimeZone.UTC_TIME, "UTC"));
-    return timeFormatter.format(new Date());
+    return CachedUtcClock.INSTANCE.getUtcTimestamp();
   }
 
   /**
@@ -66,8 +67,7 @@ public class PaymentHighwayUtility {
       try {
         br = new BufferedReader(new InputStreamReader(file, "UTF-8"));
       } catch (Exception e) {
-        System.err.println("Could not find property File.");
-        e.printStackTrace();
+        ErrorReporters.report(ErrorEvent.Kind.CONFIGURATION, "Could not find property File.", e);
       }
     }
 
@@ -75,8 +75,7 @@ public class PaymentHighwayUtility {
       try {
         props.load(br);
       } catch (IOException ex) {
-        System.err.println("Property file reading error.");
-        ex.printStackTrace();
+        ErrorReporters.report(ErrorEvent.Kind.CONFIGURATION, "Property file reading error.", ex);
       }
     }
     return props;
@@ -0,0 +1,225 @@
+package io.paymenthighway;
+
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.clock.UtcClock;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.model.response.InitTransactionResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps initialized transaction ids ready, so that a payment can be debited without waiting for an init
+ * transaction round trip.
+ * <p/>
+ * The ids are fetched in the background whenever the pool runs below its size, and handed out oldest first. Ids
+ * older than the maximum age are discarded instead of used. When the pool is empty, {@link #take()} falls back to
+ * a normal init transaction request. After a failed refill the pool waits a moment before trying again.
+ * <p/>
+ * Use with {@link PaymentAPI#setTransactionIdPool(TransactionIdPool)}. Thread safe.
+ */
+public class TransactionIdPool implements Closeable {
+
+  private static final long DEFAULT_MAX_AGE_MILLIS = 5 * 60 * 1000;
+  private static final long RETRY_DELAY_MILLIS = 1000;
+
+  private final PaymentAPI paymentAPI;
+  private final int size;
+  private final long maxAgeMillis;
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+
+  private final ConcurrentLinkedQueue<Entry> ids = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger available = new AtomicInteger();
+  private final AtomicBoolean refilling = new AtomicBoolean();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong expired = new AtomicLong();
+
+  private volatile UtcClock clock = CachedUtcClock.INSTANCE;
+  private volatile long retryAfterMillis = 0;
+  private volatile boolean closed = false;
+
+  /**
+   * Constructor using a background thread of its own and a maximum age of five minutes
+   *
+   * @param paymentAPI The Payment API of the merchant
+   * @param size The number of ids to keep ready
+   */
+  public TransactionIdPool(PaymentAPI paymentAPI, int size) {
+    this(paymentAPI, size, DEFAULT_MAX_AGE_MILLIS, null);
+  }
+
+  /**
+   * @param paymentAPI The Payment API of the merchant
+   * @param size The number of ids to keep ready
+   * @param maxAgeMillis How long an id may wait in the pool before it is discarded
+   * @param executor The executor the ids are fetched in, or null to use a background thread of its own
+   */
+  public TransactionIdPool(PaymentAPI paymentAPI, int size, long maxAgeMillis, ExecutorService executor) {
+    if (size < 1 || maxAgeMillis < 1) {
+      throw new IllegalArgumentException("size and maxAgeMillis must be positive");
+    }
+    this.paymentAPI = paymentAPI;
+    this.size = size;
+    this.maxAgeMillis = maxAgeMillis;
+    this.ownsExecutor = executor == null;
+    this.executor = executor != null ? executor : Executors.newSingleThreadExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "paymenthighway-transaction-id-pool");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  /**
+   * Set the clock the age of the ids is measured with
+   *
+   * @param clock The clock
+   */
+  public void setClock(UtcClock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Start filling the pool in the background, e.g. when the application starts
+   */
+  public void prefill() {
+    refill();
+  }
+
+  /**
+   * Take an initialized transaction id from the pool, or fetch one if the pool is empty
+   *
+   * @return InitTransactionResponse
+   * @throws IOException if the pool was empty and the init transaction request failed
+   */
+  public InitTransactionResponse take() throws IOException {
+    long now = clock.currentTimeMillis();
+    Entry entry;
+    while ((entry = ids.poll()) != null) {
+      available.decrementAndGet();
+      if (now - entry.createdMillis < maxAgeMillis) {
+        hits.incrementAndGet();
+        refill();
+        return entry.response;
+      }
+      expired.incrementAndGet();
+    }
+
+    misses.incrementAndGet();
+    refill();
+    return paymentAPI.fetchTransactionId();
+  }
+
+  /**
+   * @return The number of ids ready in the pool, including ones that may have expired
+   */
+  public int getAvailable() {
+    return available.get();
+  }
+
+  /**
+   * @return The number of ids taken from the pool
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * @return The number of ids fetched on demand because the pool was empty
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * @return The number of ids discarded because they were too old
+   */
+  public long getExpired() {
+    return expired.get();
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    if (ownsExecutor) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void refill() {
+    if (closed || available.get() >= size || clock.currentTimeMillis() < retryAfterMillis
+        || !refilling.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            fill();
+          } finally {
+            refilling.set(false);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      refilling.set(false);
+    }
+  }
+
+  private void fill() {
+    discardExpired();
+    while (!closed && available.get() < size) {
+      InitTransactionResponse response;
+      try {
+        response = paymentAPI.fetchTransactionId();
+      } catch (IOException e) {
+        ErrorReporters.report(ErrorEvent.Kind.REQUEST, "Could not fetch a transaction id", e);
+        response = null;
+      }
+      if (response == null || response.getId() == null) {
+        retryAfterMillis = clock.currentTimeMillis() + RETRY_DELAY_MILLIS;
+        return;
+      }
+      ids.add(new Entry(response, clock.currentTimeMillis()));
+      available.incrementAndGet();
+    }
+  }
+
+  /**
+   * Drop the expired ids from the head of the queue, where the oldest ones are
+   */
+  private void discardExpired() {
+    long now = clock.currentTimeMillis();
+    Entry entry;
+    while ((entry = ids.peek()) != null && now - entry.createdMillis >= maxAgeMillis) {
+      if (ids.remove(entry)) {
+        available.decrementAndGet();
+        expired.incrementAndGet();
+      }
+    }
+  }
+
+  private static final class Entry {
+    final InitTransactionResponse response;
+    final long createdMillis;
+
+    Entry(InitTransactionResponse response, long createdMillis) {
+      this.response = response;
+      this.createdMillis = createdMillis;
+    }
+  }
+}
@@ -0,0 +1,282 @@
+package io.paymenthighway;
+
+import io.paymenthighway.model.response.OrderSearchResponse;
+import io.paymenthighway.model.response.TransactionStatus;
+import io.paymenthighway.model.response.TransactionStatusResponse;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks up the status of many transactions with as few requests as possible.
+ * <p/>
+ * Lookups of transactions whose order is known are gathered for a short window, and all the lookups of an order
+ * are then answered by a single order search. A transaction the search does not return, or whose order is not
+ * known, is looked up with a transaction status request of its own.
+ * <p/>
+ * Thread safe.
+ */
+public class TransactionStatusLookup implements Closeable {
+
+  private static final long DEFAULT_WINDOW_MILLIS = 10;
+  private static final int DEFAULT_WORKERS = 4;
+  private static final int STATUS_NOT_FOUND = 404;
+
+  private final PaymentAPI paymentAPI;
+  private final long windowMillis;
+  private final ScheduledExecutorService executor;
+
+  private final Object lock = new Object();
+  private final Map<String, List<PendingLookup>> batches = new HashMap<>();
+  private final Set<PendingLookup> queued = Collections.newSetFromMap(new ConcurrentHashMap<PendingLookup, Boolean>());
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong requests = new AtomicLong();
+
+  /**
+   * Constructor with a window of 10 milliseconds and four workers
+   *
+   * @param paymentAPI The Payment API of the merchant
+   */
+  public TransactionStatusLookup(PaymentAPI paymentAPI) {
+    this(paymentAPI, DEFAULT_WINDOW_MILLIS, DEFAULT_WORKERS);
+  }
+
+  /**
+   * @param paymentAPI The Payment API of the merchant
+   * @param windowMillis How long the lookups of an order are gathered before the order is searched
+   * @param workers The number of requests sent at the same time
+   */
+  public TransactionStatusLookup(PaymentAPI paymentAPI, long windowMillis, int workers) {
+    if (windowMillis < 0 || workers < 1) {
+      throw new IllegalArgumentException("windowMillis must not be negative and workers must be positive");
+    }
+    this.paymentAPI = paymentAPI;
+    this.windowMillis = windowMillis;
+
+    final AtomicInteger threads = new AtomicInteger();
+    ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(workers, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "paymenthighway-status-lookup-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    pool.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    this.executor = pool;
+  }
+
+  /**
+   * Look up the status of a transaction
+   *
+   * @param transactionId The transaction id
+   * @param order The order of the transaction, or null if not known
+   * @return The future status of the transaction. Fails with an HttpResponseException if the transaction is not
+   * found.
+   */
+  public Future<TransactionStatus> lookup(UUID transactionId, final String order) {
+    lookups.incrementAndGet();
+    final PendingLookup lookup = new PendingLookup(transactionId);
+    if (order == null) {
+      fetchLater(lookup);
+      return lookup;
+    }
+
+    boolean first;
+    synchronized (lock) {
+      List<PendingLookup> batch = batches.get(order);
+      first = batch == null;
+      if (first) {
+        batch = new ArrayList<>();
+        batches.put(order, batch);
+      }
+      batch.add(lookup);
+    }
+
+    if (first) {
+      try {
+        executor.schedule(new Runnable() {
+          @Override
+          public void run() {
+            search(order);
+          }
+        }, windowMillis, TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException e) {
+        for (PendingLookup rejected : take(order)) {
+          rejected.fail(e);
+        }
+      }
+    }
+    return lookup;
+  }
+
+  /**
+   * @return The number of lookups made
+   */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  /**
+   * @return The number of requests sent for the lookups
+   */
+  public long getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * Stop the workers. The requests already sent are answered, the lookups still waiting for their window or for a
+   * worker are cancelled.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+
+    List<PendingLookup> cancelled = new ArrayList<>();
+    synchronized (lock) {
+      for (List<PendingLookup> batch : batches.values()) {
+        cancelled.addAll(batch);
+      }
+      batches.clear();
+    }
+    for (PendingLookup lookup : queued) {
+      if (queued.remove(lookup)) {
+        cancelled.add(lookup);
+      }
+    }
+
+    for (PendingLookup lookup : cancelled) {
+      lookup.cancel(false);
+    }
+  }
+
+  private List<PendingLookup> take(String order) {
+    synchronized (lock) {
+      List<PendingLookup> batch = batches.remove(order);
+      return batch != null ? batch : new ArrayList<PendingLookup>();
+    }
+  }
+
+  private void search(String order) {
+    List<PendingLookup> batch = take(order);
+    if (batch.isEmpty()) {
+      return;
+    }
+
+    requests.incrementAndGet();
+    OrderSearchResponse response;
+    try {
+      response = paymentAPI.searchOrders(order);
+    } catch (HttpResponseException e) {
+      if (e.getStatusCode() != STATUS_NOT_FOUND) {
+        failAll(batch, e);
+        return;
+      }
+      response = null;
+    } catch (IOException | RuntimeException e) {
+      failAll(batch, e);
+      return;
+    }
+
+    Map<UUID, TransactionStatus> found = new HashMap<>();
+    if (response != null && response.getTransactions() != null) {
+      for (TransactionStatus status : response.getTransactions()) {
+        if (status != null && status.getId() != null) {
+          found.put(status.getId(), status);
+        }
+      }
+    }
+
+    for (PendingLookup lookup : batch) {
+      TransactionStatus status = found.get(lookup.transactionId);
+      if (status != null) {
+        lookup.complete(status);
+      } else {
+        // e.g. a wrong order was given
+        fetchLater(lookup);
+      }
+    }
+  }
+
+  private void fetchLater(final PendingLookup lookup) {
+    queued.add(lookup);
+    try {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          fetch(lookup);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      queued.remove(lookup);
+      lookup.fail(e);
+    }
+  }
+
+  private void fetch(PendingLookup lookup) {
+    if (!queued.remove(lookup)) {
+      // cancelled by close
+      return;
+    }
+    requests.incrementAndGet();
+    try {
+      TransactionStatusResponse response = paymentAPI.transactionStatus(lookup.transactionId);
+      lookup.complete(response != null ? response.getTransaction() : null);
+    } catch (IOException | RuntimeException e) {
+      lookup.fail(e);
+    }
+  }
+
+  private static void failAll(List<PendingLookup> batch, Exception e) {
+    for (PendingLookup lookup : batch) {
+      lookup.fail(e);
+    }
+  }
+
+  /**
+   * A future completed by the lookup, never run itself
+   */
+  private static final class PendingLookup extends FutureTask<TransactionStatus> {
+
+    private static final Callable<TransactionStatus> NOTHING = new Callable<TransactionStatus>() {
+      @Override
+      public TransactionStatus call() {
+        return null;
+      }
+    };
+
+    final UUID transactionId;
+
+    PendingLookup(UUID transactionId) {
+      super(NOTHING);
+      this.transactionId = transactionId;
+    }
+
+    void complete(TransactionStatus status) {
+      set(status);
+    }
+
+    void fail(Exception e) {
+      setException(e);
+    }
+  }
+}
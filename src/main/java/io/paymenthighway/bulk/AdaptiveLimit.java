@@ -0,0 +1,58 @@
+package io.paymenthighway.bulk;
+
+/**
+ * Concurrency limit that adapts to the latency and errors of the requests, additive increase and multiplicative
+ * decrease.
+ * <p/>
+ * The limit grows by about one per round of requests while their latency stays within twice the lowest latency
+ * seen, and is cut by a quarter when a request is slower than that or signals overload. It is cut at most once per
+ * round, so a burst of slow responses counts as one signal. Not thread safe.
+ */
+class AdaptiveLimit {
+
+  private static final double TOLERANCE = 2.0;
+  private static final double BACKOFF = 0.75;
+
+  private final int min;
+  private final int max;
+  private double limit;
+  private long minLatencyNanos = Long.MAX_VALUE;
+  private long completed = 0;
+  private long nextDecreaseAt = 0;
+
+  /**
+   * @param min The lowest limit
+   * @param max The highest limit
+   * @param initial The starting limit
+   */
+  AdaptiveLimit(int min, int max, int initial) {
+    this.min = min;
+    this.max = max;
+    this.limit = Math.max(min, Math.min(max, initial));
+  }
+
+  int get() {
+    return (int) limit;
+  }
+
+  /**
+   * @param latencyNanos The latency of a finished request
+   * @param overloaded Whether the request failed in a way that suggests too much load, e.g. HTTP 429 or 503
+   */
+  void onSample(long latencyNanos, boolean overloaded) {
+    completed++;
+    if (!overloaded) {
+      // rejected requests are often fast, they must not lower the baseline
+      minLatencyNanos = Math.min(minLatencyNanos, latencyNanos);
+    }
+
+    if (overloaded || latencyNanos > minLatencyNanos * TOLERANCE) {
+      if (completed >= nextDecreaseAt) {
+        limit = Math.max(min, limit * BACKOFF);
+        nextDecreaseAt = completed + (long) Math.ceil(limit);
+      }
+    } else {
+      limit = Math.min(max, limit + 1 / limit);
+    }
+  }
+}
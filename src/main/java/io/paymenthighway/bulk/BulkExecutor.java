@@ -0,0 +1,183 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.stream.Publisher;
+
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs a request for each key of a stream with a bounded number of requests in flight and an optional rate limit.
+ * <p/>
+ * The keys are read from an iterator only as fast as the requests are started, so the stream can be much larger
+ * than the memory. A failed request does not stop the run, its error is handed to the listener like any other
+ * outcome. The concurrency should not exceed the connection pool size of the HTTP client, as the requests beyond
+ * it only wait for a connection.
+ */
+public class BulkExecutor {
+
+  private final ExecutorService executor;
+  private final int concurrency;
+  private final double requestsPerSecond;
+
+  /**
+   * @param concurrency The maximum number of requests in flight
+   */
+  public BulkExecutor(int concurrency) {
+    this(null, concurrency, 0);
+  }
+
+  /**
+   * @param concurrency The maximum number of requests in flight
+   * @param requestsPerSecond The maximum number of requests started per second, or 0 for no limit
+   */
+  public BulkExecutor(int concurrency, double requestsPerSecond) {
+    this(null, concurrency, requestsPerSecond);
+  }
+
+  /**
+   * @param executor The executor to run the requests in, or null to create a pool of the given size for each run
+   * @param concurrency The maximum number of requests in flight
+   * @param requestsPerSecond The maximum number of requests started per second, or 0 for no limit
+   */
+  public BulkExecutor(ExecutorService executor, int concurrency, double requestsPerSecond) {
+    if (concurrency < 1) {
+      throw new IllegalArgumentException("concurrency must be positive");
+    }
+    if (requestsPerSecond < 0) {
+      throw new IllegalArgumentException("requestsPerSecond must not be negative");
+    }
+    this.executor = executor;
+    this.concurrency = concurrency;
+    this.requestsPerSecond = requestsPerSecond;
+  }
+
+  /**
+   * Run the operation for each key and wait until all of them have finished
+   *
+   * @param keys The keys
+   * @param operation The request to run for each key
+   * @param listener Receives the outcomes as the requests finish
+   * @param <K> The key type
+   * @param <R> The response type
+   * @return The statistics of the run
+   * @throws InterruptedException
+   */
+  public <K, R> BulkStatistics execute(Iterator<? extends K> keys, BulkOperation<K, R> operation,
+                                       BulkListener<K, R> listener) throws InterruptedException {
+    return execute(keys, operation, listener, new BulkStatistics());
+  }
+
+  /**
+   * Run the operation for each key and wait until all of them have finished
+   *
+   * @param keys The keys
+   * @param operation The request to run for each key
+   * @param listener Receives the outcomes as the requests finish
+   * @param statistics The statistics to update, can be read from another thread while the run goes on
+   * @param <K> The key type
+   * @param <R> The response type
+   * @return The statistics
+   * @throws InterruptedException
+   */
+  public <K, R> BulkStatistics execute(Iterator<? extends K> keys, BulkOperation<K, R> operation,
+                                       BulkListener<K, R> listener, BulkStatistics statistics)
+      throws InterruptedException {
+
+    ExecutorService pool = this.executor != null ? this.executor : Executors.newFixedThreadPool(concurrency);
+    try {
+      execute(pool, keys, operation, listener, statistics);
+    } finally {
+      statistics.finished();
+      if (pool != this.executor) {
+        pool.shutdown();
+      }
+    }
+    return statistics;
+  }
+
+  /**
+   * Publish the outcome of the operation for each key. The requests are started only as the subscriber requests
+   * outcomes, and are sent on the executor of this bulk executor. The publisher accepts a single subscriber.
+   *
+   * @param keys The keys
+   * @param operation The request to run for each key
+   * @param <K> The key type
+   * @param <R> The response type
+   * @return The publisher of the outcomes, in the order the requests finish
+   */
+  public <K, R> Publisher<BulkOutcome<K, R>> publish(Iterator<? extends K> keys, BulkOperation<K, R> operation) {
+    return new BulkPublisher<>(executor, concurrency, requestsPerSecond, keys, operation);
+  }
+
+  private <K, R> void execute(ExecutorService pool, Iterator<? extends K> keys, final BulkOperation<K, R> operation,
+                              final BulkListener<K, R> listener, final BulkStatistics statistics)
+      throws InterruptedException {
+
+    final Semaphore inFlight = new Semaphore(concurrency);
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    RateLimiter rateLimiter = requestsPerSecond > 0 ? new RateLimiter(requestsPerSecond) : null;
+
+    try {
+      while (failure.get() == null && keys.hasNext()) {
+        final K key = keys.next();
+        inFlight.acquire();
+        if (rateLimiter != null) {
+          try {
+            rateLimiter.acquire();
+          } catch (InterruptedException e) {
+            inFlight.release();
+            throw e;
+          }
+        }
+        statistics.started();
+        try {
+          pool.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                BulkOutcome<K, R> outcome = attempt(operation, key);
+                statistics.completed(outcome.isSuccess(), outcome.getLatencyNanos());
+                synchronized (listener) {
+                  listener.onOutcome(outcome);
+                }
+              } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+              } finally {
+                inFlight.release();
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          inFlight.release();
+          throw e;
+        }
+      }
+    } finally {
+      // wait for the requests in flight
+      inFlight.acquireUninterruptibly(concurrency);
+      inFlight.release(concurrency);
+    }
+
+    // the listener failed
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+  }
+
+  static <K, R> BulkOutcome<K, R> attempt(BulkOperation<K, R> operation, K key) {
+    long start = System.nanoTime();
+    try {
+      R response = operation.execute(key);
+      return new BulkOutcome<>(key, response, null, System.nanoTime() - start);
+    } catch (Exception e) {
+      return new BulkOutcome<>(key, null, e, System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package io.paymenthighway.bulk;
+
+/**
+ * Receives the outcome of each request of a bulk run as soon as it finishes. The outcomes arrive in completion
+ * order, one at a time.
+ *
+ * @param <K> The key type
+ * @param <R> The response type
+ */
+public interface BulkListener<K, R> {
+
+  /**
+   * @param outcome The response or error of one key
+   */
+  void onOutcome(BulkOutcome<K, R> outcome);
+}
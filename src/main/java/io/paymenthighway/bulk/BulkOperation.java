@@ -0,0 +1,19 @@
+package io.paymenthighway.bulk;
+
+import java.io.IOException;
+
+/**
+ * A request run once per key by a {@link BulkExecutor}
+ *
+ * @param <K> The key type, e.g. a transaction id
+ * @param <R> The response type
+ */
+public interface BulkOperation<K, R> {
+
+  /**
+   * @param key The key
+   * @return The response
+   * @throws IOException
+   */
+  R execute(K key) throws IOException;
+}
@@ -0,0 +1,54 @@
+package io.paymenthighway.bulk;
+
+/**
+ * The response or error of a single request in a bulk run
+ *
+ * @param <K> The key type
+ * @param <R> The response type
+ */
+public final class BulkOutcome<K, R> {
+
+  private final K key;
+  private final R response;
+  private final Exception error;
+  private final long latencyNanos;
+
+  BulkOutcome(K key, R response, Exception error, long latencyNanos) {
+    this.key = key;
+    this.response = response;
+    this.error = error;
+    this.latencyNanos = latencyNanos;
+  }
+
+  public K getKey() {
+    return key;
+  }
+
+  /**
+   * @return The response, or null if the request failed
+   */
+  public R getResponse() {
+    return response;
+  }
+
+  /**
+   * @return The error, e.g. an HttpResponseException, or null if the request succeeded
+   */
+  public Exception getError() {
+    return error;
+  }
+
+  /**
+   * @return true if the request got a response
+   */
+  public boolean isSuccess() {
+    return error == null;
+  }
+
+  /**
+   * @return The time the request took, in nanoseconds
+   */
+  public long getLatencyNanos() {
+    return latencyNanos;
+  }
+}
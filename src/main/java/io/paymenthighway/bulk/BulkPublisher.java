@@ -0,0 +1,215 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.stream.Publisher;
+import io.paymenthighway.stream.Subscriber;
+import io.paymenthighway.stream.Subscription;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the outcome of each request of a bulk run. A request is started only when the subscriber has demand for
+ * its outcome, so the outcomes never pile up however slow the subscriber is.
+ * <p/>
+ * The keys can be read only once, so the publisher accepts a single subscriber.
+ */
+class BulkPublisher<K, R> implements Publisher<BulkOutcome<K, R>> {
+
+  private final ExecutorService executor;
+  private final int concurrency;
+  private final double requestsPerSecond;
+  private final Iterator<? extends K> keys;
+  private final BulkOperation<K, R> operation;
+  private final AtomicBoolean subscribed = new AtomicBoolean();
+
+  BulkPublisher(ExecutorService executor, int concurrency, double requestsPerSecond, Iterator<? extends K> keys,
+                BulkOperation<K, R> operation) {
+    this.executor = executor;
+    this.concurrency = concurrency;
+    this.requestsPerSecond = requestsPerSecond;
+    this.keys = keys;
+    this.operation = operation;
+  }
+
+  @Override
+  public void subscribe(Subscriber<? super BulkOutcome<K, R>> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+    if (!subscribed.compareAndSet(false, true)) {
+      subscriber.onSubscribe(new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+      });
+      subscriber.onError(new IllegalStateException("The outcomes of a bulk run can be subscribed to only once"));
+      return;
+    }
+    subscriber.onSubscribe(new BulkSubscription(subscriber));
+  }
+
+  private final class BulkSubscription implements Subscription {
+
+    private final Subscriber<? super BulkOutcome<K, R>> subscriber;
+    private final ConcurrentLinkedQueue<BulkOutcome<K, R>> ready = new ConcurrentLinkedQueue<>();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger work = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile IllegalArgumentException invalidRequest;
+
+    // only touched by the thread that holds the work counter
+    private ExecutorService pool;
+    private RateLimiter rateLimiter;
+    private int outstanding = 0;
+    private boolean exhausted = false;
+    private boolean finished = false;
+
+    BulkSubscription(Subscriber<? super BulkOutcome<K, R>> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("The number of requested items must be positive, was " + n);
+      } else {
+        long current;
+        long next;
+        do {
+          current = demand.get();
+          next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, next));
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    private void drain() {
+      if (work.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        emit();
+        missed = work.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void emit() {
+      if (finished) {
+        return;
+      }
+      if (cancelled) {
+        finish();
+        return;
+      }
+      if (invalidRequest != null) {
+        finish();
+        subscriber.onError(invalidRequest);
+        return;
+      }
+
+      BulkOutcome<K, R> outcome;
+      while (demand.get() > 0 && !cancelled && (outcome = ready.poll()) != null) {
+        outstanding--;
+        if (demand.get() != Long.MAX_VALUE) {
+          demand.decrementAndGet();
+        }
+        try {
+          subscriber.onNext(outcome);
+        } catch (RuntimeException e) {
+          // a subscriber must not throw, it is treated as cancelled
+          ErrorReporters.report(ErrorEvent.Kind.CALLBACK, "Subscriber failed", e);
+          finish();
+          return;
+        }
+      }
+
+      try {
+        // requests in flight or waiting for delivery count against the demand
+        while (!cancelled && !exhausted && inFlight.get() < concurrency && outstanding < demand.get()) {
+          if (!keys.hasNext()) {
+            exhausted = true;
+            break;
+          }
+          start(keys.next());
+        }
+      } catch (Throwable t) {
+        finish();
+        subscriber.onError(t);
+        return;
+      }
+
+      if (exhausted && outstanding == 0 && !cancelled) {
+        finish();
+        subscriber.onComplete();
+      }
+    }
+
+    /**
+     * Reserve the next rate limiter slot and submit the request, which waits for its slot on the pool thread so the
+     * draining thread, possibly the subscriber's, never sleeps
+     */
+    private void start(final K key) {
+      if (pool == null) {
+        pool = executor != null ? executor : Executors.newFixedThreadPool(concurrency);
+        rateLimiter = requestsPerSecond > 0 ? new RateLimiter(requestsPerSecond) : null;
+      }
+      long now = System.nanoTime();
+      final long due = rateLimiter != null ? now + rateLimiter.reserve(now) : now;
+      outstanding++;
+      inFlight.incrementAndGet();
+      try {
+        pool.execute(new Runnable() {
+          @Override
+          public void run() {
+            BulkOutcome<K, R> outcome;
+            try {
+              long wait;
+              while ((wait = due - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+              }
+              outcome = BulkExecutor.attempt(operation, key);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              outcome = new BulkOutcome<>(key, null, e, 0);
+            }
+            ready.add(outcome);
+            inFlight.decrementAndGet();
+            drain();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        outstanding--;
+        inFlight.decrementAndGet();
+        throw e;
+      }
+    }
+
+    private void finish() {
+      finished = true;
+      if (pool != null && pool != executor) {
+        pool.shutdown();
+      }
+    }
+  }
+}
@@ -0,0 +1,296 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.model.response.OrderSearchResponse;
+import io.paymenthighway.model.response.TokenizationResponse;
+import io.paymenthighway.model.response.TransactionResultResponse;
+import io.paymenthighway.model.response.TransactionStatusResponse;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reads a stream of keys from one of the read endpoints, e.g. transaction status or order search, with a
+ * concurrency that adapts to how the server responds.
+ * <p/>
+ * The number of requests in flight starts at half the maximum. It grows while the latency stays low and shrinks
+ * when the latency rises or the server signals overload, so the run finds the pace the server and the connection
+ * pool can take. A key repeated in the stream is read only once. The outcomes are handed to the listener as the
+ * requests finish, in no particular order.
+ */
+public class BulkReader {
+
+  private static final int STATUS_TOO_MANY_REQUESTS = 429;
+  private static final int STATUS_SERVER_ERROR = 500;
+
+  private final ExecutorService executor;
+  private final int maxConcurrency;
+
+  /**
+   * @param maxConcurrency The highest number of requests in flight, at most the connection pool size
+   */
+  public BulkReader(int maxConcurrency) {
+    this(null, maxConcurrency);
+  }
+
+  /**
+   * @param executor The executor to run the requests in, or null to create a pool for each run
+   * @param maxConcurrency The highest number of requests in flight, at most the connection pool size
+   */
+  public BulkReader(ExecutorService executor, int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("maxConcurrency must be positive");
+    }
+    this.executor = executor;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * Read the status of each transaction
+   *
+   * @param paymentAPI The Payment API of the merchant
+   * @param transactionIds The transaction ids
+   * @param listener Receives the TransactionStatusResponse or error of each transaction
+   * @return The statistics of the run
+   * @throws InterruptedException
+   */
+  public ReadStatistics readTransactionStatuses(final PaymentAPI paymentAPI, Iterator<UUID> transactionIds,
+                                                BulkListener<UUID, TransactionStatusResponse> listener)
+      throws InterruptedException {
+
+    return read(transactionIds, new BulkOperation<UUID, TransactionStatusResponse>() {
+      @Override
+      public TransactionStatusResponse execute(UUID transactionId) throws IOException {
+        return paymentAPI.transactionStatus(transactionId);
+      }
+    }, listener);
+  }
+
+  /**
+   * Read the result of each transaction
+   *
+   * @param paymentAPI The Payment API of the merchant
+   * @param transactionIds The transaction ids
+   * @param listener Receives the TransactionResultResponse or error of each transaction
+   * @return The statistics of the run
+   * @throws InterruptedException
+   */
+  public ReadStatistics readTransactionResults(final PaymentAPI paymentAPI, Iterator<UUID> transactionIds,
+                                               BulkListener<UUID, TransactionResultResponse> listener)
+      throws InterruptedException {
+
+    return read(transactionIds, new BulkOperation<UUID, TransactionResultResponse>() {
+      @Override
+      public TransactionResultResponse execute(UUID transactionId) throws IOException {
+        return paymentAPI.transactionResult(transactionId);
+      }
+    }, listener);
+  }
+
+  /**
+   * Read the card token of each tokenization
+   *
+   * @param paymentAPI The Payment API of the merchant
+   * @param tokenizationIds The tokenization ids
+   * @param listener Receives the TokenizationResponse or error of each tokenization
+   * @return The statistics of the run
+   * @throws InterruptedException
+   */
+  public ReadStatistics readTokenizations(final PaymentAPI paymentAPI, Iterator<UUID> tokenizationIds,
+                                          BulkListener<UUID, TokenizationResponse> listener)
+      throws InterruptedException {
+
+    return read(tokenizationIds, new BulkOperation<UUID, TokenizationResponse>() {
+      @Override
+      public TokenizationResponse execute(UUID tokenizationId) throws IOException {
+        return paymentAPI.tokenize(tokenizationId);
+      }
+    }, listener);
+  }
+
+  /**
+   * Search the transactions of each order
+   *
+   * @param paymentAPI The Payment API of the merchant
+   * @param orders The order ids
+   * @param listener Receives the OrderSearchResponse or error of each order
+   * @return The statistics of the run
+   * @throws InterruptedException
+   */
+  public ReadStatistics readOrders(final PaymentAPI paymentAPI, Iterator<String> orders,
+                                   BulkListener<String, OrderSearchResponse> listener)
+      throws InterruptedException {
+
+    return read(orders, new BulkOperation<String, OrderSearchResponse>() {
+      @Override
+      public OrderSearchResponse execute(String order) throws IOException {
+        return paymentAPI.searchOrders(order);
+      }
+    }, listener);
+  }
+
+  /**
+   * Run the operation for each distinct key and wait until all of them have finished
+   *
+   * @param keys The keys
+   * @param operation The request to run for each key
+   * @param listener Receives the outcomes as the requests finish
+   * @param <K> The key type, with equals and hashCode
+   * @param <R> The response type
+   * @return The statistics of the run
+   * @throws InterruptedException
+   */
+  public <K, R> ReadStatistics read(Iterator<? extends K> keys, BulkOperation<K, R> operation,
+                                    BulkListener<K, R> listener) throws InterruptedException {
+    return read(keys, operation, listener, new ReadStatistics());
+  }
+
+  /**
+   * Run the operation for each distinct key and wait until all of them have finished
+   *
+   * @param keys The keys
+   * @param operation The request to run for each key
+   * @param listener Receives the outcomes as the requests finish
+   * @param statistics The statistics to update, can be read from another thread while the run goes on
+   * @param <K> The key type, with equals and hashCode
+   * @param <R> The response type
+   * @return The statistics
+   * @throws InterruptedException
+   */
+  public <K, R> ReadStatistics read(Iterator<? extends K> keys, BulkOperation<K, R> operation,
+                                    BulkListener<K, R> listener, ReadStatistics statistics)
+      throws InterruptedException {
+
+    ExecutorService pool = this.executor != null ? this.executor : Executors.newFixedThreadPool(maxConcurrency);
+    try {
+      read(pool, keys, operation, listener, statistics);
+    } finally {
+      statistics.finished();
+      if (pool != this.executor) {
+        pool.shutdown();
+      }
+    }
+    return statistics;
+  }
+
+  private <K, R> void read(ExecutorService pool, Iterator<? extends K> keys, final BulkOperation<K, R> operation,
+                           final BulkListener<K, R> listener, final ReadStatistics statistics)
+      throws InterruptedException {
+
+    final Gate gate = new Gate(new AdaptiveLimit(1, maxConcurrency, Math.max(1, maxConcurrency / 2)));
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    Set<K> seen = new HashSet<>();
+    statistics.concurrencyLimit(gate.limit.get());
+
+    try {
+      while (failure.get() == null && keys.hasNext()) {
+        final K key = keys.next();
+        if (!seen.add(key)) {
+          statistics.duplicate();
+          continue;
+        }
+        gate.acquire();
+        statistics.started();
+        try {
+          pool.execute(new Runnable() {
+            @Override
+            public void run() {
+              BulkOutcome<K, R> outcome = null;
+              boolean overloaded = false;
+              try {
+                outcome = BulkExecutor.attempt(operation, key);
+                overloaded = isOverload(outcome.getError());
+                if (overloaded) {
+                  statistics.overloaded();
+                }
+                statistics.completed(outcome.isSuccess(), outcome.getLatencyNanos());
+                synchronized (listener) {
+                  listener.onOutcome(outcome);
+                }
+              } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+              } finally {
+                statistics.concurrencyLimit(gate.release(outcome != null ? outcome.getLatencyNanos() : 0,
+                    overloaded));
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          gate.release(0, false);
+          throw e;
+        }
+      }
+    } finally {
+      gate.awaitIdle();
+    }
+
+    // the listener failed
+    Throwable t = failure.get();
+    if (t instanceof RuntimeException) {
+      throw (RuntimeException) t;
+    } else if (t instanceof Error) {
+      throw (Error) t;
+    }
+  }
+
+  private static boolean isOverload(Exception error) {
+    if (error instanceof HttpResponseException) {
+      int status = ((HttpResponseException) error).getStatusCode();
+      return status == STATUS_TOO_MANY_REQUESTS || status >= STATUS_SERVER_ERROR;
+    }
+    return error instanceof IOException;
+  }
+
+  /**
+   * Admits requests while fewer than the adaptive limit are in flight
+   */
+  private static final class Gate {
+    final AdaptiveLimit limit;
+    private int inFlight = 0;
+
+    Gate(AdaptiveLimit limit) {
+      this.limit = limit;
+    }
+
+    synchronized void acquire() throws InterruptedException {
+      while (inFlight >= limit.get()) {
+        wait();
+      }
+      inFlight++;
+    }
+
+    /**
+     * @return The limit after the sample
+     */
+    synchronized int release(long latencyNanos, boolean overloaded) {
+      inFlight--;
+      if (latencyNanos > 0) {
+        limit.onSample(latencyNanos, overloaded);
+      }
+      notifyAll();
+      return limit.get();
+    }
+
+    synchronized void awaitIdle() {
+      boolean interrupted = false;
+      while (inFlight > 0) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
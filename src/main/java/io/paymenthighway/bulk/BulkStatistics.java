@@ -0,0 +1,110 @@
+package io.paymenthighway.bulk;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a bulk run. Updated while the run is going on, so it can be read from another thread, e.g. to log
+ * the progress periodically.
+ */
+public class BulkStatistics {
+
+  private final AtomicLong started = new AtomicLong();
+  private final AtomicLong succeeded = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong totalLatencyNanos = new AtomicLong();
+  private final AtomicLong maxLatencyNanos = new AtomicLong();
+  private final long startNanos = System.nanoTime();
+  private volatile long endNanos = 0;
+
+  /**
+   * @return The number of requests started
+   */
+  public long getStarted() {
+    return started.get();
+  }
+
+  /**
+   * @return The number of requests that got a response
+   */
+  public long getSucceeded() {
+    return succeeded.get();
+  }
+
+  /**
+   * @return The number of requests that failed
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * @return The number of requests finished
+   */
+  public long getCompleted() {
+    return succeeded.get() + failed.get();
+  }
+
+  /**
+   * @return The number of requests started but not finished
+   */
+  public long getInFlight() {
+    return started.get() - getCompleted();
+  }
+
+  /**
+   * @return The mean time of the finished requests, in milliseconds
+   */
+  public double getMeanLatencyMillis() {
+    long completed = getCompleted();
+    return completed > 0 ? totalLatencyNanos.get() / 1e6 / completed : 0;
+  }
+
+  /**
+   * @return The time of the slowest finished request, in milliseconds
+   */
+  public double getMaxLatencyMillis() {
+    return maxLatencyNanos.get() / 1e6;
+  }
+
+  /**
+   * @return The time since the statistics were created, up to the end of the run, in milliseconds
+   */
+  public long getElapsedMillis() {
+    long end = endNanos != 0 ? endNanos : System.nanoTime();
+    return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+  }
+
+  /**
+   * @return Finished requests per second
+   */
+  public double getThroughput() {
+    long elapsed = getElapsedMillis();
+    return elapsed > 0 ? getCompleted() * 1000.0 / elapsed : 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("completed %d/%d (%d failed) in %d ms, %.1f/s, mean %.1f ms, max %.1f ms",
+        getCompleted(), getStarted(), getFailed(), getElapsedMillis(), getThroughput(), getMeanLatencyMillis(),
+        getMaxLatencyMillis());
+  }
+
+  void started() {
+    started.incrementAndGet();
+  }
+
+  void completed(boolean success, long latencyNanos) {
+    totalLatencyNanos.addAndGet(latencyNanos);
+    long max = maxLatencyNanos.get();
+    while (latencyNanos > max && !maxLatencyNanos.compareAndSet(max, latencyNanos)) {
+      max = maxLatencyNanos.get();
+    }
+    // counted last, so a reader never sees a completion without its latency
+    (success ? succeeded : failed).incrementAndGet();
+  }
+
+  void finished() {
+    endNanos = System.nanoTime();
+  }
+}
@@ -0,0 +1,182 @@
+package io.paymenthighway.bulk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only progress file of a {@link RecurringChargeRunner}.
+ * <p/>
+ * The transaction id of a charge is recorded and synced to the storage device before the charge is debited, and
+ * the outcome is recorded after it. Threads that sync at the same time share a single force of the file, so the
+ * cost of the sync is spread over the charges in flight. A partially written last record, or the zero-filled block
+ * a crash can leave in its place, is dropped when the file is opened.
+ */
+final class ChargeJournal implements Closeable {
+
+  static final byte STARTED = 1;
+  static final byte CHARGED = 2;
+  static final byte DECLINED = 3;
+  static final byte FAILED = 4;
+
+  private static final int MAGIC = 0x53504852;
+  private static final byte VERSION = 1;
+  private static final int HEADER_LENGTH = 5;
+
+  private final File file;
+  private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+  private final FileChannel channel;
+  private final Object syncLock = new Object();
+
+  private long position;
+  private volatile long written;
+  private long synced;
+
+  ChargeJournal(File file) throws IOException {
+    this.file = file;
+    if (file.exists()) {
+      load();
+    }
+
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    if (this.channel.size() < HEADER_LENGTH) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      header.putInt(MAGIC).put(VERSION).flip();
+      this.channel.truncate(0);
+      this.channel.write(header, 0);
+      this.channel.force(false);
+    }
+    this.position = this.channel.size();
+    this.written = this.position;
+    this.synced = this.position;
+  }
+
+  /**
+   * @param chargeId The charge id
+   * @return The last recorded state of the charge, or null if it has not been started
+   */
+  Entry get(String chargeId) {
+    return entries.get(chargeId);
+  }
+
+  /**
+   * Record and sync the transaction id of a charge that is about to be debited
+   */
+  void started(String chargeId, UUID transactionId) throws IOException {
+    sync(append(chargeId, new Entry(transactionId, STARTED, "")));
+  }
+
+  /**
+   * Record the outcome of a charge. Persisted by the next sync or close.
+   */
+  void finished(String chargeId, UUID transactionId, byte state, String resultCode) throws IOException {
+    append(chargeId, new Entry(transactionId, state, resultCode != null ? resultCode : ""));
+  }
+
+  /**
+   * @return The number of charges recorded
+   */
+  int size() {
+    return entries.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      sync(written);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private long append(String chargeId, Entry entry) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(entry.state);
+    out.writeUTF(chargeId);
+    out.writeLong(entry.transactionId.getMostSignificantBits());
+    out.writeLong(entry.transactionId.getLeastSignificantBits());
+    if (entry.state != STARTED) {
+      out.writeUTF(entry.resultCode);
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+    synchronized (this) {
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+      written = position;
+      entries.put(chargeId, entry);
+      return position;
+    }
+  }
+
+  /**
+   * Force the file up to the position. A thread that finds the position already forced by another returns at once.
+   */
+  private void sync(long target) throws IOException {
+    synchronized (syncLock) {
+      if (synced >= target) {
+        return;
+      }
+      long end = written;
+      channel.force(false);
+      synced = end;
+    }
+  }
+
+  private void load() throws IOException {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    if (bytes.length < HEADER_LENGTH) {
+      return;
+    }
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+      throw new IOException("Not a charge progress file: " + file);
+    }
+
+    int valid = HEADER_LENGTH;
+    try {
+      while (in.available() > 0) {
+        byte state = in.readByte();
+        if (state < STARTED || state > FAILED) {
+          break;
+        }
+        String chargeId = in.readUTF();
+        UUID transactionId = new UUID(in.readLong(), in.readLong());
+        String resultCode = state != STARTED ? in.readUTF() : "";
+        entries.put(chargeId, new Entry(transactionId, state, resultCode));
+        valid = bytes.length - in.available();
+      }
+    } catch (EOFException | UTFDataFormatException e) {
+      // torn last record
+    }
+
+    if (valid < bytes.length) {
+      try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+        truncate.truncate(valid);
+      }
+    }
+  }
+
+  static final class Entry {
+    final UUID transactionId;
+    final byte state;
+    final String resultCode;
+
+    Entry(UUID transactionId, byte state, String resultCode) {
+      this.transactionId = transactionId;
+      this.state = state;
+      this.resultCode = resultCode;
+    }
+
+    boolean isFinished() {
+      return state != STARTED;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package io.paymenthighway.bulk;
+
+import java.util.UUID;
+
+/**
+ * The final state of a recurring charge
+ */
+public final class ChargeOutcome {
+
+  /**
+   * State of the charge
+   */
+  public enum State {
+    /** The debit succeeded */
+    CHARGED,
+    /** The debit was declined */
+    DECLINED,
+    /** The debit request was rejected, e.g. because of an invalid token */
+    FAILED
+  }
+
+  private final UUID transactionId;
+  private final State state;
+  private final String resultCode;
+  private final boolean recovered;
+
+  ChargeOutcome(UUID transactionId, State state, String resultCode, boolean recovered) {
+    this.transactionId = transactionId;
+    this.state = state;
+    this.resultCode = resultCode;
+    this.recovered = recovered;
+  }
+
+  public UUID getTransactionId() {
+    return transactionId;
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  /**
+   * @return The result code of the debit, or the status code of the transaction if the charge was recovered
+   */
+  public String getResultCode() {
+    return resultCode;
+  }
+
+  /**
+   * @return true if the charge was started by an earlier run and its outcome was looked up from the transaction
+   */
+  public boolean isRecovered() {
+    return recovered;
+  }
+}
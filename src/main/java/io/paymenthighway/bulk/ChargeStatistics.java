@@ -0,0 +1,66 @@
+package io.paymenthighway.bulk;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a {@link RecurringChargeRunner} run. Requests that failed without a known outcome, e.g. because of a
+ * network error, are counted as failed and are resolved by the next run.
+ */
+public class ChargeStatistics extends BulkStatistics {
+
+  private final AtomicLong charged = new AtomicLong();
+  private final AtomicLong declined = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong skipped = new AtomicLong();
+
+  /**
+   * @return The number of charges debited
+   */
+  public long getCharged() {
+    return charged.get();
+  }
+
+  /**
+   * @return The number of charges declined
+   */
+  public long getDeclined() {
+    return declined.get();
+  }
+
+  /**
+   * @return The number of debit requests rejected by Payment Highway
+   */
+  public long getRejected() {
+    return rejected.get();
+  }
+
+  /**
+   * @return The number of charges skipped because an earlier run completed them
+   */
+  public long getSkipped() {
+    return skipped.get();
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + String.format(", charged %d, declined %d, rejected %d, skipped %d",
+        getCharged(), getDeclined(), getRejected(), getSkipped());
+  }
+
+  void outcome(ChargeOutcome.State state) {
+    switch (state) {
+      case CHARGED:
+        charged.incrementAndGet();
+        break;
+      case DECLINED:
+        declined.incrementAndGet();
+        break;
+      default:
+        rejected.incrementAndGet();
+    }
+  }
+
+  void skipped() {
+    skipped.incrementAndGet();
+  }
+}
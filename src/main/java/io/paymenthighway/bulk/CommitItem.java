@@ -0,0 +1,41 @@
+package io.paymenthighway.bulk;
+
+import java.util.UUID;
+
+/**
+ * A transaction to commit, see {@link io.paymenthighway.PaymentAPI#commitTransactions}
+ */
+public final class CommitItem {
+
+  private final UUID transactionId;
+  private final String amount;
+  private final String currency;
+
+  /**
+   * @param transactionId The transaction id
+   * @param amount The amount to commit, must be less or equal than the initial transaction amount
+   * @param currency The original transaction currency
+   */
+  public CommitItem(UUID transactionId, String amount, String currency) {
+    this.transactionId = transactionId;
+    this.amount = amount;
+    this.currency = currency;
+  }
+
+  public UUID getTransactionId() {
+    return transactionId;
+  }
+
+  public String getAmount() {
+    return amount;
+  }
+
+  public String getCurrency() {
+    return currency;
+  }
+
+  @Override
+  public String toString() {
+    return transactionId + " " + amount + " " + currency;
+  }
+}
@@ -0,0 +1,47 @@
+package io.paymenthighway.bulk;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Spaces requests evenly to at most the given number per second.
+ * <p/>
+ * Each call reserves the next free slot and sleeps until it, outside the lock, so waiting threads do not hold each
+ * other up. Unused time is not saved for later bursts. Thread safe.
+ */
+public class RateLimiter {
+
+  private final long intervalNanos;
+  private long nextFreeNanos = System.nanoTime();
+
+  /**
+   * @param permitsPerSecond The maximum rate, must be positive
+   */
+  public RateLimiter(double permitsPerSecond) {
+    if (!(permitsPerSecond > 0)) {
+      throw new IllegalArgumentException("permitsPerSecond must be positive");
+    }
+    this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+  }
+
+  /**
+   * Wait for the next slot
+   *
+   * @throws InterruptedException
+   */
+  public void acquire() throws InterruptedException {
+    long waitNanos = reserve(System.nanoTime());
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /**
+   * @param nowNanos The current time
+   * @return The time to wait for the reserved slot, in nanoseconds
+   */
+  synchronized long reserve(long nowNanos) {
+    long slot = Math.max(nextFreeNanos, nowNanos);
+    nextFreeNanos = slot + intervalNanos;
+    return slot - nowNanos;
+  }
+}
@@ -0,0 +1,52 @@
+package io.paymenthighway.bulk;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a {@link BulkReader} run
+ */
+public class ReadStatistics extends BulkStatistics {
+
+  private final AtomicLong duplicates = new AtomicLong();
+  private final AtomicLong overloaded = new AtomicLong();
+  private volatile int concurrencyLimit = 0;
+
+  /**
+   * @return The number of keys skipped because they were read earlier in the run
+   */
+  public long getDuplicates() {
+    return duplicates.get();
+  }
+
+  /**
+   * @return The number of requests that failed with a sign of overload, e.g. HTTP 429, 5xx or an I/O error
+   */
+  public long getOverloaded() {
+    return overloaded.get();
+  }
+
+  /**
+   * @return The current limit of requests in flight
+   */
+  public int getConcurrencyLimit() {
+    return concurrencyLimit;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + String.format(", duplicates %d, overloaded %d, concurrency limit %d",
+        getDuplicates(), getOverloaded(), getConcurrencyLimit());
+  }
+
+  void duplicate() {
+    duplicates.incrementAndGet();
+  }
+
+  void overloaded() {
+    overloaded.incrementAndGet();
+  }
+
+  void concurrencyLimit(int limit) {
+    concurrencyLimit = limit;
+  }
+}
@@ -0,0 +1,52 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.model.Token;
+
+/**
+ * A charge of a stored card token, see {@link RecurringChargeRunner}
+ */
+public final class RecurringCharge {
+
+  private final String chargeId;
+  private final Token token;
+  private final String amount;
+  private final String currency;
+
+  /**
+   * @param chargeId Identifies the charge across runs, e.g. subscription id and billing period. A charge that has
+   *                 been completed under the same id is not charged again.
+   * @param token The card token
+   * @param amount The amount in the smallest currency unit
+   * @param currency The currency
+   */
+  public RecurringCharge(String chargeId, Token token, String amount, String currency) {
+    if (chargeId == null || chargeId.isEmpty()) {
+      throw new IllegalArgumentException("chargeId must not be empty");
+    }
+    this.chargeId = chargeId;
+    this.token = token;
+    this.amount = amount;
+    this.currency = currency;
+  }
+
+  public String getChargeId() {
+    return chargeId;
+  }
+
+  public Token getToken() {
+    return token;
+  }
+
+  public String getAmount() {
+    return amount;
+  }
+
+  public String getCurrency() {
+    return currency;
+  }
+
+  @Override
+  public String toString() {
+    return chargeId + " " + amount + " " + currency;
+  }
+}
@@ -0,0 +1,249 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.model.request.TransactionRequest;
+import io.paymenthighway.model.response.InitTransactionResponse;
+import io.paymenthighway.model.response.Response;
+import io.paymenthighway.model.response.Result;
+import io.paymenthighway.model.response.Status;
+import io.paymenthighway.model.response.TransactionResponse;
+import io.paymenthighway.model.response.TransactionStatus;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Debits stored card tokens in bulk, e.g. for monthly subscriptions.
+ * <p/>
+ * Each charge is an init transaction followed by a debit, and the charges run concurrently on a
+ * {@link BulkExecutor}. The progress is recorded in an append-only file: the transaction id is synced to the file
+ * before the debit is sent, and the outcome is recorded after it. When a run is started again with the same file,
+ * completed charges are skipped, and a charge that was interrupted after its debit was sent is looked up with a
+ * transaction status request instead of being charged again.
+ */
+public class RecurringChargeRunner implements Closeable {
+
+  private static final String RESULT_OK = "100";
+  private static final String STATE_OK = "ok";
+  private static final String STATE_IN_PROGRESS = "in progress";
+  private static final int STATUS_BAD_REQUEST = 400;
+  private static final int STATUS_NOT_FOUND = 404;
+  private static final int STATUS_CONFLICT = 409;
+  private static final int STATUS_UNPROCESSABLE_ENTITY = 422;
+
+  private final PaymentAPI paymentAPI;
+  private final BulkExecutor executor;
+  private final ChargeJournal journal;
+  private final ConcurrentHashMap<String, Boolean> running = new ConcurrentHashMap<>();
+
+  /**
+   * @param paymentAPI The Payment API of the merchant
+   * @param executor Runs the charges with the wanted concurrency and rate limit
+   * @param progressFile The file where the progress is recorded, created if it does not exist
+   * @throws IOException
+   */
+  public RecurringChargeRunner(PaymentAPI paymentAPI, BulkExecutor executor, File progressFile) throws IOException {
+    this.paymentAPI = paymentAPI;
+    this.executor = executor;
+    this.journal = new ChargeJournal(progressFile);
+  }
+
+  /**
+   * Charge each charge that has not been completed by an earlier run
+   *
+   * @param charges The charges
+   * @param listener Receives the outcome or error of each charge as soon as it finishes
+   * @return ChargeStatistics of the run
+   * @throws InterruptedException
+   */
+  public ChargeStatistics run(Iterable<RecurringCharge> charges, BulkListener<RecurringCharge, ChargeOutcome> listener)
+      throws InterruptedException {
+    return run(charges.iterator(), listener, new ChargeStatistics());
+  }
+
+  /**
+   * Charge each charge that has not been completed by an earlier run
+   *
+   * @param charges The charges
+   * @param listener Receives the outcome or error of each charge as soon as it finishes
+   * @param statistics The statistics to update, can be read from another thread while the run goes on
+   * @return ChargeStatistics of the run
+   * @throws InterruptedException
+   */
+  public ChargeStatistics run(Iterator<RecurringCharge> charges, BulkListener<RecurringCharge, ChargeOutcome> listener,
+                              final ChargeStatistics statistics) throws InterruptedException {
+
+    executor.execute(new PendingCharges(charges, statistics), new BulkOperation<RecurringCharge, ChargeOutcome>() {
+      @Override
+      public ChargeOutcome execute(RecurringCharge charge) throws IOException {
+        ChargeOutcome outcome = charge(charge);
+        statistics.outcome(outcome.getState());
+        return outcome;
+      }
+    }, listener, statistics);
+    return statistics;
+  }
+
+  @Override
+  public void close() throws IOException {
+    journal.close();
+  }
+
+  private ChargeOutcome charge(RecurringCharge charge) throws IOException {
+    String chargeId = charge.getChargeId();
+    if (running.putIfAbsent(chargeId, Boolean.TRUE) != null) {
+      throw new IllegalStateException("Charge " + chargeId + " is already running");
+    }
+    try {
+      ChargeJournal.Entry entry = journal.get(chargeId);
+      if (entry != null && entry.isFinished()) {
+        return outcome(entry, true);
+      }
+
+      if (entry != null) {
+        ChargeOutcome recovered = recover(chargeId, entry);
+        if (recovered != null) {
+          return recovered;
+        }
+        // the debit never reached Payment Highway, send it again with the same transaction id
+        return debit(charge, entry);
+      }
+
+      InitTransactionResponse init = paymentAPI.initTransaction();
+      if (init == null || init.getId() == null) {
+        throw new IOException("Init transaction failed for charge " + chargeId + ": " + resultCode(init));
+      }
+      entry = new ChargeJournal.Entry(init.getId(), ChargeJournal.STARTED, "");
+      journal.started(chargeId, entry.transactionId);
+      return debit(charge, entry);
+    } finally {
+      running.remove(chargeId);
+    }
+  }
+
+  private ChargeOutcome debit(RecurringCharge charge, ChargeJournal.Entry entry) throws IOException {
+    TransactionRequest request = new TransactionRequest(charge.getToken(), charge.getAmount(), charge.getCurrency());
+    TransactionResponse response;
+    try {
+      response = paymentAPI.debitTransaction(entry.transactionId, request);
+    } catch (HttpResponseException e) {
+      if (!isRejection(e.getStatusCode())) {
+        // outcome unknown, or the request may succeed later (throttled, wrong key), resolved by the next run
+        throw e;
+      }
+      return finish(charge.getChargeId(), entry, ChargeJournal.FAILED, String.valueOf(e.getStatusCode()), false);
+    }
+
+    String code = resultCode(response);
+    byte state = RESULT_OK.equals(code) ? ChargeJournal.CHARGED : ChargeJournal.DECLINED;
+    return finish(charge.getChargeId(), entry, state, code, false);
+  }
+
+  /**
+   * Look up a charge that was interrupted after it was recorded as started
+   *
+   * @return The outcome, or null if the transaction was never debited
+   */
+  private ChargeOutcome recover(String chargeId, ChargeJournal.Entry entry) throws IOException {
+    TransactionStatus transaction;
+    try {
+      transaction = paymentAPI.transactionStatus(entry.transactionId).getTransaction();
+    } catch (HttpResponseException e) {
+      if (e.getStatusCode() == STATUS_NOT_FOUND) {
+        return null;
+      }
+      throw e;
+    }
+
+    Status status = transaction != null ? transaction.getStatus() : null;
+    if (status == null || status.getState() == null) {
+      return null;
+    }
+    if (STATE_IN_PROGRESS.equals(status.getState())) {
+      throw new IOException("Charge " + chargeId + " is still in progress");
+    }
+    byte state = STATE_OK.equals(status.getState()) ? ChargeJournal.CHARGED : ChargeJournal.DECLINED;
+    return finish(chargeId, entry, state, status.getCode(), true);
+  }
+
+  private ChargeOutcome finish(String chargeId, ChargeJournal.Entry entry, byte state, String code,
+                               boolean recovered) throws IOException {
+    journal.finished(chargeId, entry.transactionId, state, code);
+    return outcome(new ChargeJournal.Entry(entry.transactionId, state, code), recovered);
+  }
+
+  private static ChargeOutcome outcome(ChargeJournal.Entry entry, boolean recovered) {
+    ChargeOutcome.State state;
+    switch (entry.state) {
+      case ChargeJournal.CHARGED:
+        state = ChargeOutcome.State.CHARGED;
+        break;
+      case ChargeJournal.DECLINED:
+        state = ChargeOutcome.State.DECLINED;
+        break;
+      default:
+        state = ChargeOutcome.State.FAILED;
+    }
+    return new ChargeOutcome(entry.transactionId, state, entry.resultCode, recovered);
+  }
+
+  /**
+   * @return true if the status is a definitive rejection of the debit, which sending it again would not change
+   */
+  private static boolean isRejection(int status) {
+    return status == STATUS_BAD_REQUEST || status == STATUS_CONFLICT || status == STATUS_UNPROCESSABLE_ENTITY;
+  }
+
+  private static String resultCode(Response response) {
+    Result result = response != null ? response.getResult() : null;
+    return result != null ? result.getCode() : null;
+  }
+
+  /**
+   * The charges that have not been completed by an earlier run
+   */
+  private final class PendingCharges implements Iterator<RecurringCharge> {
+    private final Iterator<RecurringCharge> charges;
+    private final ChargeStatistics statistics;
+    private RecurringCharge next;
+
+    PendingCharges(Iterator<RecurringCharge> charges, ChargeStatistics statistics) {
+      this.charges = charges;
+      this.statistics = statistics;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && charges.hasNext()) {
+        RecurringCharge charge = charges.next();
+        ChargeJournal.Entry entry = journal.get(charge.getChargeId());
+        if (entry != null && entry.isFinished()) {
+          statistics.skipped();
+        } else {
+          next = charge;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public RecurringCharge next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      RecurringCharge charge = next;
+      next = null;
+      return charge;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Running large numbers of Payment API requests with bounded concurrency
+ */
+package io.paymenthighway.bulk;
@@ -0,0 +1,92 @@
+package io.paymenthighway.clock;
+
+/**
+ * System clock that formats the timestamp only once per second.
+ * <p/>
+ * The formatted second is kept in an immutable holder that is replaced when the second changes, so reading the
+ * timestamp does not allocate or lock. Thread safe.
+ */
+public class CachedUtcClock implements UtcClock {
+
+  /**
+   * Shared instance of the system clock
+   */
+  public static final CachedUtcClock INSTANCE = new CachedUtcClock();
+
+  private volatile Second current = new Second(Long.MIN_VALUE, null);
+
+  @Override
+  public long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+
+  @Override
+  public String getUtcTimestamp() {
+    long second = floorDiv(currentTimeMillis(), 1000);
+    Second cached = current;
+    if (cached.second != second) {
+      cached = new Second(second, format(second));
+      current = cached;
+    }
+    return cached.timestamp;
+  }
+
+  /**
+   * Format a time in ISO 8601 combined date and time in UTC, e.g. 2014-09-18T10:32:59Z
+   *
+   * @param epochSecond Seconds since the epoch
+   * @return String timestamp
+   */
+  public static String format(long epochSecond) {
+    long days = floorDiv(epochSecond, 86400);
+    int secondOfDay = (int) (epochSecond - days * 86400);
+
+    // civil date from days since 1970-01-01 in the proleptic Gregorian calendar
+    long z = days + 719468;
+    long era = (z >= 0 ? z : z - 146096) / 146097;
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    char[] chars = new char[20];
+    put(chars, 0, (int) year, 4);
+    chars[4] = '-';
+    put(chars, 5, month, 2);
+    chars[7] = '-';
+    put(chars, 8, day, 2);
+    chars[10] = 'T';
+    put(chars, 11, secondOfDay / 3600, 2);
+    chars[13] = ':';
+    put(chars, 14, secondOfDay / 60 % 60, 2);
+    chars[16] = ':';
+    put(chars, 17, secondOfDay % 60, 2);
+    chars[19] = 'Z';
+    return new String(chars);
+  }
+
+  private static void put(char[] chars, int offset, int value, int digits) {
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      chars[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+  }
+
+  private static final class Second {
+    final long second;
+    final String timestamp;
+
+    Second(long second, String timestamp) {
+      this.second = second;
+      this.timestamp = timestamp;
+    }
+  }
+}
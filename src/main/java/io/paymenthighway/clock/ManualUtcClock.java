@@ -0,0 +1,35 @@
+package io.paymenthighway.clock;
+
+/**
+ * Clock that only moves when told to, for tests
+ */
+public class ManualUtcClock extends CachedUtcClock {
+
+  private volatile long millis;
+
+  /**
+   * @param millis The initial time in milliseconds since the epoch
+   */
+  public ManualUtcClock(long millis) {
+    this.millis = millis;
+  }
+
+  @Override
+  public long currentTimeMillis() {
+    return millis;
+  }
+
+  /**
+   * @param millis The time in milliseconds since the epoch
+   */
+  public void setTimeMillis(long millis) {
+    this.millis = millis;
+  }
+
+  /**
+   * @param millis Milliseconds to move the clock forward
+   */
+  public synchronized void advance(long millis) {
+    this.millis += millis;
+  }
+}
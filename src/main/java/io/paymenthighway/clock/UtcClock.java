@@ -0,0 +1,19 @@
+package io.paymenthighway.clock;
+
+/**
+ * Source of the current time for request timestamps
+ */
+public interface UtcClock {
+
+  /**
+   * @return The current time in milliseconds since the epoch
+   */
+  long currentTimeMillis();
+
+  /**
+   * Current time in ISO 8601 combined date and time in UTC.
+   *
+   * @return String timestamp Example: 2014-09-18T10:32:59Z
+   */
+  String getUtcTimestamp();
+}
@@ -0,0 +1,4 @@
+/**
+ * Clocks for request timestamps
+ */
+package io.paymenthighway.clock;
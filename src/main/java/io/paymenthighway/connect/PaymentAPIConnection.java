@@ -1,13 +1,21 @@
 package io.paymenthighway.connect;
 
-import io.paymenthighway.PaymentHighwayUtility;
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.clock.UtcClock;
+import io.paymenthighway.id.BufferedRequestIdGenerator;
+import io.paymenthighway.id.RequestIdGenerator;
 import io.paymenthighway.exception.AuthenticationException;
+import io.paymenthighway.journal.JournalEntry;
+import io.paymenthighway.journal.PaymentJournal;
 import io.paymenthighway.json.JsonGenerator;
 import io.paymenthighway.json.JsonParser;
+import io.paymenthighway.json.ParallelReportParser;
 import io.paymenthighway.model.request.*;
 import io.paymenthighway.model.response.*;
 import io.paymenthighway.model.response.transaction.DebitTransactionResponse;
 import io.paymenthighway.security.SecureSigner;
+import io.paymenthighway.trace.CallTrace;
+import io.paymenthighway.trace.Tracers;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.HttpResponseException;
 import org.apache.http.client.ResponseHandler;
@@ -36,6 +44,10 @@ public class PaymentAPIConnection implements Closeable {
   private static final String METHOD_POST = "POST";
   private static final String METHOD_GET = "GET";
   private static final String SPH_API_VERSION = "20160630";
+  private static final int DEFAULT_MAX_CONNECTIONS = 20;
+  private static final int STATUS_BAD_REQUEST = 400;
+  private static final int STATUS_CONFLICT = 409;
+  private static final int STATUS_UNPROCESSABLE_ENTITY = 422;
 
   private String serviceUrl = "";
   private String signatureKeyId = null;
@@ -43,7 +55,13 @@ public class PaymentAPIConnection implements Closeable {
   private String account = null;
   private String merchant = null;
 
+  private final SecureSigner ss;
   private CloseableHttpClient httpclient;
+  private boolean closeHttpClient = true;
+  private ParallelReportParser reportParser;
+  private UtcClock clock = CachedUtcClock.INSTANCE;
+  private RequestIdGenerator requestIdGenerator = BufferedRequestIdGenerator.INSTANCE;
+  private PaymentJournal journal;
 
   /**
    * Constructor
@@ -61,20 +79,77 @@ public class PaymentAPIConnection implements Closeable {
     this.signatureSecret = signatureSecret;
     this.account = account;
     this.merchant = merchant;
+    this.ss = new SecureSigner(signatureKeyId, signatureSecret);
   }
 
-  public void setHttpClient(CloseableHttpClient httpClient) {
+  /**
+   * Connection that signs with a signer and sends with an HTTP client shared with other connections. Closing the
+   * connection does not close the client.
+   *
+   * @param serviceUrl
+   * @param signer The signer of the signature key
+   * @param account
+   * @param merchant
+   * @param sharedHttpClient The client, closed by its owner
+   */
+  public PaymentAPIConnection(String serviceUrl, SecureSigner signer, String account, String merchant,
+                              CloseableHttpClient sharedHttpClient) {
+
+    this.serviceUrl = serviceUrl;
+    this.signatureKeyId = signer.getSecretKeyId();
+    this.account = account;
+    this.merchant = merchant;
+    this.ss = signer;
+    this.httpclient = sharedHttpClient;
+    this.closeHttpClient = false;
+  }
+
+  public synchronized void setHttpClient(CloseableHttpClient httpClient) {
     this.httpclient = httpClient;
+    this.closeHttpClient = true;
+  }
+
+  /**
+   * Decode the settlements of reconciliation reports in parallel with the given parser.
+   *
+   * @param reportParser The parser, or null to decode reports on the calling thread
+   */
+  public void setReportParser(ParallelReportParser reportParser) {
+    this.reportParser = reportParser;
+  }
+
+  /**
+   * Set the clock the request timestamps are taken from
+   *
+   * @param clock The clock
+   */
+  public void setClock(UtcClock clock) {
+    this.clock = clock;
+  }
+
+  /**
+   * Set the generator of the request ids
+   *
+   * @param requestIdGenerator The generator
+   */
+  public void setRequestIdGenerator(RequestIdGenerator requestIdGenerator) {
+    this.requestIdGenerator = requestIdGenerator;
+  }
+
+  /**
+   * Record the debit, credit, commit and revert requests in a write-ahead journal
+   *
+   * @param journal The journal, or null to not record the requests
+   */
+  public void setJournal(PaymentJournal journal) {
+    this.journal = journal;
   }
 
   public InitTransactionResponse initTransactionHandle() throws IOException {
 
     final String paymentUri = "/transaction";
 
-    String response = executePost(paymentUri, createNameValuePairs());
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, InitTransactionResponse.class);
+    return executePost(paymentUri, null, InitTransactionResponse.class);
   }
 
   public DebitTransactionResponse debitTransaction(UUID transactionId, TransactionRequest request) throws IOException {
@@ -83,10 +158,8 @@ public class PaymentAPIConnection implements Closeable {
     final String actionUri = "/debit";
     String debitUri = paymentUri + transactionId + actionUri;
 
-    String response = executePost(debitUri, createNameValuePairs(), request);
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, DebitTransactionResponse.class);
+    return executeJournaled(JournalEntry.Operation.DEBIT, transactionId, debitUri, request,
+        DebitTransactionResponse.class);
   }
 
   public TransactionResponse creditTransaction(UUID transactionId, TransactionRequest request) throws IOException {
@@ -95,10 +168,8 @@ public class PaymentAPIConnection implements Closeable {
     final String actionUri = "/credit";
     String creditUri = paymentUri + transactionId + actionUri;
 
-    String response = executePost(creditUri, createNameValuePairs(), request);
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, TransactionResponse.class);
+    return executeJournaled(JournalEntry.Operation.CREDIT, transactionId, creditUri, request,
+        TransactionResponse.class);
   }
 
   public TransactionResponse revertTransaction(UUID transactionId, RevertTransactionRequest request) throws IOException {
@@ -107,10 +178,8 @@ public class PaymentAPIConnection implements Closeable {
     final String actionUri = "/revert";
     String revertUri = paymentUri + transactionId + actionUri;
 
-    String response = executePost(revertUri, createNameValuePairs(), request);
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, TransactionResponse.class);
+    return executeJournaled(JournalEntry.Operation.REVERT, transactionId, revertUri, request,
+        TransactionResponse.class);
   }
 
   public CommitTransactionResponse commitTransaction(UUID transactionId, CommitTransactionRequest request) throws IOException {
@@ -119,10 +188,8 @@ public class PaymentAPIConnection implements Closeable {
     final String actionUri = "/commit";
     String commitUri = paymentUri + transactionId + actionUri;
 
-    String response = executePost(commitUri, createNameValuePairs(), request);
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, CommitTransactionResponse.class);
+    return executeJournaled(JournalEntry.Operation.COMMIT, transactionId, commitUri, request,
+        CommitTransactionResponse.class);
   }
 
   public TransactionResultResponse transactionResult(UUID transactionId) throws IOException {
@@ -131,10 +198,7 @@ public class PaymentAPIConnection implements Closeable {
     final String actionUri = "/result";
     String transactionResultUrl = paymentUri + transactionId + actionUri;
 
-    String response = executeGet(transactionResultUrl, createNameValuePairs());
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, TransactionResultResponse.class);
+    return executeGet(transactionResultUrl, TransactionResultResponse.class);
   }
 
   public TransactionStatusResponse transactionStatus(UUID transactionId) throws IOException {
@@ -143,10 +207,7 @@ public class PaymentAPIConnection implements Closeable {
 
     String statusUri = paymentUri + transactionId;
 
-    String response = executeGet(statusUri, createNameValuePairs());
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, TransactionStatusResponse.class);
+    return executeGet(statusUri, TransactionStatusResponse.class);
   }
 
   public OrderSearchResponse searchOrders(String order) throws IOException {
@@ -155,10 +216,7 @@ public class PaymentAPIConnection implements Closeable {
 
     String searchUri = paymentUri + order;
 
-    String response = executeGet(searchUri, createNameValuePairs());
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, OrderSearchResponse.class);
+    return executeGet(searchUri, OrderSearchResponse.class);
   }
 
   public TokenizationResponse tokenization(UUID tokenizationId) throws IOException {
@@ -167,22 +225,29 @@ public class PaymentAPIConnection implements Closeable {
 
     String tokenUri = paymentUri + tokenizationId;
 
-    String response = executeGet(tokenUri, createNameValuePairs());
+    return executeGet(tokenUri, TokenizationResponse.class);
+  }
+
+  public ReportResponse fetchReport(String date) throws IOException {
+
+    String response = fetchReportJson(date);
 
     JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, TokenizationResponse.class);
+    return jpar.mapResponse(response, ReportResponse.class);
   }
 
-  public ReportResponse fetchReport(String date) throws IOException {
+  /**
+   * @param date The date of the daily batch report
+   * @return The verified response body
+   * @throws IOException
+   */
+  public String fetchReportJson(String date) throws IOException {
 
     final String reportUri = "/report/batch/";
 
     String fetchUri = reportUri + date;
 
-    String response = executeGet(fetchUri, createNameValuePairs());
-
-    JsonParser jpar = new JsonParser();
-    return jpar.mapResponse(response, ReportResponse.class);
+    return executeGet(fetchUri, createNameValuePairs());
   }
 
   public ReconciliationReportResponse fetchReconciliationReport(String date) throws IOException {
@@ -190,86 +255,150 @@ public class PaymentAPIConnection implements Closeable {
   }
 
   public ReconciliationReportResponse fetchReconciliationReport(String date, Boolean useDateProcessed) throws IOException {
-    final String reportUri = "/report/reconciliation/";
-
-    String queryString = String.format("?use-date-processed=%s", useDateProcessed);
+    String response = fetchReconciliationReportJson(date, useDateProcessed);
 
-    String fetchUri = reportUri + date + queryString;
-
-    String response = executeGet(fetchUri, createNameValuePairs());
+    if (reportParser != null) {
+      return reportParser.mapReconciliationReportResponse(response);
+    }
 
     JsonParser jpar = new JsonParser();
     return jpar.mapResponse(response, ReconciliationReportResponse.class);
   }
 
-  protected String executeGet(String requestUri, List<NameValuePair> nameValuePairs) throws IOException {
-    CloseableHttpClient httpclient = returnHttpClients();
+  /**
+   * @param date The date of the reconciliation report
+   * @param useDateProcessed Use the date the settlements were processed instead of the settlement date
+   * @return The verified response body
+   * @throws IOException
+   */
+  public String fetchReconciliationReportJson(String date, Boolean useDateProcessed) throws IOException {
+    final String reportUri = "/report/reconciliation/";
 
-    SecureSigner ss = new SecureSigner(this.signatureKeyId, this.signatureSecret);
+    String queryString = String.format("?use-date-processed=%s", useDateProcessed);
 
-    HttpRequestBase httpRequest = new HttpGet(this.serviceUrl + requestUri);
+    String fetchUri = reportUri + date + queryString;
 
-    String signature = this.createSignature(ss, METHOD_GET, requestUri, nameValuePairs, null);
-    nameValuePairs.add(new BasicNameValuePair("signature", signature));
+    return executeGet(fetchUri, createNameValuePairs());
+  }
 
-    this.addHeaders(httpRequest, nameValuePairs);
+  protected String executeGet(String requestUri, List<NameValuePair> nameValuePairs) throws IOException {
 
-    ResponseHandler<String> responseHandler = new PaymentHighwayResponseHandler(ss, METHOD_GET, requestUri);
+    HttpRequestBase httpRequest = new HttpGet(this.serviceUrl + requestUri);
 
-    return httpclient.execute(httpRequest, responseHandler);
+    return execute(httpRequest, METHOD_GET, requestUri, nameValuePairs, "");
   }
 
   protected String executePost(String requestUri, List<NameValuePair> nameValuePairs, Request requestBody) throws IOException {
-    CloseableHttpClient httpclient = returnHttpClients();
-
-    SecureSigner ss = new SecureSigner(this.signatureKeyId, this.signatureSecret);
 
     HttpPost httpRequest = new HttpPost(this.serviceUrl + requestUri);
 
-    String signature = this.createSignature(ss, METHOD_POST, requestUri, nameValuePairs, requestBody);
-    nameValuePairs.add(new BasicNameValuePair("signature", signature));
+    String json = requestBody != null ? new JsonGenerator().createTransactionJson(requestBody) : "";
+    if (requestBody != null) {
+      httpRequest.setEntity(new StringEntity(json, "utf-8"));
+    }
 
-    this.addHeaders(httpRequest, nameValuePairs);
+    return execute(httpRequest, METHOD_POST, requestUri, nameValuePairs, json);
+  }
 
-    if (requestBody != null) {
-      this.addBody(httpRequest, requestBody);
+  /**
+   * Sign and send a request, tracing the call up to the verified response
+   */
+  private String execute(HttpRequestBase httpRequest, String method, String requestUri,
+                         List<NameValuePair> nameValuePairs, String json) throws IOException {
+    CallTrace trace = Tracers.getTracer().startCall(method, requestUri);
+    try {
+      CloseableHttpClient httpclient = returnHttpClients();
+
+      String signature = ss.createSignature(method, requestUri, nameValuePairs, json);
+      nameValuePairs.add(new BasicNameValuePair("signature", signature));
+      trace.signed(json.length());
+
+      this.addHeaders(httpRequest, nameValuePairs);
+
+      ResponseHandler<String> responseHandler = new PaymentHighwayResponseHandler(ss, method, requestUri, trace);
+
+      return httpclient.execute(httpRequest, responseHandler);
+    } catch (IOException | RuntimeException e) {
+      trace.failed(e);
+      throw e;
+    } finally {
+      trace.end();
     }
+  }
 
-    ResponseHandler<String> responseHandler = new PaymentHighwayResponseHandler(ss, METHOD_POST, requestUri);
+  private <T extends Response> T executeGet(String requestUri, Class<T> responseType) throws IOException {
+    return decode(executeGet(requestUri, createNameValuePairs()), responseType);
+  }
 
-    return httpclient.execute(httpRequest, responseHandler);
+  private <T extends Response> T executePost(String requestUri, Request request, Class<T> responseType)
+      throws IOException {
+    return decode(executePost(requestUri, createNameValuePairs(), request), responseType);
   }
 
-  private String executePost(String requestUri, List<NameValuePair> nameValuePairs) throws IOException {
-    return executePost(requestUri, nameValuePairs, null);
+  private static <T extends Response> T decode(String response, Class<T> responseType) {
+    JsonParser jpar = new JsonParser();
+    return jpar.mapResponse(response, responseType);
   }
 
-  protected void addHeaders(HttpRequestBase httpPost, List<NameValuePair> nameValuePairs) {
+  /**
+   * Post a request that changes the transaction, recording it in the journal if one is set. The intent is on the
+   * storage device before the request is sent. Requests that fail without a response, or with a status that does
+   * not tell whether the operation was done, stay unresolved.
+   */
+  private <T extends Response> T executeJournaled(JournalEntry.Operation operation, UUID transactionId,
+                                                  String requestUri, Request request, Class<T> responseType)
+      throws IOException {
+
+    List<NameValuePair> nameValuePairs = createNameValuePairs();
+    PaymentJournal journal = this.journal;
+    String requestId = null;
+    if (journal != null) {
+      requestId = findValue(nameValuePairs, "sph-request-id");
+      journal.recordIntent(operation, transactionId, requestId);
+    }
 
-    httpPost.addHeader(HTTP.USER_AGENT, USER_AGENT);
-    httpPost.addHeader(HTTP.CONTENT_TYPE, "application/json; charset=utf-8");
+    String response;
+    try {
+      response = executePost(requestUri, nameValuePairs, request);
+    } catch (HttpResponseException e) {
+      if (journal != null && isRejection(e.getStatusCode())) {
+        journal.recordRejected(operation, transactionId, requestId, e.getStatusCode());
+      }
+      throw e;
+    }
 
-    for (NameValuePair param : nameValuePairs) {
-      httpPost.addHeader(param.getName(), param.getValue());
+    T mapped = decode(response, responseType);
+    if (journal != null) {
+      Result result = mapped != null ? mapped.getResult() : null;
+      journal.recordCompleted(operation, transactionId, requestId, result != null ? result.getCode() : null);
     }
+    return mapped;
   }
 
-  private void addBody(HttpPost httpPost, Request request) {
-    JsonGenerator jsonGen = new JsonGenerator();
-    String requestBody = jsonGen.createTransactionJson(request);
-    StringEntity requestEntity = new StringEntity(requestBody, "utf-8");
+  /**
+   * @return true if the status is a definitive rejection of the request, which sending it again would not change
+   */
+  private static boolean isRejection(int status) {
+    return status == STATUS_BAD_REQUEST || status == STATUS_CONFLICT || status == STATUS_UNPROCESSABLE_ENTITY;
+  }
 
-    httpPost.setEntity(requestEntity);
+  private static String findValue(List<NameValuePair> nameValuePairs, String name) {
+    for (NameValuePair pair : nameValuePairs) {
+      if (pair.getName().equals(name)) {
+        return pair.getValue();
+      }
+    }
+    return null;
   }
 
-  private String createSignature(SecureSigner ss, String method, String uri, List<NameValuePair> nameValuePairs, Request request) {
+  protected void addHeaders(HttpRequestBase httpPost, List<NameValuePair> nameValuePairs) {
+
+    httpPost.addHeader(HTTP.USER_AGENT, USER_AGENT);
+    httpPost.addHeader(HTTP.CONTENT_TYPE, "application/json; charset=utf-8");
 
-    String json = "";
-    if (request != null) {
-      JsonGenerator jsonGenerator = new JsonGenerator();
-      json = jsonGenerator.createTransactionJson(request);
+    for (NameValuePair param : nameValuePairs) {
+      httpPost.addHeader(param.getName(), param.getValue());
     }
-    return ss.createSignature(method, uri, nameValuePairs, json);
   }
 
   /**
@@ -282,21 +411,25 @@ public class PaymentAPIConnection implements Closeable {
     nameValuePairs.add(new BasicNameValuePair("sph-api-version", SPH_API_VERSION));
     nameValuePairs.add(new BasicNameValuePair("sph-account", this.account));
     nameValuePairs.add(new BasicNameValuePair("sph-merchant", this.merchant));
-    nameValuePairs.add(new BasicNameValuePair("sph-timestamp", PaymentHighwayUtility.getUtcTimestamp()));
-    nameValuePairs.add(new BasicNameValuePair("sph-request-id", PaymentHighwayUtility.createRequestId()));
+    nameValuePairs.add(new BasicNameValuePair("sph-timestamp", clock.getUtcTimestamp()));
+    nameValuePairs.add(new BasicNameValuePair("sph-request-id", requestIdGenerator.createRequestId()));
     return nameValuePairs;
   }
 
-  private CloseableHttpClient returnHttpClients() {
+  private synchronized CloseableHttpClient returnHttpClients() {
     if (httpclient == null) {
-      httpclient = HttpClients.createDefault();
+      // the default of two connections would serialize concurrent requests
+      httpclient = HttpClients.custom()
+          .setMaxConnPerRoute(DEFAULT_MAX_CONNECTIONS)
+          .setMaxConnTotal(DEFAULT_MAX_CONNECTIONS)
+          .build();
     }
     return httpclient;
   }
 
   @Override
-  public void close() throws IOException {
-    if (httpclient != null) {
+  public synchronized void close() throws IOException {
+    if (httpclient != null && closeHttpClient) {
       httpclient.close();
     }
   }
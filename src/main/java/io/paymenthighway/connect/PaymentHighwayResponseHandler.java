@@ -1,7 +1,14 @@
 package io.paymenthighway.connect;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
 import io.paymenthighway.exception.AuthenticationException;
 import io.paymenthighway.security.SecureSigner;
+import io.paymenthighway.trace.CallTrace;
+import io.paymenthighway.trace.NoopTracer;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpResponseException;
@@ -15,14 +22,28 @@ import java.io.IOException;
  */
 public class PaymentHighwayResponseHandler implements ResponseHandler<String> {
 
+  private static final ObjectMapper ERROR_MAPPER = new ObjectMapper();
+
   private SecureSigner ss = null;
   private String method = null;
   private String uri = null;
+  private CallTrace trace = null;
 
   public PaymentHighwayResponseHandler(SecureSigner ss, String method, String uri) {
+    this(ss, method, uri, NoopTracer.INSTANCE.startCall(method, uri));
+  }
+
+  /**
+   * @param ss The signer the response signature is checked with
+   * @param method The HTTP method of the request
+   * @param uri The request URI
+   * @param trace Receives the status and size of the response, and the end of the signature check
+   */
+  public PaymentHighwayResponseHandler(SecureSigner ss, String method, String uri, CallTrace trace) {
     this.ss = ss;
     this.method = method;
     this.uri = uri;
+    this.trace = trace;
   }
 
   @Override
@@ -30,11 +51,13 @@ public class PaymentHighwayResponseHandler implements ResponseHandler<String> {
 
     String content = EntityUtils.toString(response.getEntity());
     int status = response.getStatusLine().getStatusCode();
+    trace.responded(status, content.length());
 
     if (status >= 200 && status < 300) {
       boolean authenticated = ss.validateSignature(this.method, this.uri, response, content);
+      trace.verified();
       if (!authenticated) {
-        System.err.println("Message authentication failed, status:" + status + ", reason:" + response.getStatusLine().getReasonPhrase() + ":" + content);
+        report(ErrorEvent.Kind.AUTHENTICATION, response, content, "Message authentication failed");
         throw new AuthenticationException(
             "Message authentication failed, status:" + status + ", reason:" + response.getStatusLine().getReasonPhrase() + ":" + content
         );
@@ -44,11 +67,33 @@ public class PaymentHighwayResponseHandler implements ResponseHandler<String> {
     } else if (status == 401) {
       // signals an authentication failure in Payment Highway
       // Payment Highway couldn't validate signature from the given parameters
+      report(ErrorEvent.Kind.AUTHENTICATION, response, content, response.getStatusLine().getReasonPhrase());
       throw new HttpResponseException(status, " Authentication failure: " + response.getStatusLine().getReasonPhrase() + ":" + content);
     } else {
       // Signals a non 2xx HTTP response.
-      System.err.println("status:" + status + ", reason:" + response.getStatusLine().getReasonPhrase() + ":" + content);
+      report(ErrorEvent.Kind.HTTP_STATUS, response, content, response.getStatusLine().getReasonPhrase());
       throw new HttpResponseException(status, " reason:" + response.getStatusLine().getReasonPhrase() + ":" + content);
     }
   }
+
+  private void report(ErrorEvent.Kind kind, HttpResponse response, String content, String message) {
+    Header requestId = response.getFirstHeader("sph-request-id");
+    ErrorReporters.getReporter().report(new ErrorEvent(kind, method, uri, response.getStatusLine().getStatusCode(),
+        resultCode(content), requestId != null ? requestId.getValue() : null, message, null));
+  }
+
+  /**
+   * @return The result code of an error response, or null if the body has none
+   */
+  private static String resultCode(String content) {
+    if (content == null || !content.startsWith("{")) {
+      return null;
+    }
+    try {
+      JsonNode code = ERROR_MAPPER.readTree(content).path("result").path("code");
+      return code.isMissingNode() ? null : code.asText();
+    } catch (IOException e) {
+      return null;
+    }
+  }
 }
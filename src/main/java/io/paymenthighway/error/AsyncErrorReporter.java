@@ -0,0 +1,145 @@
+package io.paymenthighway.error;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands the events to another reporter on a daemon thread of its own, so the request threads never wait for it.
+ * <p/>
+ * The events wait in a bounded queue. When the queue is full the event is dropped and counted, and the count is
+ * passed on as a {@link ErrorEvent.Kind#DROPPED} event once the queue has room again. The thread is started by the
+ * first event.
+ */
+public class AsyncErrorReporter implements ErrorReporter, Closeable {
+
+  private final ErrorReporter sink;
+  private final BlockingQueue<ErrorEvent> queue;
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong delivered = new AtomicLong();
+  private long droppedDelivered = 0;
+  private volatile boolean closed = false;
+  private volatile Thread thread;
+
+  /**
+   * @param sink The reporter the events are handed to, called from one thread at a time
+   * @param capacity The number of events that can wait for the sink
+   */
+  public AsyncErrorReporter(ErrorReporter sink, int capacity) {
+    this.sink = sink;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+  }
+
+  @Override
+  public void report(ErrorEvent event) {
+    if (closed) {
+      dropped.incrementAndGet();
+      return;
+    }
+    start();
+    if (!queue.offer(event)) {
+      dropped.incrementAndGet();
+    }
+  }
+
+  /**
+   * @return The number of events dropped because the queue was full or the reporter closed
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  /**
+   * @return The number of events handed to the sink, not counting the drop counts
+   */
+  public long getDelivered() {
+    return delivered.get();
+  }
+
+  /**
+   * Hand the waiting events to the sink and stop the thread
+   */
+  @Override
+  public void close() {
+    Thread running;
+    synchronized (this) {
+      closed = true;
+      running = thread;
+    }
+    if (running == null) {
+      return;
+    }
+    running.interrupt();
+    boolean interrupted = false;
+    while (running.isAlive()) {
+      try {
+        running.join();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void start() {
+    if (thread != null) {
+      return;
+    }
+    synchronized (this) {
+      if (thread == null && !closed) {
+        Thread t = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            drain();
+          }
+        }, "paymenthighway-error-reporter");
+        t.setDaemon(true);
+        t.start();
+        thread = t;
+      }
+    }
+  }
+
+  private void drain() {
+    while (!closed) {
+      try {
+        deliver(queue.take());
+      } catch (InterruptedException e) {
+        // closed
+      }
+      if (queue.isEmpty()) {
+        deliverDropCount();
+      }
+    }
+
+    ErrorEvent event;
+    while ((event = queue.poll()) != null) {
+      deliver(event);
+    }
+    deliverDropCount();
+  }
+
+  private void deliver(ErrorEvent event) {
+    try {
+      sink.report(event);
+    } catch (RuntimeException e) {
+      // nowhere left to report it
+    }
+    delivered.incrementAndGet();
+  }
+
+  private void deliverDropCount() {
+    long count = dropped.get();
+    if (count > droppedDelivered) {
+      try {
+        sink.report(new ErrorEvent(ErrorEvent.Kind.DROPPED, (count - droppedDelivered) + " events dropped", null));
+      } catch (RuntimeException e) {
+        // nowhere left to report it
+      }
+      droppedDelivered = count;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package io.paymenthighway.error;
+
+/**
+ * An error of the library, with the request it happened in if any
+ */
+public final class ErrorEvent {
+
+  /**
+   * What failed
+   */
+  public enum Kind {
+    /** Payment Highway answered with a non 2xx status */
+    HTTP_STATUS,
+    /** Payment Highway rejected the signature of the request, or the response signature did not match */
+    AUTHENTICATION,
+    /** A response could not be mapped from JSON */
+    DECODING,
+    /** A request could not be mapped to JSON */
+    ENCODING,
+    /** A signature could not be computed */
+    SIGNING,
+    /** A request made in the background failed, e.g. when filling a pool or recovering a journal */
+    REQUEST,
+    /** A listener or subscriber threw */
+    CALLBACK,
+    /** The properties could not be read */
+    CONFIGURATION,
+    /** Events were dropped because the reporter could not keep up, the count is in the message */
+    DROPPED
+  }
+
+  private final Kind kind;
+  private final String method;
+  private final String uri;
+  private final int status;
+  private final String resultCode;
+  private final String requestId;
+  private final String message;
+  private final Throwable error;
+  private final long timestampMillis;
+
+  /**
+   * @param kind What failed
+   * @param message Short description, without request or response bodies
+   * @param error The cause, or null
+   */
+  public ErrorEvent(Kind kind, String message, Throwable error) {
+    this(kind, null, null, 0, null, null, message, error);
+  }
+
+  /**
+   * @param kind What failed
+   * @param method The HTTP method of the request
+   * @param uri The request URI
+   * @param status The HTTP status of the response, or 0 if there was none
+   * @param resultCode The Payment Highway result code of the response, or null
+   * @param requestId The "sph-request-id" of the request, or null
+   * @param message Short description, without request or response bodies
+   * @param error The cause, or null
+   */
+  public ErrorEvent(Kind kind, String method, String uri, int status, String resultCode, String requestId,
+                    String message, Throwable error) {
+    this.kind = kind;
+    this.method = method;
+    this.uri = uri;
+    this.status = status;
+    this.resultCode = resultCode;
+    this.requestId = requestId;
+    this.message = message;
+    this.error = error;
+    this.timestampMillis = System.currentTimeMillis();
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUri() {
+    return uri;
+  }
+
+  /**
+   * @return The request URI without the query, or null
+   */
+  public String getEndpoint() {
+    if (uri == null) {
+      return null;
+    }
+    int query = uri.indexOf('?');
+    return query >= 0 ? uri.substring(0, query) : uri;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public String getResultCode() {
+    return resultCode;
+  }
+
+  public String getRequestId() {
+    return requestId;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public Throwable getError() {
+    return error;
+  }
+
+  /**
+   * @return The time the event was created, in milliseconds since the epoch
+   */
+  public long getTimestampMillis() {
+    return timestampMillis;
+  }
+
+  /**
+   * @return The fields as space separated key=value pairs, without the stack trace
+   */
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(128).append("kind=").append(kind);
+    if (method != null) {
+      sb.append(" method=").append(method);
+    }
+    if (uri != null) {
+      sb.append(" endpoint=").append(getEndpoint());
+    }
+    if (status != 0) {
+      sb.append(" status=").append(status);
+    }
+    if (resultCode != null) {
+      sb.append(" resultCode=").append(resultCode);
+    }
+    if (requestId != null) {
+      sb.append(" requestId=").append(requestId);
+    }
+    if (message != null) {
+      sb.append(" message=\"").append(message).append('"');
+    }
+    if (error != null) {
+      sb.append(" error=\"").append(error).append('"');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,12 @@
+package io.paymenthighway.error;
+
+/**
+ * Receives the errors of the library. Called on the request threads, so it must not block.
+ */
+public interface ErrorReporter {
+
+  /**
+   * @param event The error
+   */
+  void report(ErrorEvent event);
+}
@@ -0,0 +1,50 @@
+package io.paymenthighway.error;
+
+/**
+ * Holds the error reporter of the library.
+ * <p/>
+ * By default the events are written to System.err on a background thread, with at most 1024 events waiting.
+ */
+public final class ErrorReporters {
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private static final ErrorReporter NONE = new ErrorReporter() {
+    @Override
+    public void report(ErrorEvent event) {
+    }
+  };
+
+  private static volatile ErrorReporter reporter =
+      new AsyncErrorReporter(new PrintStreamErrorReporter(System.err), DEFAULT_CAPACITY);
+
+  private ErrorReporters() {
+  }
+
+  /**
+   * @return The current reporter
+   */
+  public static ErrorReporter getReporter() {
+    return reporter;
+  }
+
+  /**
+   * Replace the reporter. The previous one is not closed.
+   *
+   * @param reporter The reporter, or null to report nothing
+   */
+  public static void setReporter(ErrorReporter reporter) {
+    ErrorReporters.reporter = reporter != null ? reporter : NONE;
+  }
+
+  /**
+   * Report an error
+   *
+   * @param kind What failed
+   * @param message Short description
+   * @param error The cause, or null
+   */
+  public static void report(ErrorEvent.Kind kind, String message, Throwable error) {
+    reporter.report(new ErrorEvent(kind, message, error));
+  }
+}
@@ -0,0 +1,29 @@
+package io.paymenthighway.error;
+
+import java.io.PrintStream;
+
+/**
+ * Writes each event as one line of key=value pairs, followed by the stack trace of the cause if any.
+ * Blocks while the stream is written, so it is meant to run behind an {@link AsyncErrorReporter}.
+ */
+public class PrintStreamErrorReporter implements ErrorReporter {
+
+  private final PrintStream out;
+
+  /**
+   * @param out The stream to write to, e.g. System.err
+   */
+  public PrintStreamErrorReporter(PrintStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void report(ErrorEvent event) {
+    synchronized (out) {
+      out.println("paymenthighway " + event);
+      if (event.getError() != null) {
+        event.getError().printStackTrace(out);
+      }
+    }
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Reporting the errors of the library as structured events, written off the request threads by default
+ */
+package io.paymenthighway.error;
@@ -0,0 +1,87 @@
+package io.paymenthighway.id;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Random (version 4) UUID request ids from a cryptographically strong generator per thread.
+ * <p/>
+ * The ids are as random as the ones from {@link java.util.UUID#randomUUID()}, but each thread has its own
+ * SecureRandom, seeded from the shared one, and takes the random bytes from it in blocks. Threads creating ids do
+ * not wait for each other. Thread safe.
+ */
+public class BufferedRequestIdGenerator implements RequestIdGenerator {
+
+  /**
+   * Shared instance
+   */
+  public static final BufferedRequestIdGenerator INSTANCE = new BufferedRequestIdGenerator();
+
+  private static final int IDS_PER_BLOCK = 64;
+  private static final int SEED_LENGTH = 32;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final SecureRandom seeds = new SecureRandom();
+
+  private final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+    @Override
+    protected Block initialValue() {
+      return new Block(newRandom());
+    }
+  };
+
+  @Override
+  public String createRequestId() {
+    Block block = blocks.get();
+    byte[] bytes = block.bytes;
+    if (block.position == bytes.length) {
+      block.random.nextBytes(bytes);
+      block.position = 0;
+    }
+    int offset = block.position;
+    block.position += 16;
+
+    bytes[offset + 6] = (byte) ((bytes[offset + 6] & 0x0f) | 0x40); // version 4
+    bytes[offset + 8] = (byte) ((bytes[offset + 8] & 0x3f) | 0x80); // IETF variant
+
+    char[] chars = new char[36];
+    int c = 0;
+    for (int i = 0; i < 16; i++) {
+      if (i == 4 || i == 6 || i == 8 || i == 10) {
+        chars[c++] = '-';
+      }
+      int b = bytes[offset + i];
+      chars[c++] = HEX[(b >> 4) & 0xf];
+      chars[c++] = HEX[b & 0xf];
+    }
+    return new String(chars);
+  }
+
+  /**
+   * @return A generator of its own, seeded from the shared one
+   */
+  private SecureRandom newRandom() {
+    byte[] seed = new byte[SEED_LENGTH];
+    seeds.nextBytes(seed);
+    try {
+      // setting the seed before the first use replaces the self-seeding, so the generator never blocks
+      SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
+      random.setSeed(seed);
+      return random;
+    } catch (NoSuchAlgorithmException e) {
+      SecureRandom random = new SecureRandom();
+      random.setSeed(seed);
+      return random;
+    }
+  }
+
+  private static final class Block {
+    final SecureRandom random;
+    final byte[] bytes = new byte[16 * IDS_PER_BLOCK];
+    int position = bytes.length;
+
+    Block(SecureRandom random) {
+      this.random = random;
+    }
+  }
+}
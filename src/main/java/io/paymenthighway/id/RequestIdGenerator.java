@@ -0,0 +1,12 @@
+package io.paymenthighway.id;
+
+/**
+ * Source of the "sph-request-id" values. Every id must be unique.
+ */
+public interface RequestIdGenerator {
+
+  /**
+   * @return String request id
+   */
+  String createRequestId();
+}
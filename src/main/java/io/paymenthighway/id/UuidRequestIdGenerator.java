@@ -0,0 +1,19 @@
+package io.paymenthighway.id;
+
+import java.util.UUID;
+
+/**
+ * Request ids from {@link UUID#randomUUID()}, which shares one SecureRandom between all threads
+ */
+public class UuidRequestIdGenerator implements RequestIdGenerator {
+
+  /**
+   * Shared instance
+   */
+  public static final UuidRequestIdGenerator INSTANCE = new UuidRequestIdGenerator();
+
+  @Override
+  public String createRequestId() {
+    return UUID.randomUUID().toString();
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Generators for request ids
+ */
+package io.paymenthighway.id;
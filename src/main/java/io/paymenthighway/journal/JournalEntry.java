@@ -0,0 +1,75 @@
+package io.paymenthighway.journal;
+
+import io.paymenthighway.model.response.TransactionStatus;
+
+import java.util.UUID;
+
+/**
+ * A payment operation recorded in a {@link PaymentJournal}
+ */
+public final class JournalEntry {
+
+  /**
+   * The recorded operation
+   */
+  public enum Operation {
+    DEBIT,
+    CREDIT,
+    COMMIT,
+    REVERT
+  }
+
+  private final Operation operation;
+  private final UUID transactionId;
+  private final UUID requestId;
+  private final long timestampMillis;
+  private final TransactionStatus transactionStatus;
+
+  JournalEntry(Operation operation, UUID transactionId, UUID requestId, long timestampMillis,
+               TransactionStatus transactionStatus) {
+    this.operation = operation;
+    this.transactionId = transactionId;
+    this.requestId = requestId;
+    this.timestampMillis = timestampMillis;
+    this.transactionStatus = transactionStatus;
+  }
+
+  public Operation getOperation() {
+    return operation;
+  }
+
+  public UUID getTransactionId() {
+    return transactionId;
+  }
+
+  /**
+   * @return The "sph-request-id" the operation was sent with
+   */
+  public UUID getRequestId() {
+    return requestId;
+  }
+
+  /**
+   * @return The time the operation was started, in milliseconds since the epoch
+   */
+  public long getTimestampMillis() {
+    return timestampMillis;
+  }
+
+  /**
+   * @return The status of the transaction looked up by {@link PaymentJournal#recover}, or null if the transaction
+   * was not found or the entry has not been recovered
+   */
+  public TransactionStatus getTransactionStatus() {
+    return transactionStatus;
+  }
+
+  JournalEntry withStatus(TransactionStatus transactionStatus) {
+    return new JournalEntry(operation, transactionId, requestId, timestampMillis, transactionStatus);
+  }
+
+  @Override
+  public String toString() {
+    return operation + " " + transactionId + " request " + requestId;
+  }
+}
@@ -0,0 +1,362 @@
+package io.paymenthighway.journal;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.model.response.TransactionStatusResponse;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the debit, credit, commit and revert requests of a {@link PaymentAPI}.
+ * <p/>
+ * The intent of an operation is written and synced to the storage device before the request is sent, and its
+ * outcome is written when the response arrives. If the JVM dies in between, the operation stays unresolved, and
+ * {@link #recover(PaymentAPI)} looks up only those transactions with a transaction status request.
+ * <p/>
+ * The journal is a memory-mapped file of fixed size 64-byte records, each with a checksum, so opening it is a
+ * single sequential scan and a torn last record is detected. Threads that sync at the same time share a single
+ * force of the file. When the file is full it is rewritten with only the unresolved operations.
+ * <p/>
+ * Request ids that are not UUIDs are recorded as name based UUIDs of the id. Thread safe.
+ */
+public class PaymentJournal implements Closeable {
+
+  private static final int MAGIC = 0x5350484a;
+  private static final byte VERSION = 1;
+  private static final int RECORD_LENGTH = 64;
+  private static final int HEADER_LENGTH = RECORD_LENGTH;
+  private static final int CHECKSUM_OFFSET = RECORD_LENGTH - 4;
+  private static final int DEFAULT_CAPACITY = 16 * 1024 * 1024;
+  private static final int STATUS_NOT_FOUND = 404;
+
+  private static final byte INTENT = 1;
+  private static final byte COMPLETED = 2;
+  private static final byte REJECTED = 3;
+  private static final byte RESOLVED = 4;
+
+  private static final JournalEntry.Operation[] OPERATIONS = JournalEntry.Operation.values();
+
+  private final File file;
+  private final int capacity;
+  private final ConcurrentHashMap<UUID, JournalEntry> unresolved = new ConcurrentHashMap<>();
+  private final Object syncLock = new Object();
+
+  private MappedByteBuffer buffer;
+  private int position;
+  private long written = 0;
+  private long synced = 0;
+
+  /**
+   * Open the journal with a capacity of 16 MB, creating the file if it does not exist
+   *
+   * @param file The journal file
+   * @throws IOException
+   */
+  public PaymentJournal(File file) throws IOException {
+    this(file, DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Open the journal, creating the file if it does not exist
+   *
+   * @param file The journal file
+   * @param capacity The size of the file in bytes, 64 bytes per operation
+   * @throws IOException
+   */
+  public PaymentJournal(File file, int capacity) throws IOException {
+    if (capacity < HEADER_LENGTH + 2 * RECORD_LENGTH) {
+      throw new IllegalArgumentException("capacity must be at least " + (HEADER_LENGTH + 2 * RECORD_LENGTH));
+    }
+    this.file = file;
+    this.capacity = capacity - capacity % RECORD_LENGTH;
+
+    boolean exists = file.exists() && file.length() >= HEADER_LENGTH;
+    this.buffer = map(file, Math.max(this.capacity, exists ? (int) file.length() : 0));
+    if (exists) {
+      load();
+    } else {
+      writeHeader(buffer);
+      buffer.force();
+      this.position = HEADER_LENGTH;
+    }
+  }
+
+  /**
+   * Record an operation that is about to be sent. Returns when the record is on the storage device.
+   *
+   * @param operation The operation
+   * @param transactionId The transaction id
+   * @param requestId The "sph-request-id" of the request
+   * @throws IOException
+   */
+  public void recordIntent(JournalEntry.Operation operation, UUID transactionId, String requestId)
+      throws IOException {
+    UUID id = requestId(requestId);
+    JournalEntry entry = new JournalEntry(operation, transactionId, id, System.currentTimeMillis(), null);
+    sync(append(INTENT, entry, 0, true));
+  }
+
+  /**
+   * Record the response of an operation. Persisted by the next sync.
+   *
+   * @param operation The operation
+   * @param transactionId The transaction id
+   * @param requestId The "sph-request-id" of the request
+   * @param resultCode The result code of the response
+   * @throws IOException
+   */
+  public void recordCompleted(JournalEntry.Operation operation, UUID transactionId, String requestId,
+                              String resultCode) throws IOException {
+    append(COMPLETED, new JournalEntry(operation, transactionId, requestId(requestId), System.currentTimeMillis(),
+        null), parseCode(resultCode), false);
+  }
+
+  /**
+   * Record an operation that Payment Highway rejected with an HTTP error status. Persisted by the next sync.
+   *
+   * @param operation The operation
+   * @param transactionId The transaction id
+   * @param requestId The "sph-request-id" of the request
+   * @param status The HTTP status code
+   * @throws IOException
+   */
+  public void recordRejected(JournalEntry.Operation operation, UUID transactionId, String requestId, int status)
+      throws IOException {
+    append(REJECTED, new JournalEntry(operation, transactionId, requestId(requestId), System.currentTimeMillis(),
+        null), status, false);
+  }
+
+  /**
+   * @return The operations that were started but have no recorded outcome, oldest first
+   */
+  public List<JournalEntry> getUnresolved() {
+    List<JournalEntry> entries = new ArrayList<>(unresolved.values());
+    Collections.sort(entries, new Comparator<JournalEntry>() {
+      @Override
+      public int compare(JournalEntry e1, JournalEntry e2) {
+        return Long.compare(e1.getTimestampMillis(), e2.getTimestampMillis());
+      }
+    });
+    return entries;
+  }
+
+  /**
+   * Look up the transactions of the unresolved operations and mark them resolved. Operations whose lookup fails
+   * stay unresolved.
+   *
+   * @param paymentAPI The Payment API of the merchant
+   * @return The resolved operations with the current status of their transaction
+   * @throws IOException if the journal can not be written
+   */
+  public List<JournalEntry> recover(PaymentAPI paymentAPI) throws IOException {
+    List<JournalEntry> resolved = new ArrayList<>();
+    for (JournalEntry entry : getUnresolved()) {
+      TransactionStatusResponse response;
+      try {
+        response = paymentAPI.transactionStatus(entry.getTransactionId());
+      } catch (HttpResponseException e) {
+        if (e.getStatusCode() != STATUS_NOT_FOUND) {
+          // reported by the response handler
+          continue;
+        }
+        response = null;
+      } catch (IOException e) {
+        ErrorReporters.report(ErrorEvent.Kind.REQUEST,
+            "Could not recover transaction " + entry.getTransactionId(), e);
+        continue;
+      }
+
+      JournalEntry recovered = entry.withStatus(response != null ? response.getTransaction() : null);
+      int code = recovered.getTransactionStatus() != null && recovered.getTransactionStatus().getStatus() != null
+          ? parseCode(recovered.getTransactionStatus().getStatus().getCode()) : 0;
+      append(RESOLVED, recovered, code, false);
+      resolved.add(recovered);
+    }
+    sync(currentSequence());
+    return resolved;
+  }
+
+  @Override
+  public void close() throws IOException {
+    sync(currentSequence());
+  }
+
+  private synchronized long currentSequence() {
+    return written;
+  }
+
+  private synchronized long append(byte type, JournalEntry entry, int code, boolean intent) throws IOException {
+    if (position + RECORD_LENGTH > capacity) {
+      compact();
+      if (position + RECORD_LENGTH > capacity) {
+        throw new IOException("Payment journal is full of unresolved operations: " + file);
+      }
+    }
+    writeRecord(buffer, position, type, entry, code);
+    position += RECORD_LENGTH;
+
+    if (intent) {
+      unresolved.put(entry.getRequestId(), entry);
+    } else {
+      unresolved.remove(entry.getRequestId());
+    }
+    return ++written;
+  }
+
+  /**
+   * Force the records up to the sequence number. A thread that finds them already forced by another returns at once.
+   */
+  private void sync(long sequence) {
+    synchronized (syncLock) {
+      if (synced >= sequence) {
+        return;
+      }
+      MappedByteBuffer target;
+      long end;
+      synchronized (this) {
+        target = buffer;
+        end = written;
+      }
+      target.force();
+      synced = end;
+    }
+  }
+
+  /**
+   * Rewrite the file with only the unresolved operations
+   */
+  private void compact() throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    // a file left by a compaction that did not finish has records that must not be revived
+    Files.deleteIfExists(temp.toPath());
+    MappedByteBuffer compacted = map(temp, capacity);
+    writeHeader(compacted);
+    int offset = HEADER_LENGTH;
+    for (JournalEntry entry : getUnresolved()) {
+      if (offset + RECORD_LENGTH > capacity) {
+        break;
+      }
+      writeRecord(compacted, offset, INTENT, entry, 0);
+      offset += RECORD_LENGTH;
+    }
+    compacted.force();
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+    buffer = compacted;
+    position = offset;
+  }
+
+  /**
+   * Scan the records up to the first empty or damaged one, and clear the rest of the file
+   */
+  private void load() throws IOException {
+    ByteBuffer data = buffer.duplicate();
+    if (data.getInt(0) != MAGIC || data.get(4) != VERSION) {
+      throw new IOException("Not a payment journal: " + file);
+    }
+
+    int offset = HEADER_LENGTH;
+    byte[] record = new byte[RECORD_LENGTH];
+    while (offset + RECORD_LENGTH <= data.capacity()) {
+      data.position(offset);
+      data.get(record);
+      if (record[0] == 0 || !checksumMatches(record)) {
+        break;
+      }
+      ByteBuffer fields = ByteBuffer.wrap(record);
+      byte type = fields.get(0);
+      int operation = fields.get(1);
+      UUID transactionId = new UUID(fields.getLong(16), fields.getLong(24));
+      UUID requestId = new UUID(fields.getLong(32), fields.getLong(40));
+      if (type == INTENT && operation < OPERATIONS.length) {
+        unresolved.put(requestId, new JournalEntry(OPERATIONS[operation], transactionId, requestId,
+            fields.getLong(8), null));
+      } else {
+        unresolved.remove(requestId);
+      }
+      offset += RECORD_LENGTH;
+    }
+
+    // records after a damaged one may be stale, they must not be read back later
+    for (int i = offset; i < data.capacity(); i++) {
+      data.put(i, (byte) 0);
+    }
+    buffer.force();
+    position = offset;
+  }
+
+  private static MappedByteBuffer map(File file, int size) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      if (raf.length() < size) {
+        raf.setLength(size);
+      }
+      return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+  }
+
+  private static void writeHeader(ByteBuffer target) {
+    target.putInt(0, MAGIC);
+    target.put(4, VERSION);
+  }
+
+  private static void writeRecord(ByteBuffer target, int offset, byte type, JournalEntry entry, int code) {
+    ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH);
+    record.put(0, type);
+    record.put(1, (byte) entry.getOperation().ordinal());
+    record.putInt(4, code);
+    record.putLong(8, entry.getTimestampMillis());
+    record.putLong(16, entry.getTransactionId().getMostSignificantBits());
+    record.putLong(24, entry.getTransactionId().getLeastSignificantBits());
+    record.putLong(32, entry.getRequestId().getMostSignificantBits());
+    record.putLong(40, entry.getRequestId().getLeastSignificantBits());
+    record.putInt(CHECKSUM_OFFSET, checksum(record.array()));
+
+    ByteBuffer view = target.duplicate();
+    view.position(offset);
+    view.put(record.array());
+  }
+
+  private static boolean checksumMatches(byte[] record) {
+    return ByteBuffer.wrap(record).getInt(CHECKSUM_OFFSET) == checksum(record);
+  }
+
+  private static int checksum(byte[] record) {
+    CRC32 crc = new CRC32();
+    crc.update(record, 0, CHECKSUM_OFFSET);
+    return (int) crc.getValue();
+  }
+
+  private static UUID requestId(String requestId) {
+    try {
+      return UUID.fromString(requestId);
+    } catch (IllegalArgumentException e) {
+      return UUID.nameUUIDFromBytes(requestId.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private static int parseCode(String code) {
+    try {
+      return code != null ? Integer.parseInt(code) : 0;
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Write-ahead journal of payment operations, for finding the ones left in flight by a crash
+ */
+package io.paymenthighway.journal;
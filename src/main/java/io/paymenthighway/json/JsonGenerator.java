@@ -3,12 +3,20 @@ package io.paymenthighway.json;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
 
 /**
  * Generates JSON from objects
  */
 public class JsonGenerator {
 
+  /**
+   * Configured once and shared by all the connections, so the serializers are looked up only once per type
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .setSerializationInclusion(Include.NON_NULL);
+
   /**
    * Constructor
    */
@@ -17,13 +25,11 @@ public class JsonGenerator {
 
   public String createTransactionJson(Object request) {
 
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.setSerializationInclusion(Include.NON_NULL);
     String json = null;
     try {
-      json = mapper.writeValueAsString(request);
+      json = MAPPER.writeValueAsString(request);
     } catch (JsonProcessingException e) {
-      e.printStackTrace();
+      ErrorReporters.report(ErrorEvent.Kind.ENCODING, "Could not map " + request.getClass().getSimpleName(), e);
     }
     return json;
   }
@@ -3,7 +3,12 @@ package io.paymenthighway.json;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
 import io.paymenthighway.model.response.*;
+import io.paymenthighway.trace.DecodeTrace;
+import io.paymenthighway.trace.Tracers;
 
 import java.io.IOException;
 
@@ -12,21 +17,39 @@ import java.io.IOException;
  */
 public class JsonParser {
 
+  /**
+   * Configured once and shared by all the connections, so the deserializers are looked up only once per type
+   */
+  private static final ObjectMapper MAPPER = new ObjectMapper()
+      .setSerializationInclusion(Include.NON_NULL)
+      .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
   /**
    * Constructor
    */
   public JsonParser() {
   }
 
+  /**
+   * @param type The type to decode
+   * @return A reader of the type with the shared configuration of the responses, e.g. to decode a response
+   * incrementally
+   */
+  public static ObjectReader readerFor(Class<?> type) {
+    return MAPPER.readerFor(type);
+  }
+
   public <T> T mapResponse(String json, Class<T> clazz) {
-    ObjectMapper mapper = new ObjectMapper();
-    mapper.setSerializationInclusion(Include.NON_NULL);
-    mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
     T response = null;
+    DecodeTrace trace = Tracers.getTracer().startDecoding(clazz, json != null ? json.length() : 0);
     try {
-      response = mapper.readValue(json, clazz);
+      response = MAPPER.readValue(json, clazz);
+      Result result = response instanceof Response ? ((Response) response).getResult() : null;
+      trace.decoded(result != null ? result.getCode() : null);
     } catch (IOException e) {
-      e.printStackTrace();
+      ErrorReporters.report(ErrorEvent.Kind.DECODING, "Could not map " + clazz.getSimpleName(), e);
+    } finally {
+      trace.end();
     }
 
     return response;
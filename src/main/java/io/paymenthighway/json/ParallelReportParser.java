@@ -0,0 +1,233 @@
+package io.paymenthighway.json;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.model.response.ReconciliationReportResponse;
+import io.paymenthighway.model.response.ReconciliationSettlement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates reconciliation reports from JSON, decoding the settlements in parallel.
+ * <p/>
+ * The report is read once, recording only where each element of the <code>settlements</code> array starts and
+ * ends. The elements are then decoded on a fork-join pool and put back in their original order. The result is
+ * identical to {@link JsonParser#mapResponse(String, Class)}.
+ */
+public class ParallelReportParser {
+
+  private static final int DEFAULT_SETTLEMENTS_PER_TASK = 4;
+
+  private final ForkJoinPool pool;
+  private final int settlementsPerTask;
+  private final ObjectReader reportReader;
+  private final ObjectReader settlementReader;
+
+  /**
+   * Constructor using a shared pool with one thread per available processor.
+   */
+  public ParallelReportParser() {
+    this(DefaultPool.INSTANCE, DEFAULT_SETTLEMENTS_PER_TASK);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param pool The pool the settlements are decoded on
+   * @param settlementsPerTask The number of settlements decoded by a single task, at least 1
+   */
+  public ParallelReportParser(ForkJoinPool pool, int settlementsPerTask) {
+    if (settlementsPerTask < 1) {
+      throw new IllegalArgumentException("settlementsPerTask must be at least 1");
+    }
+    this.pool = pool;
+    this.settlementsPerTask = settlementsPerTask;
+
+    ObjectMapper mapper = new ObjectMapper();
+    mapper.setSerializationInclusion(Include.NON_NULL);
+    mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    mapper.addMixIn(ReconciliationReportResponse.class, ReconciliationReportMixIn.class);
+
+    this.reportReader = mapper.readerFor(ReconciliationReportResponse.class);
+    this.settlementReader = mapper.readerFor(ReconciliationSettlement.class);
+  }
+
+  /**
+   * Map a reconciliation report response
+   *
+   * @param json The response body
+   * @return ReconciliationReportResponse or null if the JSON could not be mapped
+   */
+  public ReconciliationReportResponse mapReconciliationReportResponse(String json) {
+    ReconciliationReportResponse response = null;
+    try {
+      response = reportReader.withAttribute(Source.class, new Source(json)).readValue(json);
+    } catch (IOException e) {
+      ErrorReporters.report(ErrorEvent.Kind.DECODING, "Could not map ReconciliationReportResponse", e);
+    }
+
+    return response;
+  }
+
+  private ReconciliationSettlement[] decode(Source source, List<Object> elements) throws IOException {
+    ReconciliationSettlement[] settlements = new ReconciliationSettlement[elements.size()];
+
+    if (elements.size() <= settlementsPerTask) {
+      decode(source, elements, settlements, 0, elements.size());
+      return settlements;
+    }
+
+    try {
+      pool.invoke(new DecodeTask(source, elements, settlements, 0, elements.size()));
+    } catch (RuntimeException e) {
+      // the pool may rethrow a copy of the original exception, so look for the cause
+      for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+      }
+      throw e;
+    }
+    return settlements;
+  }
+
+  private void decode(Source source, List<Object> elements, ReconciliationSettlement[] settlements, int from, int to)
+      throws IOException {
+    for (int i = from; i < to; i++) {
+      Object element = elements.get(i);
+      if (element instanceof Span) {
+        Span span = (Span) element;
+        settlements[i] = settlementReader.readValue(source.json.substring(span.start, span.end));
+      } else {
+        settlements[i] = (ReconciliationSettlement) element;
+      }
+    }
+  }
+
+  /**
+   * The position of a single settlement object in the source JSON
+   */
+  private static class Span {
+    final int start;
+    final int end;
+
+    Span(int start, int end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * The JSON being mapped, passed to the settlements deserializer as an attribute
+   */
+  private class Source {
+    final String json;
+
+    Source(String json) {
+      this.json = json;
+    }
+
+    ParallelReportParser parser() {
+      return ParallelReportParser.this;
+    }
+  }
+
+  private class DecodeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Source source;
+    private final List<Object> elements;
+    private final ReconciliationSettlement[] settlements;
+    private final int from;
+    private final int to;
+
+    DecodeTask(Source source, List<Object> elements, ReconciliationSettlement[] settlements, int from, int to) {
+      this.source = source;
+      this.elements = elements;
+      this.settlements = settlements;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= settlementsPerTask) {
+        try {
+          decode(source, elements, settlements, from, to);
+        } catch (IOException e) {
+          throw new DecodeException(e);
+        }
+        return;
+      }
+      int middle = (from + to) >>> 1;
+      invokeAll(
+          new DecodeTask(source, elements, settlements, from, middle),
+          new DecodeTask(source, elements, settlements, middle, to)
+      );
+    }
+  }
+
+  private static class DecodeException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    DecodeException(IOException cause) {
+      super(cause);
+    }
+  }
+
+  /**
+   * Scans the settlements array, decoding only the elements that are not objects
+   */
+  static class SettlementsDeserializer extends JsonDeserializer<ReconciliationSettlement[]> {
+
+    @Override
+    public ReconciliationSettlement[] deserialize(com.fasterxml.jackson.core.JsonParser p, DeserializationContext ctxt)
+        throws IOException {
+
+      Source source = (Source) ctxt.getAttribute(Source.class);
+      if (source == null || p.getCurrentToken() != JsonToken.START_ARRAY) {
+        return ctxt.readValue(p, ReconciliationSettlement[].class);
+      }
+
+      List<Object> elements = new ArrayList<>();
+      JsonToken token;
+      while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+        if (token == JsonToken.START_OBJECT) {
+          int start = (int) p.getTokenLocation().getCharOffset();
+          p.skipChildren();
+          int end = (int) p.getTokenLocation().getCharOffset() + 1;
+          elements.add(new Span(start, end));
+        } else if (token == JsonToken.VALUE_NULL) {
+          elements.add(null);
+        } else {
+          elements.add(ctxt.readValue(p, ReconciliationSettlement.class));
+        }
+      }
+
+      return source.parser().decode(source, elements);
+    }
+  }
+
+  abstract static class ReconciliationReportMixIn {
+    @JsonDeserialize(using = SettlementsDeserializer.class)
+    ReconciliationSettlement[] reconciliationSettlements;
+  }
+
+  private static class DefaultPool {
+    static final ForkJoinPool INSTANCE = new ForkJoinPool();
+  }
+}
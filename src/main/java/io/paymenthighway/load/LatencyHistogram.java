@@ -0,0 +1,146 @@
+package io.paymenthighway.load;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds with a relative error below 1%, in the manner of HdrHistogram.
+ * <p/>
+ * Each power of two range is split into 64 equal buckets, so the memory use is fixed and recording is a few
+ * instructions. Values can be recorded from several threads at once.
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 7;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int HALF = SUB_BUCKETS / 2;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * HALF + SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * @param nanos The latency, negative values are recorded as 0
+   */
+  public void record(long nanos) {
+    long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Add the values of another histogram to this one
+   *
+   * @param other The histogram to add
+   */
+  public void add(LatencyHistogram other) {
+    for (int i = 0; i < BUCKETS; i++) {
+      long n = other.counts.get(i);
+      if (n > 0) {
+        counts.addAndGet(i, n);
+      }
+    }
+    count.addAndGet(other.count.get());
+    sum.addAndGet(other.sum.get());
+    long otherMax = other.max.get();
+    long current = max.get();
+    while (otherMax > current && !max.compareAndSet(current, otherMax)) {
+      current = max.get();
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * @return The highest recorded value, exactly
+   */
+  public long getMax() {
+    return max.get();
+  }
+
+  public double getMean() {
+    long n = count.get();
+    return n > 0 ? (double) sum.get() / n : 0;
+  }
+
+  /**
+   * @param percentile The percentile, from 0 to 100
+   * @return The highest value equivalent to the value at the percentile, or 0 if nothing was recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    long total = count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+    long cumulative = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) {
+        return Math.min(highestEquivalent(i), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Print the percentile distribution in the format of HdrHistogram, which its plotter can read
+   *
+   * @param out The stream to print to
+   * @param unitNanos The nanoseconds in the unit of the printed values, e.g. 1000000 for milliseconds
+   */
+  public void printPercentiles(PrintStream out, double unitNanos) {
+    long total = count.get();
+    out.println(String.format(Locale.ROOT, "%12s %14s %10s %14s%n", "Value", "Percentile", "TotalCount",
+        "1/(1-Percentile)"));
+    if (total > 0) {
+      double percentile = 0;
+      long cumulative = 0;
+      int bucket = 0;
+      while (true) {
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        while (cumulative < target) {
+          cumulative += counts.get(bucket++);
+        }
+        double value = Math.min(highestEquivalent(bucket - 1), getMax()) / unitNanos;
+        if (cumulative >= total) {
+          out.println(String.format(Locale.ROOT, "%12.3f %2.12f %10d", value, 1.0, total));
+          break;
+        }
+        out.println(String.format(Locale.ROOT, "%12.3f %2.12f %10d %14.2f", value, percentile / 100, cumulative,
+            100 / (100 - percentile)));
+        // five steps for each halving of the distance to 100%, as HdrHistogram does by default
+        double halfDistance = Math.pow(2, Math.floor(Math.log(100 / (100 - percentile)) / Math.log(2)) + 1);
+        percentile += 100 / (halfDistance * 5);
+      }
+    }
+    out.println(String.format(Locale.ROOT, "#[Mean    = %12.3f, Max            = %12.3f]", getMean() / unitNanos,
+        getMax() / unitNanos));
+    out.println(String.format(Locale.ROOT, "#[Total count    = %12d]", total));
+  }
+
+  static int index(long value) {
+    int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+    return shift == 0 ? (int) value : shift * HALF + (int) (value >>> shift);
+  }
+
+  static long highestEquivalent(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index - HALF) / HALF;
+    long subBucket = index - shift * HALF;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,252 @@
+package io.paymenthighway.load;
+
+import io.paymenthighway.FormBuilder;
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.model.Token;
+import io.paymenthighway.model.request.TransactionRequest;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.impl.client.HttpClients;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a mix of Payment API operations from a number of threads, either back to back or at a target rate, and
+ * records the latency of each operation.
+ * <p/>
+ * At a target rate each operation has a time it is due to start, and its latency is measured from that time rather
+ * than from when a thread got to send it. When the client falls behind, e.g. because the connection pool is too
+ * small, the wait shows in the latencies instead of being hidden by sending fewer requests, i.e. the results are
+ * corrected for coordinated omission. Run back to back, the latencies are those of the requests alone.
+ * <p/>
+ * The status, result and commit operations use the ids of recent debits. Run from the command line with
+ * {@code java -cp ... io.paymenthighway.load.LoadGenerator --help}.
+ */
+public class LoadGenerator {
+
+  private static final String AMOUNT = "1990";
+  private static final String CURRENCY = "EUR";
+  private static final int RECENT_DEBITS = 1024;
+
+  private final PaymentAPI paymentAPI;
+  private final FormBuilder formBuilder;
+  private final Workload workload;
+  private final AtomicReferenceArray<UUID> recentDebits = new AtomicReferenceArray<>(RECENT_DEBITS);
+  private final AtomicLong debits = new AtomicLong();
+
+  /**
+   * @param paymentAPI The Payment API to load, with a connection pool of at least as many connections as threads
+   * @param formBuilder The form builder for the form operations
+   * @param workload The operations to run
+   */
+  public LoadGenerator(PaymentAPI paymentAPI, FormBuilder formBuilder, Workload workload) {
+    this.paymentAPI = paymentAPI;
+    this.formBuilder = formBuilder;
+    this.workload = workload;
+  }
+
+  /**
+   * Run the workload and wait until it has finished
+   *
+   * @param threads The number of threads sending requests
+   * @param ratePerSecond The target rate of operations in total, or 0 to run each thread back to back
+   * @param warmupMillis The time to run before recording
+   * @param durationMillis The time to run while recording
+   * @return The latencies and errors of the recorded part of the run
+   * @throws InterruptedException
+   */
+  public LoadReport run(int threads, double ratePerSecond, long warmupMillis, long durationMillis)
+      throws InterruptedException {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("threads must be positive");
+    }
+    final LoadReport report = new LoadReport();
+    final long start = System.nanoTime();
+    final long recordFrom = start + warmupMillis * 1000000;
+    final long end = recordFrom + durationMillis * 1000000;
+    final double intervalNanos = ratePerSecond > 0 ? 1e9 / ratePerSecond : 0;
+    final AtomicLong slots = new AtomicLong();
+
+    Thread[] workers = new Thread[threads];
+    for (int i = 0; i < threads; i++) {
+      workers[i] = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          Random random = new Random();
+          if (intervalNanos > 0) {
+            runPaced(random, report, start, recordFrom, end, intervalNanos, slots);
+          } else {
+            runBackToBack(random, report, recordFrom, end);
+          }
+        }
+      }, "paymenthighway-load-" + i);
+      workers[i].start();
+    }
+    for (Thread worker : workers) {
+      worker.join();
+    }
+    // at a target rate the operations due before the end may finish well after it
+    report.finished((System.nanoTime() - recordFrom) / 1000000);
+    return report;
+  }
+
+  private void runPaced(Random random, LoadReport report, long start, long recordFrom, long end,
+                        double intervalNanos, AtomicLong slots) {
+    while (true) {
+      long due = start + (long) (slots.getAndIncrement() * intervalNanos);
+      if (due >= end) {
+        return;
+      }
+      long wait;
+      while ((wait = due - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      Workload.Operation operation = workload.next(random);
+      Throwable error = execute(operation, random);
+      if (due >= recordFrom) {
+        record(report, operation, error, System.nanoTime() - due);
+      }
+    }
+  }
+
+  private void runBackToBack(Random random, LoadReport report, long recordFrom, long end) {
+    long started;
+    while ((started = System.nanoTime()) < end) {
+      Workload.Operation operation = workload.next(random);
+      Throwable error = execute(operation, random);
+      if (started >= recordFrom) {
+        record(report, operation, error, System.nanoTime() - started);
+      }
+    }
+  }
+
+  private static void record(LoadReport report, Workload.Operation operation, Throwable error, long nanos) {
+    if (error == null) {
+      report.recordLatency(operation, nanos);
+    } else {
+      report.recordError(operation, error);
+    }
+  }
+
+  /**
+   * @return The exception the operation failed with, or null if it succeeded
+   */
+  private Throwable execute(Workload.Operation operation, Random random) {
+    try {
+      switch (operation) {
+        case INIT:
+          paymentAPI.initTransaction();
+          break;
+        case DEBIT:
+          UUID transactionId = UUID.randomUUID();
+          paymentAPI.debitTransaction(transactionId,
+              new TransactionRequest(new Token(UUID.randomUUID()), AMOUNT, CURRENCY));
+          recentDebits.set((int) (debits.getAndIncrement() % RECENT_DEBITS), transactionId);
+          break;
+        case COMMIT:
+          paymentAPI.commitTransaction(recentDebit(random), AMOUNT, CURRENCY);
+          break;
+        case STATUS:
+          paymentAPI.transactionStatus(recentDebit(random));
+          break;
+        case RESULT:
+          paymentAPI.transactionResult(recentDebit(random));
+          break;
+        case FORM:
+          formBuilder.generatePaymentParameters("https://example.com/success", "https://example.com/failure",
+              "https://example.com/cancel", "EN", AMOUNT, CURRENCY, UUID.randomUUID().toString(), "Load test");
+          break;
+        default:
+          throw new IllegalArgumentException(operation.toString());
+      }
+      return null;
+    } catch (IOException | RuntimeException e) {
+      return e;
+    }
+  }
+
+  private UUID recentDebit(Random random) {
+    long count = debits.get();
+    if (count == 0) {
+      return UUID.randomUUID();
+    }
+    UUID transactionId = recentDebits.get(random.nextInt((int) Math.min(count, RECENT_DEBITS)));
+    return transactionId != null ? transactionId : UUID.randomUUID();
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("--help") || !args[i].startsWith("--") || i + 1 == args.length) {
+        usage();
+        return;
+      }
+      options.put(args[i].substring(2), args[++i]);
+    }
+
+    String keyId = option(options, "key-id", "testKey");
+    String secret = option(options, "secret", "testSecret");
+    String account = option(options, "account", "test");
+    String merchant = option(options, "merchant", "test_merchantId");
+    Workload workload = Workload.parse(option(options, "mix", "debit=70,status=20,commit=10"));
+    int threads = Integer.parseInt(option(options, "threads", "16"));
+    double rate = Double.parseDouble(option(options, "rate", "0"));
+    long warmupMillis = Long.parseLong(option(options, "warmup", "5")) * 1000;
+    long durationMillis = Long.parseLong(option(options, "duration", "30")) * 1000;
+    boolean distribution = Boolean.parseBoolean(option(options, "distribution", "false"));
+
+    StubServer stub = null;
+    String url = options.get("url");
+    if (url == null) {
+      stub = new StubServer(new SecureSigner(keyId, secret), Integer.parseInt(option(options, "stub-port", "0")),
+          threads, Long.parseLong(option(options, "stub-latency", "0")));
+      url = stub.getUrl();
+    }
+
+    PaymentAPI paymentAPI = new PaymentAPI(url, keyId, secret, account, merchant);
+    paymentAPI.setHttpClient(HttpClients.custom().setMaxConnPerRoute(threads).setMaxConnTotal(threads).build());
+    FormBuilder formBuilder = new FormBuilder("POST", keyId, secret, account, merchant, url);
+
+    System.out.println(String.format("%s, mix %s, %d threads, %s, %d s warm-up, %d s measured%n", url, workload,
+        threads, rate > 0 ? rate + " ops/s" : "back to back", warmupMillis / 1000, durationMillis / 1000));
+    try {
+      new LoadGenerator(paymentAPI, formBuilder, workload).run(threads, rate, warmupMillis, durationMillis)
+          .print(System.out, distribution);
+    } finally {
+      paymentAPI.close();
+      if (stub != null) {
+        stub.close();
+      }
+    }
+  }
+
+  private static String option(Map<String, String> options, String name, String defaultValue) {
+    String value = options.get(name);
+    return value != null ? value : defaultValue;
+  }
+
+  private static void usage() {
+    System.out.println("Usage: LoadGenerator [--option value]...\n"
+        + "  --url           Service URL, by default a local stub server is started\n"
+        + "  --key-id        Signature key id, default testKey\n"
+        + "  --secret        Signature secret, default testSecret\n"
+        + "  --account       Account, default test\n"
+        + "  --merchant      Merchant, default test_merchantId\n"
+        + "  --mix           Operations and weights, default debit=70,status=20,commit=10\n"
+        + "                  operations: init, debit, commit, status, result, form\n"
+        + "  --threads       Threads and connections, default 16\n"
+        + "  --rate          Target operations per second in total, default 0 to run back to back\n"
+        + "  --warmup        Seconds before recording, default 5\n"
+        + "  --duration      Seconds to record, default 30\n"
+        + "  --distribution  true to print the percentile distribution of each operation\n"
+        + "  --stub-port     Port of the stub server, default any free port\n"
+        + "  --stub-latency  Milliseconds the stub server waits before each response, default 0");
+  }
+}
@@ -0,0 +1,128 @@
+package io.paymenthighway.load;
+
+import java.io.PrintStream;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The latencies and errors of each operation in a {@link LoadGenerator} run
+ */
+public class LoadReport {
+
+  private static final double MILLIS = 1e6;
+
+  private final Map<Workload.Operation, LatencyHistogram> histograms = new EnumMap<>(Workload.Operation.class);
+  private final Map<Workload.Operation, AtomicLong> errors = new EnumMap<>(Workload.Operation.class);
+  private final Map<Workload.Operation, AtomicReference<Throwable>> lastErrors =
+      new EnumMap<>(Workload.Operation.class);
+  private long durationMillis;
+
+  LoadReport() {
+    for (Workload.Operation operation : Workload.Operation.values()) {
+      histograms.put(operation, new LatencyHistogram());
+      errors.put(operation, new AtomicLong());
+      lastErrors.put(operation, new AtomicReference<Throwable>());
+    }
+  }
+
+  /**
+   * @param operation The operation
+   * @return The latencies of the successful operations in nanoseconds, measured from the time the operation was
+   * due to start when the run had a target rate
+   */
+  public LatencyHistogram getHistogram(Workload.Operation operation) {
+    return histograms.get(operation);
+  }
+
+  /**
+   * @param operation The operation
+   * @return The number of failed operations
+   */
+  public long getErrors(Workload.Operation operation) {
+    return errors.get(operation).get();
+  }
+
+  /**
+   * @param operation The operation
+   * @return The exception of the last failed operation, or null if none failed
+   */
+  public Throwable getLastError(Workload.Operation operation) {
+    return lastErrors.get(operation).get();
+  }
+
+  /**
+   * @return The number of successful operations
+   */
+  public long getCompleted() {
+    long completed = 0;
+    for (LatencyHistogram histogram : histograms.values()) {
+      completed += histogram.getCount();
+    }
+    return completed;
+  }
+
+  /**
+   * @return The time from the start of recording until the last recorded operation finished
+   */
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  /**
+   * Print a summary line for each operation that ran, in milliseconds, and the last error of each operation that
+   * failed
+   *
+   * @param out The stream to print to
+   * @param distribution Whether to print the percentile distribution of each operation too
+   */
+  public void print(PrintStream out, boolean distribution) {
+    out.println(String.format(Locale.ROOT, "%-8s %10s %8s %10s %9s %9s %9s %9s %9s", "endpoint", "count", "errors",
+        "req/s", "p50", "p90", "p99", "p99.9", "max"));
+    for (Workload.Operation operation : Workload.Operation.values()) {
+      LatencyHistogram histogram = histograms.get(operation);
+      if (histogram.getCount() == 0 && getErrors(operation) == 0) {
+        continue;
+      }
+      out.println(String.format(Locale.ROOT, "%-8s %10d %8d %10.1f %9.3f %9.3f %9.3f %9.3f %9.3f",
+          operation.name().toLowerCase(Locale.ROOT), histogram.getCount(), getErrors(operation),
+          histogram.getCount() * 1000.0 / durationMillis,
+          histogram.getValueAtPercentile(50) / MILLIS, histogram.getValueAtPercentile(90) / MILLIS,
+          histogram.getValueAtPercentile(99) / MILLIS, histogram.getValueAtPercentile(99.9) / MILLIS,
+          histogram.getMax() / MILLIS));
+    }
+
+    for (Workload.Operation operation : Workload.Operation.values()) {
+      Throwable error = getLastError(operation);
+      if (error != null) {
+        out.println(operation.name().toLowerCase(Locale.ROOT) + " last error: " + error);
+      }
+    }
+
+    if (distribution) {
+      for (Workload.Operation operation : Workload.Operation.values()) {
+        LatencyHistogram histogram = histograms.get(operation);
+        if (histogram.getCount() > 0) {
+          out.println();
+          out.println("# " + operation.name().toLowerCase(Locale.ROOT) + ", milliseconds");
+          histogram.printPercentiles(out, MILLIS);
+        }
+      }
+    }
+  }
+
+  void recordLatency(Workload.Operation operation, long nanos) {
+    histograms.get(operation).record(nanos);
+  }
+
+  void recordError(Workload.Operation operation, Throwable error) {
+    errors.get(operation).incrementAndGet();
+    lastErrors.get(operation).set(error);
+  }
+
+  void finished(long durationMillis) {
+    this.durationMillis = Math.max(1, durationMillis);
+  }
+}
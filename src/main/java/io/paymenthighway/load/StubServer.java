@@ -0,0 +1,137 @@
+package io.paymenthighway.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import io.paymenthighway.PaymentHighwayUtility;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A local HTTP server that answers every Payment API request with a signed success response, after an optional
+ * delay. Lets the load generator measure the client side without loading Payment Highway.
+ */
+public class StubServer implements Closeable {
+
+  private static final String RESULT_OK = "\"result\":{\"code\":100,\"message\":\"OK\"}";
+
+  static {
+    // the server writes the headers and the body separately, with Nagle's algorithm each reused connection would
+    // wait for the delayed ACK of the client, about 40 ms
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private final SecureSigner signer;
+  private final long latencyMillis;
+  private final HttpServer server;
+  private final ExecutorService executor;
+
+  /**
+   * Start the server on the loopback interface
+   *
+   * @param signer Signs the responses, use the same key as the client
+   * @param port The port, or 0 for any free port
+   * @param threads The number of requests handled at the same time
+   * @param latencyMillis The delay before each response
+   * @throws IOException if the port can not be bound
+   */
+  public StubServer(SecureSigner signer, int port, int threads, long latencyMillis) throws IOException {
+    this.signer = signer;
+    this.latencyMillis = latencyMillis;
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    this.executor = Executors.newFixedThreadPool(threads);
+    server.setExecutor(executor);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange);
+      }
+    });
+    server.start();
+  }
+
+  /**
+   * @return The service URL to give to the PaymentAPI
+   */
+  public String getUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdown();
+  }
+
+  private void respond(HttpExchange exchange) throws IOException {
+    try {
+      InputStream in = exchange.getRequestBody();
+      byte[] buffer = new byte[4096];
+      while (in.read(buffer) >= 0) {
+        // the request body is not looked at
+      }
+      if (latencyMillis > 0) {
+        try {
+          Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+
+      String method = exchange.getRequestMethod();
+      URI requestUri = exchange.getRequestURI();
+      String uri = requestUri.getRawQuery() != null
+          ? requestUri.getRawPath() + "?" + requestUri.getRawQuery()
+          : requestUri.getRawPath();
+      String body = body(method, requestUri.getRawPath());
+
+      List<NameValuePair> headers = new ArrayList<>();
+      headers.add(new BasicNameValuePair("sph-response-id", PaymentHighwayUtility.createRequestId()));
+      headers.add(new BasicNameValuePair("sph-timestamp", PaymentHighwayUtility.getUtcTimestamp()));
+      String requestId = exchange.getRequestHeaders().getFirst("sph-request-id");
+      headers.add(new BasicNameValuePair("sph-request-id", requestId != null ? requestId : ""));
+      for (NameValuePair header : headers) {
+        exchange.getResponseHeaders().add(header.getName(), header.getValue());
+      }
+      exchange.getResponseHeaders().add("Signature", signer.createSignature(method, uri, headers, body));
+      exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+
+      byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static String body(String method, String path) {
+    String[] segments = path.split("/");
+    if ("POST".equals(method) && segments.length == 2 && "transaction".equals(segments[1])) {
+      return "{\"id\":\"" + UUID.randomUUID() + "\"," + RESULT_OK + "}";
+    }
+    if ("GET".equals(method) && segments.length == 3 && "transaction".equals(segments[1])) {
+      return "{" + RESULT_OK + ",\"transaction\":{\"id\":\"" + segments[2]
+          + "\",\"status\":{\"state\":\"ok\",\"code\":\"4000\"}}}";
+    }
+    return "{" + RESULT_OK + "}";
+  }
+}
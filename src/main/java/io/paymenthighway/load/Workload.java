@@ -0,0 +1,113 @@
+package io.paymenthighway.load;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A weighted mix of operations, e.g. "debit=70,status=20,commit=10"
+ */
+public class Workload {
+
+  /**
+   * An operation of the load generator
+   */
+  public enum Operation {
+    /** Initialize a transaction */
+    INIT,
+    /** Debit a card token */
+    DEBIT,
+    /** Commit a debited transaction */
+    COMMIT,
+    /** Look up the status of a debited transaction */
+    STATUS,
+    /** Look up the result of a debited transaction */
+    RESULT,
+    /** Generate the parameters of a payment form, without a request */
+    FORM
+  }
+
+  private final Map<Operation, Integer> weights;
+  private final Operation[] operations;
+  private final int[] cumulativeWeights;
+
+  /**
+   * @param weights The relative weight of each operation, operations without a weight are not run
+   */
+  public Workload(Map<Operation, Integer> weights) {
+    this.weights = Collections.unmodifiableMap(new EnumMap<>(weights));
+    List<Operation> included = new ArrayList<>();
+    for (Map.Entry<Operation, Integer> entry : this.weights.entrySet()) {
+      if (entry.getValue() < 0) {
+        throw new IllegalArgumentException("Negative weight for " + entry.getKey());
+      }
+      if (entry.getValue() > 0) {
+        included.add(entry.getKey());
+      }
+    }
+    if (included.isEmpty()) {
+      throw new IllegalArgumentException("The workload has no operations");
+    }
+    this.operations = included.toArray(new Operation[included.size()]);
+    this.cumulativeWeights = new int[operations.length];
+    int total = 0;
+    for (int i = 0; i < operations.length; i++) {
+      total += this.weights.get(operations[i]);
+      cumulativeWeights[i] = total;
+    }
+  }
+
+  /**
+   * @param mix The operations and their weights, e.g. "debit=70,status=20,commit=10"
+   * @return Workload
+   */
+  public static Workload parse(String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String part : mix.split(",")) {
+      String[] pair = part.trim().split("=");
+      if (pair.length != 2) {
+        throw new IllegalArgumentException("Expected operation=weight: " + part);
+      }
+      Operation operation = Operation.valueOf(pair[0].trim().toUpperCase(Locale.ROOT));
+      weights.put(operation, Integer.parseInt(pair[1].trim()));
+    }
+    return new Workload(weights);
+  }
+
+  /**
+   * @return The weight of each operation
+   */
+  public Map<Operation, Integer> getWeights() {
+    return weights;
+  }
+
+  /**
+   * @param random The source of randomness
+   * @return An operation picked by the weights
+   */
+  public Operation next(Random random) {
+    int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+    for (int i = 0; i < operations.length; i++) {
+      if (pick < cumulativeWeights[i]) {
+        return operations[i];
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+      if (sb.length() > 0) {
+        sb.append(',');
+      }
+      sb.append(entry.getKey().name().toLowerCase(Locale.ROOT)).append('=').append(entry.getValue());
+    }
+    return sb.toString();
+  }
+}
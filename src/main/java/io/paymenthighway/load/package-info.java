@@ -0,0 +1,4 @@
+/**
+ * A load generator for sizing connection pools and thread counts against a local stub server
+ */
+package io.paymenthighway.load;
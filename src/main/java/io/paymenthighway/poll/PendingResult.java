@@ -0,0 +1,142 @@
+package io.paymenthighway.poll;
+
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.model.response.TransactionResultResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The result of a transaction polled by a {@link ResultPoller}. Done when the transaction result is final, when
+ * the result request fails with a non-retryable error, when the poller gives up, or when cancelled.
+ */
+public final class PendingResult implements Future<TransactionResultResponse> {
+
+  private final UUID transactionId;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private List<ResultListener> listeners = new ArrayList<>();
+  private TransactionResultResponse response;
+  private Throwable error;
+  private boolean cancelled;
+
+  // scheduling state, owned by the poller
+  long deadlineTick;
+  long timeoutTick;
+  long delayMillis;
+  volatile int attempts;
+  volatile Exception lastError;
+
+  PendingResult(UUID transactionId) {
+    this.transactionId = transactionId;
+  }
+
+  public UUID getTransactionId() {
+    return transactionId;
+  }
+
+  /**
+   * @return The number of result requests sent so far
+   */
+  public int getAttempts() {
+    return attempts;
+  }
+
+  /**
+   * Add a listener that is called when the result is done
+   *
+   * @param listener The listener
+   */
+  public void addListener(ResultListener listener) {
+    synchronized (this) {
+      if (listeners != null) {
+        listeners.add(listener);
+        return;
+      }
+    }
+    inform(listener);
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return complete(null, null, true);
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  @Override
+  public TransactionResultResponse get() throws InterruptedException, ExecutionException {
+    done.await();
+    return outcome();
+  }
+
+  @Override
+  public TransactionResultResponse get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    if (!done.await(timeout, unit)) {
+      throw new TimeoutException("No final result for transaction " + transactionId + " yet");
+    }
+    return outcome();
+  }
+
+  boolean complete(TransactionResultResponse response, Throwable error) {
+    return complete(response, error, false);
+  }
+
+  private boolean complete(TransactionResultResponse response, Throwable error, boolean cancel) {
+    List<ResultListener> toNotify;
+    synchronized (this) {
+      if (listeners == null) {
+        return false;
+      }
+      this.response = response;
+      this.error = error;
+      this.cancelled = cancel;
+      toNotify = listeners;
+      listeners = null;
+    }
+    done.countDown();
+    for (ResultListener listener : toNotify) {
+      inform(listener);
+    }
+    return true;
+  }
+
+  private synchronized TransactionResultResponse outcome() throws ExecutionException {
+    if (cancelled) {
+      throw new CancellationException("Polling of transaction " + transactionId + " was cancelled");
+    }
+    if (error != null) {
+      throw new ExecutionException(error);
+    }
+    return response;
+  }
+
+  private void inform(ResultListener listener) {
+    try {
+      listener.onResult(this);
+    } catch (RuntimeException e) {
+      ErrorReporters.report(ErrorEvent.Kind.CALLBACK, "Result listener of transaction " + transactionId + " failed", e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PendingResult " + transactionId;
+  }
+}
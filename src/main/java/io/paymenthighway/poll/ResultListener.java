@@ -0,0 +1,14 @@
+package io.paymenthighway.poll;
+
+/**
+ * Receives the pending results of a {@link ResultPoller} when they are done
+ */
+public interface ResultListener {
+
+  /**
+   * Called once, in a worker thread of the poller, or in the calling thread if the result was already done
+   *
+   * @param result The done result
+   */
+  void onResult(PendingResult result);
+}
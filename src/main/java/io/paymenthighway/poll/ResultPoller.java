@@ -0,0 +1,321 @@
+package io.paymenthighway.poll;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.model.response.TransactionResultResponse;
+import org.apache.http.client.HttpResponseException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Polls the transaction result of pending transactions, e.g. 3DS and form payments, until it is final.
+ * <p/>
+ * The pending transactions wait on a hashed timer wheel turned by a single thread, and the polls that fall due
+ * on the same tick are handed to a small pool of workers in batches. The delay between the polls of a transaction
+ * grows from the initial delay up to the maximum delay, so the number of threads and wakeups stays the same however
+ * many transactions are pending.
+ * <p/>
+ * A result is final when it has a result code that is not one of the pending codes. A result request that fails
+ * with an I/O error, HTTP 404, 429 or a server error is retried; other HTTP errors complete the result with the
+ * error. Transactions that have no final result within the timeout complete with a {@link TimeoutException}.
+ * <p/>
+ * Thread safe.
+ */
+public class ResultPoller implements Closeable {
+
+  private static final int DEFAULT_WORKERS = 4;
+  private static final long DEFAULT_INITIAL_DELAY_MILLIS = 1000;
+  private static final long DEFAULT_MAX_DELAY_MILLIS = 15000;
+  private static final long DEFAULT_TIMEOUT_MILLIS = 15 * 60 * 1000;
+  private static final long MAX_TICK_MILLIS = 100;
+  private static final int WHEEL_SLOTS = 512;
+  private static final double BACKOFF_MULTIPLIER = 1.5;
+  private static final double JITTER = 0.1;
+
+  private static final int STATUS_NOT_FOUND = 404;
+  private static final int STATUS_TOO_MANY_REQUESTS = 429;
+  private static final int STATUS_SERVER_ERROR = 500;
+
+  private final PaymentAPI paymentAPI;
+  private final int workers;
+  private final long initialDelayMillis;
+  private final long maxDelayMillis;
+  private final long timeoutMillis;
+  private final long tickMillis;
+  private final long startNanos = System.nanoTime();
+
+  private final TimerWheel wheel = new TimerWheel(WHEEL_SLOTS);
+  private final Object lock = new Object();
+  private final ConcurrentHashMap<UUID, PendingResult> pending = new ConcurrentHashMap<>();
+  private final AtomicLong polls = new AtomicLong();
+  private final ExecutorService executor;
+  private final Thread ticker;
+
+  private volatile Set<String> pendingCodes = Collections.emptySet();
+  private volatile boolean closed = false;
+
+  /**
+   * Constructor with four workers, polls from one second apart up to 15 seconds apart, and a timeout of 15 minutes
+   *
+   * @param paymentAPI The Payment API of the merchant
+   */
+  public ResultPoller(PaymentAPI paymentAPI) {
+    this(paymentAPI, DEFAULT_WORKERS, DEFAULT_INITIAL_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param paymentAPI The Payment API of the merchant
+   * @param workers The number of result requests sent at the same time
+   * @param initialDelayMillis The delay before the first poll of a transaction
+   * @param maxDelayMillis The longest delay between two polls of a transaction
+   * @param timeoutMillis How long a transaction is polled before the poller gives up
+   */
+  public ResultPoller(PaymentAPI paymentAPI, int workers, long initialDelayMillis, long maxDelayMillis,
+                      long timeoutMillis) {
+    if (workers < 1 || initialDelayMillis < 1 || maxDelayMillis < initialDelayMillis || timeoutMillis < 1) {
+      throw new IllegalArgumentException("workers and delays must be positive, maxDelayMillis at least the initial");
+    }
+    this.paymentAPI = paymentAPI;
+    this.workers = workers;
+    this.initialDelayMillis = initialDelayMillis;
+    this.maxDelayMillis = maxDelayMillis;
+    this.timeoutMillis = timeoutMillis;
+    this.tickMillis = Math.min(MAX_TICK_MILLIS, initialDelayMillis);
+
+    final AtomicInteger threads = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "paymenthighway-result-poller-" + threads.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.ticker = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        turn();
+      }
+    }, "paymenthighway-result-poller-wheel");
+    this.ticker.setDaemon(true);
+    this.ticker.start();
+  }
+
+  /**
+   * Set the result codes that mean the transaction is not final yet
+   *
+   * @param codes The result codes
+   */
+  public void setPendingCodes(String... codes) {
+    this.pendingCodes = new HashSet<>(Arrays.asList(codes));
+  }
+
+  /**
+   * Start polling the result of the transaction. A transaction already being polled is not polled twice.
+   *
+   * @param transactionId The transaction id
+   * @return The pending result of the transaction
+   */
+  public PendingResult poll(UUID transactionId) {
+    PendingResult result = new PendingResult(transactionId);
+    while (true) {
+      PendingResult existing = pending.putIfAbsent(transactionId, result);
+      if (existing == null) {
+        break;
+      }
+      if (!existing.isDone()) {
+        return existing;
+      }
+      if (pending.replace(transactionId, existing, result)) {
+        break;
+      }
+    }
+
+    synchronized (lock) {
+      if (closed) {
+        pending.remove(transactionId, result);
+        throw new IllegalStateException("Result poller is closed");
+      }
+      long now = currentTick();
+      result.timeoutTick = now + ticks(timeoutMillis);
+      result.delayMillis = initialDelayMillis;
+      schedule(result, now);
+    }
+    return result;
+  }
+
+  /**
+   * @return The number of transactions being polled
+   */
+  public int getPending() {
+    return pending.size();
+  }
+
+  /**
+   * @return The number of result requests sent
+   */
+  public long getPolls() {
+    return polls.get();
+  }
+
+  /**
+   * Stop polling. The results not yet done are cancelled.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+      lock.notifyAll();
+    }
+    executor.shutdownNow();
+    for (PendingResult result : pending.values()) {
+      result.cancel(false);
+    }
+    pending.clear();
+  }
+
+  /**
+   * Schedule the next poll of the result after its current delay. Called holding the lock.
+   */
+  private void schedule(PendingResult result, long now) {
+    long delay = result.delayMillis;
+    long jitter = (long) (delay * JITTER * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+    result.delayMillis = Math.min(maxDelayMillis, (long) (delay * BACKOFF_MULTIPLIER));
+
+    boolean idle = wheel.size() == 0;
+    wheel.schedule(result, now + ticks(delay + jitter));
+    if (idle) {
+      // the wheel thread waits only while there is nothing to poll
+      lock.notifyAll();
+    }
+  }
+
+  private void turn() {
+    List<PendingResult> due = new ArrayList<>();
+    try {
+      while (true) {
+        synchronized (lock) {
+          while (!closed && wheel.size() == 0) {
+            lock.wait();
+          }
+          if (closed) {
+            return;
+          }
+          wheel.advance(currentTick(), due);
+          if (due.isEmpty()) {
+            long nextTickNanos = startNanos + (wheel.getTick() + 1) * TimeUnit.MILLISECONDS.toNanos(tickMillis);
+            TimeUnit.NANOSECONDS.timedWait(lock, Math.max(1, nextTickNanos - System.nanoTime()));
+            continue;
+          }
+        }
+        dispatch(due);
+        due = new ArrayList<>();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Split the due results into one batch per worker
+   */
+  private void dispatch(List<PendingResult> due) {
+    int batches = Math.min(workers, due.size());
+    int batchSize = (due.size() + batches - 1) / batches;
+    for (int from = 0; from < due.size(); from += batchSize) {
+      final List<PendingResult> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            for (PendingResult result : batch) {
+              check(result);
+            }
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // closed
+        return;
+      }
+    }
+  }
+
+  private void check(PendingResult result) {
+    if (result.isDone()) {
+      pending.remove(result.getTransactionId(), result);
+      return;
+    }
+
+    polls.incrementAndGet();
+    result.attempts++;
+    TransactionResultResponse response = null;
+    try {
+      response = paymentAPI.transactionResult(result.getTransactionId());
+    } catch (HttpResponseException e) {
+      if (!isRetryable(e.getStatusCode())) {
+        complete(result, null, e);
+        return;
+      }
+      result.lastError = e;
+    } catch (IOException e) {
+      result.lastError = e;
+    } catch (RuntimeException e) {
+      complete(result, null, e);
+      return;
+    }
+
+    if (response != null && response.getResult() != null && !pendingCodes.contains(response.getResult().getCode())) {
+      complete(result, response, null);
+      return;
+    }
+
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      long now = currentTick();
+      if (now < result.timeoutTick) {
+        schedule(result, now);
+        return;
+      }
+    }
+    TimeoutException timeout = new TimeoutException("No final result for transaction " + result.getTransactionId()
+        + " after " + result.getAttempts() + " polls");
+    timeout.initCause(result.lastError);
+    complete(result, null, timeout);
+  }
+
+  private void complete(PendingResult result, TransactionResultResponse response, Throwable error) {
+    pending.remove(result.getTransactionId(), result);
+    result.complete(response, error);
+  }
+
+  private long currentTick() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) / tickMillis;
+  }
+
+  private long ticks(long millis) {
+    return Math.max(1, (millis + tickMillis - 1) / tickMillis);
+  }
+
+  private static boolean isRetryable(int status) {
+    return status == STATUS_NOT_FOUND || status == STATUS_TOO_MANY_REQUESTS || status >= STATUS_SERVER_ERROR;
+  }
+}
@@ -0,0 +1,81 @@
+package io.paymenthighway.poll;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel of pending results. A result due at tick t is kept in slot t modulo the wheel size, so
+ * scheduling is constant time and advancing visits only the slots of the elapsed ticks.
+ * <p/>
+ * Not thread safe, {@link ResultPoller} guards it with its own lock.
+ */
+class TimerWheel {
+
+  private final List<PendingResult>[] slots;
+  private final int mask;
+  private long tick = 0;
+  private int size = 0;
+
+  /**
+   * @param slots The number of slots, rounded up to a power of two
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  TimerWheel(int slots) {
+    int length = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+    this.slots = new List[length];
+    for (int i = 0; i < length; i++) {
+      this.slots[i] = new ArrayList<>();
+    }
+    this.mask = length - 1;
+  }
+
+  /**
+   * @return The last tick advanced to
+   */
+  long getTick() {
+    return tick;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * @param result The pending result
+   * @param deadline The tick the result is due at. A tick already passed is due at the next advance.
+   */
+  void schedule(PendingResult result, long deadline) {
+    long due = Math.max(deadline, tick + 1);
+    result.deadlineTick = due;
+    slots[(int) (due & mask)].add(result);
+    size++;
+  }
+
+  /**
+   * Advance to the tick and collect the results that are due
+   *
+   * @param now The current tick
+   * @param due The list the due results are added to
+   */
+  void advance(long now, List<PendingResult> due) {
+    if (now <= tick) {
+      return;
+    }
+    // after a long pause every slot is visited once
+    long ticks = Math.min(now - tick, slots.length);
+    for (long t = now - ticks + 1; t <= now; t++) {
+      List<PendingResult> slot = slots[(int) (t & mask)];
+      for (int i = slot.size() - 1; i >= 0; i--) {
+        PendingResult result = slot.get(i);
+        if (result.deadlineTick <= now) {
+          int last = slot.size() - 1;
+          slot.set(i, slot.get(last));
+          slot.remove(last);
+          size--;
+          due.add(result);
+        }
+      }
+    }
+    tick = now;
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Polling the results of pending transactions on a timer wheel
+ */
+package io.paymenthighway.poll;
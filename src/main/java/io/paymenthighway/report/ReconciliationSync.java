@@ -0,0 +1,101 @@
+package io.paymenthighway.report;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.model.response.ReconciliationReportResponse;
+import io.paymenthighway.model.response.ReconciliationSettlement;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Incremental reconciliation report synchronization.
+ * <p/>
+ * Fetches reconciliation reports and returns only the settlements that are new or have changed since they were
+ * last marked as processed. Processed settlements are kept in a {@link SettlementCheckpoint} file, so a
+ * scheduled job can fetch the recent days repeatedly and only handle the difference.
+ * <p/>
+ * The checkpoint remembers the settlements processed within the retention period before the latest processed one,
+ * 180 days by default. Settlements older than that are not deduplicated: fetching such a day again returns all of
+ * its settlements as new.
+ */
+public class ReconciliationSync implements Closeable {
+
+  private final PaymentAPI paymentAPI;
+  private final SettlementCheckpoint checkpoint;
+
+  /**
+   * Constructor, remembering the processed settlements for 180 days
+   *
+   * @param paymentAPI The Payment API used to fetch the reports
+   * @param checkpointFile The file where the processed settlements are recorded
+   * @throws IOException
+   */
+  public ReconciliationSync(PaymentAPI paymentAPI, File checkpointFile) throws IOException {
+    this.paymentAPI = paymentAPI;
+    this.checkpoint = new SettlementCheckpoint(checkpointFile);
+  }
+
+  /**
+   * Constructor
+   *
+   * @param paymentAPI The Payment API used to fetch the reports
+   * @param checkpointFile The file where the processed settlements are recorded
+   * @param retentionDays How many days before the latest processed settlement the settlements are remembered. Must
+   *                      cover the oldest day the job fetches again.
+   * @throws IOException
+   */
+  public ReconciliationSync(PaymentAPI paymentAPI, File checkpointFile, int retentionDays) throws IOException {
+    this.paymentAPI = paymentAPI;
+    this.checkpoint = new SettlementCheckpoint(checkpointFile, retentionDays);
+  }
+
+  /**
+   * Fetch the reconciliation report and return the settlements that have not been processed yet
+   *
+   * @param date The date to fetch the reconciliation report for
+   * @return new or changed settlements, in report order
+   * @throws IOException
+   */
+  public List<ReconciliationSettlement> fetchChanges(String date) throws IOException {
+    return findChanges(paymentAPI.fetchReconciliationReport(date));
+  }
+
+  /**
+   * @param report A reconciliation report
+   * @return new or changed settlements, in report order
+   */
+  public List<ReconciliationSettlement> findChanges(ReconciliationReportResponse report) {
+    List<ReconciliationSettlement> changes = new ArrayList<>();
+    if (report == null || report.getReconciliationSettlements() == null) {
+      return changes;
+    }
+    for (ReconciliationSettlement settlement : report.getReconciliationSettlements()) {
+      if (settlement != null && !checkpoint.isProcessed(settlement)) {
+        changes.add(settlement);
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Mark settlements as processed and persist the checkpoint
+   *
+   * @param settlements The settlements that have been handled
+   * @throws IOException
+   */
+  public void markProcessed(Collection<ReconciliationSettlement> settlements) throws IOException {
+    for (ReconciliationSettlement settlement : settlements) {
+      checkpoint.record(settlement);
+    }
+    checkpoint.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    checkpoint.close();
+  }
+}
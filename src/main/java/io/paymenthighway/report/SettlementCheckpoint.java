@@ -0,0 +1,315 @@
+package io.paymenthighway.report;
+
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.model.response.ReconciliationSettlement;
+import io.paymenthighway.model.response.Status;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of processed reconciliation settlements in a local file.
+ * <p/>
+ * A settlement is identified by its acquirer batch id, reference and processing date. Next to the identity a
+ * fingerprint of the settlement contents is stored, so a settlement that changes after it was processed is
+ * detected as well. Recorded settlements are appended to the file. When the file is opened, the settlements
+ * processed more than the retention period before the latest one are forgotten, and the file is rewritten if most
+ * of its entries have been superseded or forgotten.
+ */
+public class SettlementCheckpoint implements Closeable {
+
+  private static final int MAGIC = 0x53504843;
+  private static final byte VERSION = 1;
+  private static final int HEADER_LENGTH = 5;
+  private static final int COMPACTION_MIN_ENTRIES = 1024;
+  private static final int DEFAULT_RETENTION_DAYS = 180;
+
+  private final File file;
+  private final Map<Identity, Long> processed = new HashMap<>();
+  private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+  private final DataOutputStream pendingOut = new DataOutputStream(pending);
+
+  private FileChannel channel;
+
+  /**
+   * Open the checkpoint with a retention of 180 days, creating the file if it does not exist
+   *
+   * @param file The checkpoint file
+   * @throws IOException
+   */
+  public SettlementCheckpoint(File file) throws IOException {
+    this(file, DEFAULT_RETENTION_DAYS);
+  }
+
+  /**
+   * Open the checkpoint, creating the file if it does not exist
+   *
+   * @param file The checkpoint file
+   * @param retentionDays How many days before the latest processed settlement the settlements are remembered
+   * @throws IOException
+   */
+  public SettlementCheckpoint(File file, int retentionDays) throws IOException {
+    if (retentionDays < 1) {
+      throw new IllegalArgumentException("retentionDays must be positive");
+    }
+    this.file = file;
+
+    int entries = 0;
+    if (file.exists()) {
+      entries = load();
+      expire(retentionDays);
+    }
+    if (entries > COMPACTION_MIN_ENTRIES && entries > 2 * processed.size()) {
+      compact();
+    }
+
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    if (this.channel.size() < HEADER_LENGTH) {
+      this.channel.truncate(0);
+      this.channel.write(header(), 0);
+      this.channel.force(false);
+    }
+  }
+
+  /**
+   * @param settlement The settlement to check
+   * @return true if the settlement has been recorded with the same contents
+   */
+  public boolean isProcessed(ReconciliationSettlement settlement) {
+    Long fingerprint = processed.get(new Identity(settlement));
+    return fingerprint != null && fingerprint == fingerprint(settlement);
+  }
+
+  /**
+   * Record the settlement as processed. The record is persisted on the next {@link #flush()}.
+   *
+   * @param settlement The processed settlement
+   * @throws IOException
+   */
+  public void record(ReconciliationSettlement settlement) throws IOException {
+    Identity identity = new Identity(settlement);
+    long fingerprint = fingerprint(settlement);
+
+    Long previous = processed.put(identity, fingerprint);
+    if (previous == null || previous != fingerprint) {
+      write(pendingOut, identity, fingerprint);
+    }
+  }
+
+  /**
+   * Append the recorded settlements to the checkpoint file and sync it to the storage device
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException {
+    if (pending.size() == 0) {
+      return;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+    long position = channel.size();
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    channel.force(false);
+    pending.reset();
+  }
+
+  /**
+   * @return The number of distinct settlements recorded
+   */
+  public int size() {
+    return processed.size();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      try {
+        flush();
+      } finally {
+        channel.close();
+        channel = null;
+      }
+    }
+  }
+
+  /**
+   * Read the entries from the file. A partially written last entry is dropped.
+   *
+   * @return the number of entries in the file
+   */
+  private int load() throws IOException {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    if (bytes.length < HEADER_LENGTH) {
+      return 0;
+    }
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+    if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+      throw new IOException("Not a settlement checkpoint file: " + file);
+    }
+
+    int entries = 0;
+    int valid = HEADER_LENGTH;
+    try {
+      while (in.available() > 0) {
+        Identity identity = new Identity(in.readUTF(), in.readUTF(), in.readUTF());
+        processed.put(identity, in.readLong());
+        valid = bytes.length - in.available();
+        entries++;
+      }
+    } catch (EOFException | UTFDataFormatException e) {
+      try (FileChannel truncate = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+        truncate.truncate(valid);
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Forget the settlements processed more than the retention period before the latest one. The processing dates
+   * are ISO 8601 UTC timestamps, so they are compared as strings.
+   */
+  private void expire(int retentionDays) {
+    String latest = null;
+    for (Identity identity : processed.keySet()) {
+      if (latest == null || identity.dateProcessed.compareTo(latest) > 0) {
+        latest = identity.dateProcessed;
+      }
+    }
+
+    long latestSecond = parseSecond(latest);
+    if (latestSecond == Long.MIN_VALUE) {
+      return;
+    }
+    String cutoff = CachedUtcClock.format(latestSecond - TimeUnit.DAYS.toSeconds(retentionDays));
+
+    Iterator<Identity> identities = processed.keySet().iterator();
+    while (identities.hasNext()) {
+      String dateProcessed = identities.next().dateProcessed;
+      // settlements without a processing date are kept
+      if (!dateProcessed.isEmpty() && dateProcessed.compareTo(cutoff) < 0) {
+        identities.remove();
+      }
+    }
+  }
+
+  /**
+   * @return The epoch second of an ISO 8601 UTC timestamp, or Long.MIN_VALUE if it can not be parsed
+   */
+  private static long parseSecond(String timestamp) {
+    if (timestamp == null || timestamp.length() < 10) {
+      return Long.MIN_VALUE;
+    }
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    try {
+      return TimeUnit.MILLISECONDS.toSeconds(format.parse(timestamp.substring(0, 10)).getTime());
+    } catch (ParseException e) {
+      return Long.MIN_VALUE;
+    }
+  }
+
+  /**
+   * Replace the file with one containing only the current entries
+   */
+  private void compact() throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    try (FileOutputStream out = new FileOutputStream(temp)) {
+      DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+      data.write(header().array());
+      for (Map.Entry<Identity, Long> entry : processed.entrySet()) {
+        write(data, entry.getKey(), entry.getValue());
+      }
+      data.flush();
+      out.getFD().sync();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static ByteBuffer header() {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putInt(MAGIC).put(VERSION).flip();
+    return header;
+  }
+
+  private static void write(DataOutputStream out, Identity identity, long fingerprint) throws IOException {
+    out.writeUTF(identity.acquirerBatchId);
+    out.writeUTF(identity.reference);
+    out.writeUTF(identity.dateProcessed);
+    out.writeLong(fingerprint);
+  }
+
+  /**
+   * FNV-1a hash of the settlement fields that may change after the settlement is first reported
+   */
+  static long fingerprint(ReconciliationSettlement settlement) {
+    long hash = 0xcbf29ce484222325L;
+    Status status = settlement.getStatus();
+    hash = hash(hash, status != null ? status.getState() : null);
+    hash = hash(hash, status != null ? status.getCode() : null);
+    hash = hash(hash, settlement.getBatch());
+    hash = hash(hash, settlement.getTransactionCount());
+    hash = hash(hash, settlement.getNetAmount());
+    hash = hash(hash, settlement.getCurrency());
+    hash = hash(hash, settlement.getMainAcquirerMerchantId());
+    hash = hash(hash, settlement.getUnallocatedTransactionsCount());
+    hash = hash(hash, settlement.getTransactions() != null ? Integer.toString(settlement.getTransactions().length) : null);
+    return hash;
+  }
+
+  private static long hash(long hash, String value) {
+    if (value != null) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      for (byte b : bytes) {
+        hash ^= b & 0xff;
+        hash *= 0x100000001b3L;
+      }
+    }
+    // separator, so that adjacent fields can not shift into each other
+    hash ^= 0xff;
+    hash *= 0x100000001b3L;
+    return hash;
+  }
+
+  private static final class Identity {
+    final String acquirerBatchId;
+    final String reference;
+    final String dateProcessed;
+
+    Identity(ReconciliationSettlement settlement) {
+      this(settlement.getAcquirerBatchId(), settlement.getReference(), settlement.getDateProcessed());
+    }
+
+    Identity(String acquirerBatchId, String reference, String dateProcessed) {
+      this.acquirerBatchId = acquirerBatchId != null ? acquirerBatchId : "";
+      this.reference = reference != null ? reference : "";
+      this.dateProcessed = dateProcessed != null ? dateProcessed : "";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Identity)) {
+        return false;
+      }
+      Identity other = (Identity) o;
+      return acquirerBatchId.equals(other.acquirerBatchId)
+          && reference.equals(other.reference)
+          && dateProcessed.equals(other.dateProcessed);
+    }
+
+    @Override
+    public int hashCode() {
+      return (acquirerBatchId.hashCode() * 31 + reference.hashCode()) * 31 + dateProcessed.hashCode();
+    }
+  }
+}
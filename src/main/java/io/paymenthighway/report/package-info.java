@@ -0,0 +1,4 @@
+/**
+ * Report processing tools
+ */
+package io.paymenthighway.report;
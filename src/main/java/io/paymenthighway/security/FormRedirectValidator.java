@@ -0,0 +1,148 @@
+package io.paymenthighway.security;
+
+import io.paymenthighway.trace.Trace;
+import io.paymenthighway.trace.Tracers;
+
+import javax.crypto.Mac;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Validates the signature of the redirect from a Payment Highway form to the success, failure or cancel URL.
+ * <p/>
+ * Works directly on a request parameter map, e.g. {@code ServletRequest.getParameterMap()}. The canonical form
+ * of the "sph-" parameters is encoded straight into the MAC, and the received signature is hex-decoded and compared
+ * to the calculated one in constant time, so no intermediate strings are created.
+ * <p/>
+ * Gives the same result as {@link SecureSigner#validateFormRedirect(Map)}. Validators are thread safe.
+ */
+public class FormRedirectValidator {
+
+  private static final String SIGNATURE_PARAMETER = "signature";
+  private static final String SPH_PREFIX = "sph-";
+  private static final int SIGNATURE_LENGTH = 32;
+  private static final String REDIRECT_METHOD = "GET";
+  private static final String REDIRECT_URI = "";
+  private static final byte[] REDIRECT_PREFIX = {'G', 'E', 'T', '\n', '\n'};
+
+  private final SecureSigner signer;
+  private final String signaturePrefix;
+
+  /**
+   * @param signer The signer with the key the forms are signed with
+   */
+  public FormRedirectValidator(SecureSigner signer) {
+    this.signer = signer;
+    this.signaturePrefix = SecureSigner.SignatureScheme + " " + signer.getSecretKeyId() + " ";
+  }
+
+  /**
+   * @param keyId The signature key id
+   * @param key The signature secret
+   */
+  public FormRedirectValidator(String keyId, String key) {
+    this(new SecureSigner(keyId, key));
+  }
+
+  /**
+   * Validates the redirect by checking the provided signature against the calculated one. Only the first value
+   * of each parameter is used.
+   *
+   * @param parameters The request parameters from the redirection
+   * @return boolean true if the signature is found and matches the calculated one
+   */
+  public boolean validate(Map<String, String[]> parameters) {
+    byte[] received = parseSignature(firstValue(parameters.get(SIGNATURE_PARAMETER)));
+    if (received == null) {
+      received = parseSignature(findSignatureIgnoreCase(parameters));
+      if (received == null) {
+        return false;
+      }
+    }
+
+    String[] names = sphParameterNames(parameters);
+    Arrays.sort(names);
+
+    byte[] calculated;
+    Trace trace = Tracers.getTracer().startSigning(REDIRECT_METHOD, REDIRECT_URI, 0);
+    try {
+      Mac mac = signer.getMac();
+      MacEncoder encoder = new MacEncoder(mac);
+      mac.update(REDIRECT_PREFIX);
+      for (int i = 0; i < names.length; i++) {
+        if (i > 0) {
+          encoder.write('\n');
+        }
+        encoder.writeLowerCase(names[i]);
+        encoder.write(':');
+        encoder.write(String.valueOf(firstValue(parameters.get(names[i]))));
+      }
+      encoder.write('\n');
+      encoder.flush();
+      calculated = mac.doFinal();
+    } finally {
+      trace.end();
+    }
+
+    return MessageDigest.isEqual(received, calculated);
+  }
+
+  /**
+   * @return The decoded signature, or null if it is missing, malformed or made with another key
+   */
+  private byte[] parseSignature(String signature) {
+    if (signature == null || signature.length() != signaturePrefix.length() + 2 * SIGNATURE_LENGTH
+        || !signature.startsWith(signaturePrefix)) {
+      return null;
+    }
+
+    byte[] bytes = new byte[SIGNATURE_LENGTH];
+    int offset = signaturePrefix.length();
+    for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+      int high = hexDigit(signature.charAt(offset + 2 * i));
+      int low = hexDigit(signature.charAt(offset + 2 * i + 1));
+      if (high < 0 || low < 0) {
+        return null;
+      }
+      bytes[i] = (byte) ((high << 4) | low);
+    }
+    return bytes;
+  }
+
+  /**
+   * Signatures are always created with lower case hex digits
+   */
+  private static int hexDigit(char c) {
+    if (c >= '0' && c <= '9') {
+      return c - '0';
+    } else if (c >= 'a' && c <= 'f') {
+      return c - 'a' + 10;
+    }
+    return -1;
+  }
+
+  private static String findSignatureIgnoreCase(Map<String, String[]> parameters) {
+    for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+      if (SIGNATURE_PARAMETER.equalsIgnoreCase(entry.getKey())) {
+        return firstValue(entry.getValue());
+      }
+    }
+    return null;
+  }
+
+  private static String[] sphParameterNames(Map<String, String[]> parameters) {
+    String[] names = new String[parameters.size()];
+    int count = 0;
+    for (String name : parameters.keySet()) {
+      if (name.regionMatches(true, 0, SPH_PREFIX, 0, SPH_PREFIX.length())) {
+        names[count++] = name;
+      }
+    }
+    return count == names.length ? names : Arrays.copyOf(names, count);
+  }
+
+  private static String firstValue(String[] values) {
+    return values != null && values.length > 0 ? values[0] : null;
+  }
+}
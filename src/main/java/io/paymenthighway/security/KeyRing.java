@@ -0,0 +1,186 @@
+package io.paymenthighway.security;
+
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Signature keys by key id, for rotating keys without downtime.
+ * <p/>
+ * New messages are signed with the signing key. Received messages are validated only with the key named in their
+ * "SPH1 &lt;keyId&gt; &lt;signature&gt;" signature, so accepting an additional key does not add any HMAC
+ * calculations. Keys can be added, removed and promoted to the signing key at any time from any thread.
+ */
+public class KeyRing {
+
+  private static final String SIGNATURE_SCHEME = SecureSigner.SignatureScheme + " ";
+
+  private final ConcurrentHashMap<String, Key> keys = new ConcurrentHashMap<>();
+  private volatile Key signingKey;
+
+  /**
+   * @param signingKeyId The id of the key to sign with
+   * @param signingSecret The secret of the key to sign with
+   */
+  public KeyRing(String signingKeyId, String signingSecret) {
+    this.signingKey = new Key(new SecureSigner(signingKeyId, signingSecret));
+    this.keys.put(signingKeyId, this.signingKey);
+  }
+
+  /**
+   * Accept signatures made with the key. Replaces a key with the same id.
+   *
+   * @param keyId The key id
+   * @param secret The key secret
+   */
+  public synchronized void addKey(String keyId, String secret) {
+    Key key = new Key(new SecureSigner(keyId, secret));
+    keys.put(keyId, key);
+    if (signingKey.signer.getSecretKeyId().equals(keyId)) {
+      signingKey = key;
+    }
+  }
+
+  /**
+   * Stop accepting signatures made with the key. The signing key can not be removed.
+   *
+   * @param keyId The key id
+   */
+  public synchronized void removeKey(String keyId) {
+    if (signingKey.signer.getSecretKeyId().equals(keyId)) {
+      throw new IllegalStateException("The signing key " + keyId + " can not be removed");
+    }
+    keys.remove(keyId);
+  }
+
+  /**
+   * Sign new messages with a key added earlier
+   *
+   * @param keyId The key id
+   */
+  public synchronized void setSigningKey(String keyId) {
+    Key key = keys.get(keyId);
+    if (key == null) {
+      throw new IllegalArgumentException("Unknown key " + keyId);
+    }
+    signingKey = key;
+  }
+
+  /**
+   * @return The signer of the signing key
+   */
+  public SecureSigner getSigner() {
+    return signingKey.signer;
+  }
+
+  /**
+   * @param keyId The key id
+   * @return The signer of the key, or null if the key is not in the ring
+   */
+  public SecureSigner getSigner(String keyId) {
+    Key key = keyId != null ? keys.get(keyId) : null;
+    return key != null ? key.signer : null;
+  }
+
+  /**
+   * Validates the response redirection with the key named in its signature.
+   *
+   * @param parameters The request parameters from the redirection, e.g. {@code ServletRequest.getParameterMap()}
+   * @return boolean true if the signature is made with a key in the ring and matches the calculated one
+   */
+  public boolean validateFormRedirect(Map<String, String[]> parameters) {
+    String[] signature = parameters.get("signature");
+    Key key = findKey(signature != null && signature.length > 0 ? signature[0] : null);
+    if (key == null) {
+      key = findKey(findSignature(parameters));
+    }
+    return key != null && key.redirectValidator.validate(parameters);
+  }
+
+  /**
+   * Validates the response redirection with the key named in its signature.
+   *
+   * @param keyValues The request parameters from the redirection
+   * @return boolean true if the signature is made with a key in the ring and matches the calculated one
+   */
+  public boolean validateFormRedirect(List<NameValuePair> keyValues) {
+    Key key = findKey(findSignature(keyValues));
+    return key != null && key.signer.validateFormRedirect(keyValues);
+  }
+
+  /**
+   * Validates the message with the key named in its signature.
+   *
+   * @param method HTTP METHOD e.g. POST or GET
+   * @param uri The request URI
+   * @param keyValues The key value pairs of headers or request parameters
+   * @param content The body content
+   * @return boolean true if the signature is made with a key in the ring and matches the calculated one
+   */
+  public boolean validateSignature(String method, String uri, List<NameValuePair> keyValues, String content) {
+    Key key = findKey(findSignature(keyValues));
+    return key != null && key.signer.validateSignature(method, uri, keyValues, content);
+  }
+
+  /**
+   * Validates the response with the key named in its signature header.
+   *
+   * @param method HTTP METHOD e.g. POST or GET
+   * @param uri The request URI
+   * @param response The response with the signature header
+   * @param content The body content
+   * @return boolean true if the signature is made with a key in the ring and matches the calculated one
+   */
+  public boolean validateSignature(String method, String uri, HttpResponse response, String content) {
+    Header header = response.getFirstHeader("Signature");
+    Key key = findKey(header != null ? header.getValue() : null);
+    return key != null && key.signer.validateSignature(method, uri, response, content);
+  }
+
+  /**
+   * @param signature Signature in the form "SPH1 keyId signature"
+   * @return The key named in the signature
+   */
+  private Key findKey(String signature) {
+    if (signature == null || !signature.startsWith(SIGNATURE_SCHEME)) {
+      return null;
+    }
+    int end = signature.indexOf(' ', SIGNATURE_SCHEME.length());
+    if (end < 0) {
+      return null;
+    }
+    return keys.get(signature.substring(SIGNATURE_SCHEME.length(), end));
+  }
+
+  private static String findSignature(List<NameValuePair> keyValues) {
+    for (NameValuePair entry : keyValues) {
+      if (entry.getName().equalsIgnoreCase("Signature")) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  private static String findSignature(Map<String, String[]> parameters) {
+    for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+      if (entry.getKey().equalsIgnoreCase("Signature") && entry.getValue() != null && entry.getValue().length > 0) {
+        return entry.getValue()[0];
+      }
+    }
+    return null;
+  }
+
+  private static final class Key {
+    final SecureSigner signer;
+    final FormRedirectValidator redirectValidator;
+
+    Key(SecureSigner signer) {
+      this.signer = signer;
+      this.redirectValidator = new FormRedirectValidator(signer);
+    }
+  }
+}
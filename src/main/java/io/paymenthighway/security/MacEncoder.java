@@ -0,0 +1,78 @@
+package io.paymenthighway.security;
+
+import javax.crypto.Mac;
+
+/**
+ * Encodes characters as UTF-8 into a MAC through a small buffer, so that no byte array of the whole message is
+ * needed. Unpaired surrogates are replaced with '?' like String.getBytes does.
+ */
+final class MacEncoder {
+
+  private final Mac mac;
+  private final byte[] buffer = new byte[256];
+  private int position = 0;
+
+  MacEncoder(Mac mac) {
+    this.mac = mac;
+  }
+
+  void writeLowerCase(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 'A' && c <= 'Z') {
+        write((char) (c + ('a' - 'A')));
+      } else if (c < 0x80) {
+        write(c);
+      } else {
+        // rare: lower case non-ASCII names the same way as SecureSigner does
+        write(value.substring(i).toLowerCase());
+        return;
+      }
+    }
+  }
+
+  void write(CharSequence value) {
+    int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        write(c);
+      } else if (c < 0x800) {
+        put(0xc0 | (c >> 6));
+        put(0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        put(0xf0 | (codePoint >> 18));
+        put(0x80 | ((codePoint >> 12) & 0x3f));
+        put(0x80 | ((codePoint >> 6) & 0x3f));
+        put(0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogates are replaced like the UTF-8 encoder does
+        put('?');
+      } else {
+        put(0xe0 | (c >> 12));
+        put(0x80 | ((c >> 6) & 0x3f));
+        put(0x80 | (c & 0x3f));
+      }
+    }
+  }
+
+  /**
+   * @param c An ASCII character
+   */
+  void write(char c) {
+    put(c);
+  }
+
+  private void put(int b) {
+    if (position == buffer.length) {
+      flush();
+    }
+    buffer[position++] = (byte) b;
+  }
+
+  void flush() {
+    mac.update(buffer, 0, position);
+    position = 0;
+  }
+}
@@ -0,0 +1,236 @@
+package io.paymenthighway.security;
+
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.clock.UtcClock;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Rejects signed redirects and responses that are received more than once.
+ * <p/>
+ * A message is identified by its "sph-request-id" and must have an "sph-timestamp" within the time window; older
+ * messages are rejected as expired, so only the request ids of the window need to be remembered. The ids are kept
+ * in a ring of buckets, one per slice of the window, each split into lock-striped open addressing hash sets of
+ * 64-bit fingerprints. A bucket is cleared when it is reused for a new slice, and the memory used is fixed when
+ * the guard is created.
+ * <p/>
+ * Guards are thread safe. Validate the signature of a message before checking it for replays.
+ */
+public class ReplayGuard {
+
+  /**
+   * Result of a replay check
+   */
+  public enum Result {
+    /** Seen for the first time */
+    ACCEPTED,
+    /** The request id has already been seen */
+    REPLAYED,
+    /** The timestamp is outside the time window */
+    EXPIRED,
+    /** The request id or timestamp is missing or malformed */
+    INVALID,
+    /** Too many messages in the time slice to remember this one */
+    CAPACITY_EXCEEDED
+  }
+
+  private static final String REQUEST_ID = "sph-request-id";
+  private static final String TIMESTAMP = "sph-timestamp";
+
+  private static final int SLICES_PER_WINDOW = 8;
+  private static final int STRIPE_BITS = 4;
+  private static final int STRIPES = 1 << STRIPE_BITS;
+
+  private final long windowSeconds;
+  private final long sliceSeconds;
+  private final Stripe[][] ring;
+  private final UtcClock clock;
+
+  /**
+   * @param windowSeconds How old messages are accepted, in seconds. Messages may also be this much ahead of the
+   *                      local clock.
+   * @param maxPerSecond The number of messages per second the guard can remember
+   */
+  public ReplayGuard(int windowSeconds, int maxPerSecond) {
+    this(windowSeconds, maxPerSecond, CachedUtcClock.INSTANCE);
+  }
+
+  /**
+   * @param windowSeconds How old messages are accepted, in seconds. Messages may also be this much ahead of the
+   *                      local clock.
+   * @param maxPerSecond The number of messages per second the guard can remember
+   * @param clock The clock the timestamps are compared to
+   */
+  public ReplayGuard(int windowSeconds, int maxPerSecond, UtcClock clock) {
+    if (windowSeconds < 1 || maxPerSecond < 1) {
+      throw new IllegalArgumentException("windowSeconds and maxPerSecond must be positive");
+    }
+    this.windowSeconds = windowSeconds;
+    this.clock = clock;
+    this.sliceSeconds = (windowSeconds + SLICES_PER_WINDOW - 1) / SLICES_PER_WINDOW;
+
+    // slices in the past window and the future window, plus the current one
+    int slices = (int) ((2 * windowSeconds + sliceSeconds - 1) / sliceSeconds) + 2;
+    long perSlice = (long) maxPerSecond * sliceSeconds;
+    int perStripe = (int) Math.min(1 << 28, (perSlice + STRIPES - 1) / STRIPES);
+
+    this.ring = new Stripe[slices][STRIPES];
+    for (Stripe[] stripes : ring) {
+      for (int i = 0; i < STRIPES; i++) {
+        stripes[i] = new Stripe(perStripe);
+      }
+    }
+  }
+
+  /**
+   * Check the "sph-request-id" and "sph-timestamp" of a redirect, e.g. {@code ServletRequest.getParameterMap()}
+   *
+   * @param parameters The request parameters from the redirection
+   * @return Result
+   */
+  public Result check(Map<String, String[]> parameters) {
+    return check(firstValue(parameters.get(REQUEST_ID)), firstValue(parameters.get(TIMESTAMP)));
+  }
+
+  /**
+   * @param requestId The "sph-request-id" of the message
+   * @param timestamp The "sph-timestamp" of the message, e.g. 2014-09-18T10:32:59Z
+   * @return Result
+   */
+  public Result check(String requestId, String timestamp) {
+    if (requestId == null || requestId.isEmpty()) {
+      return Result.INVALID;
+    }
+    long second = parseTimestamp(timestamp);
+    if (second == Long.MIN_VALUE) {
+      return Result.INVALID;
+    }
+    long now = clock.currentTimeMillis() / 1000;
+    if (second < now - windowSeconds || second > now + windowSeconds) {
+      return Result.EXPIRED;
+    }
+
+    long slice = second / sliceSeconds;
+    long fingerprint = fingerprint(requestId);
+    Stripe stripe = ring[(int) (slice % ring.length)][(int) (fingerprint >>> (64 - STRIPE_BITS))];
+    return stripe.add(slice, fingerprint);
+  }
+
+  /**
+   * Open addressing hash set of fingerprints of one time slice
+   */
+  private static final class Stripe {
+    private final long[] table;
+    private final int mask;
+    private final int capacity;
+    private int size = 0;
+    private long slice = Long.MIN_VALUE;
+
+    Stripe(int capacity) {
+      int length = Integer.highestOneBit(Math.max(4, capacity + capacity / 3)) << 1;
+      this.table = new long[length];
+      this.mask = length - 1;
+      this.capacity = capacity;
+    }
+
+    synchronized Result add(long slice, long fingerprint) {
+      if (slice != this.slice) {
+        if (slice < this.slice) {
+          // taken over by a newer slice, so the message is older than the window
+          return Result.EXPIRED;
+        }
+        Arrays.fill(table, 0L);
+        size = 0;
+        this.slice = slice;
+      }
+
+      int index = (int) fingerprint & mask;
+      while (true) {
+        long stored = table[index];
+        if (stored == 0) {
+          if (size == capacity) {
+            return Result.CAPACITY_EXCEEDED;
+          }
+          table[index] = fingerprint;
+          size++;
+          return Result.ACCEPTED;
+        }
+        if (stored == fingerprint) {
+          return Result.REPLAYED;
+        }
+        index = (index + 1) & mask;
+      }
+    }
+  }
+
+  /**
+   * 64-bit hash of the request id, never 0 as 0 marks an empty slot
+   */
+  static long fingerprint(String requestId) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < requestId.length(); i++) {
+      hash ^= requestId.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    // spread the bits, the stripe is chosen by the highest bits and the slot by the lowest
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return hash != 0 ? hash : 1;
+  }
+
+  /**
+   * Parse an ISO 8601 UTC timestamp such as 2014-09-18T10:32:59Z
+   *
+   * @return Seconds since the epoch, or Long.MIN_VALUE if the timestamp is malformed
+   */
+  static long parseTimestamp(String timestamp) {
+    if (timestamp == null || timestamp.length() != 20 || timestamp.charAt(4) != '-' || timestamp.charAt(7) != '-'
+        || timestamp.charAt(10) != 'T' || timestamp.charAt(13) != ':' || timestamp.charAt(16) != ':'
+        || timestamp.charAt(19) != 'Z') {
+      return Long.MIN_VALUE;
+    }
+    int year = digits(timestamp, 0, 4);
+    int month = digits(timestamp, 5, 2);
+    int day = digits(timestamp, 8, 2);
+    int hour = digits(timestamp, 11, 2);
+    int minute = digits(timestamp, 14, 2);
+    int second = digits(timestamp, 17, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+        || minute < 0 || minute > 59 || second < 0 || second > 60) {
+      return Long.MIN_VALUE;
+    }
+    return daysFromCivil(year, month, day) * 86400L + hour * 3600 + minute * 60 + second;
+  }
+
+  private static int digits(String value, int offset, int count) {
+    int result = 0;
+    for (int i = offset; i < offset + count; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  /**
+   * Days since 1970-01-01 of a date in the proleptic Gregorian calendar
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = y / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+  private static String firstValue(String[] values) {
+    return values != null && values.length > 0 ? values[0] : null;
+  }
+}
@@ -4,6 +4,10 @@
 package io.paymenthighway.security;
 
 import io.paymenthighway.PaymentHighwayUtility;
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+import io.paymenthighway.trace.Trace;
+import io.paymenthighway.trace.Tracers;
 import org.apache.http.Header;
 import org.apache.http.HttpResponse;
 import org.apache.http.NameValuePair;
@@ -17,13 +21,17 @@ import java.io.UnsupportedEncodingException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Creates a signature for PaymentHighway messages
  */
 public class SecureSigner {
 
-  private static final String SignatureScheme = "SPH1";
+  /**
+   * Shared with the signing templates and the redirect validator
+   */
+  static final String SignatureScheme = "SPH1";
   private static final String Algorithm = "HmacSHA256";
 
   private String secretKeyId = null;
@@ -31,6 +39,30 @@ public class SecureSigner {
 
   private SecretKeySpec secretKeySpec = null;
 
+  private final ConcurrentHashMap<String, SigningTemplate> templates = new ConcurrentHashMap<>();
+
+  /**
+   * Initialised Mac that the per thread instances are cloned from
+   */
+  private Mac prototype = null;
+
+  /**
+   * Mac instances are not thread safe, so every thread signs with its own one
+   */
+  private final ThreadLocal<Mac> signers = new ThreadLocal<Mac>() {
+    @Override
+    protected Mac initialValue() {
+      if (prototype != null) {
+        try {
+          return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+          // the provider does not support cloning, fall back to a new instance
+        }
+      }
+      return initSigner();
+    }
+  };
+
   /**
    * Constructor
    *
@@ -41,6 +73,7 @@ public class SecureSigner {
     this.secretKeyId = id;
     this.secretKey = key;
     this.secretKeySpec = initSecretKeySpec();
+    this.prototype = initSigner();
   }
 
   private SecretKeySpec initSecretKeySpec() {
@@ -50,7 +83,7 @@ public class SecureSigner {
       try {
           keySpec = new SecretKeySpec(this.secretKey.getBytes("UTF-8"), Algorithm);
       } catch (UnsupportedEncodingException e) {
-          e.printStackTrace();
+          ErrorReporters.report(ErrorEvent.Kind.SIGNING, "Could not encode the secret key", e);
       }
 
       return keySpec;
@@ -68,12 +101,47 @@ public class SecureSigner {
       signer = Mac.getInstance(Algorithm);
       signer.init(secretKeySpec);
     } catch (NoSuchAlgorithmException | InvalidKeyException e) {
-      e.printStackTrace();
+      ErrorReporters.report(ErrorEvent.Kind.SIGNING, "Could not initialize " + Algorithm, e);
     }
 
     return signer;
   }
 
+  /**
+   * @return The id of the signature key
+   */
+  public String getSecretKeyId() {
+    return secretKeyId;
+  }
+
+  /**
+   * Signer for messages with the given method and URI. Templates are cached, so use this only for constant URIs
+   * such as the form URIs.
+   *
+   * @param method
+   * @param uri
+   * @return SigningTemplate
+   */
+  public SigningTemplate getTemplate(String method, String uri) {
+    String key = method + "\n" + uri;
+    SigningTemplate template = templates.get(key);
+    if (template == null) {
+      template = new SigningTemplate(this, method, uri);
+      SigningTemplate existing = templates.putIfAbsent(key, template);
+      if (existing != null) {
+        template = existing;
+      }
+    }
+    return template;
+  }
+
+  /**
+   * @return The initialised Mac of the current thread
+   */
+  Mac getMac() {
+    return signers.get();
+  }
+
   /**
    * Create signature
    *
@@ -101,6 +169,20 @@ public class SecureSigner {
     return String.format("%s %s %s", SignatureScheme, secretKeyId, sign(method, uri, keyValues, body));
   }
 
+  /**
+   * Create signature from parameters that are already in canonical form
+   *
+   * @param method
+   * @param uri
+   * @param canonicalKeyValues The "sph-" parameters sorted by name, as lower case "name:value" lines
+   * @param body
+   * @return String eg:
+   * "SPH1 testKey 51dcbaf5a9323daed24c0cdc5bb5d344f321aa84435b64e5da3d8f6c49370532"
+   */
+  public String createSignature(String method, String uri, CharSequence canonicalKeyValues, String body) {
+    return SignatureScheme + " " + secretKeyId + " " + sign(method, uri, canonicalKeyValues, body);
+  }
+
   /**
    * Create signature String from the actual parameters
    *
@@ -111,13 +193,40 @@ public class SecureSigner {
    */
   private String sign(String method, String uri, List<NameValuePair> keyValues, String body) {
     List<NameValuePair> sphKeyValues = sortParameters(parseSphParameters(new ArrayList<>(keyValues)));
-    String stringToSign = String.format("%s\n%s\n%s\n%s", method, uri, concatenateKeyValues(sphKeyValues), body.trim());
+    return sign(method, uri, concatenateKeyValues(sphKeyValues), body);
+  }
+
+  /**
+   * Create signature String from the canonical parameters
+   *
+   * @param method
+   * @param uri
+   * @param canonicalKeyValues
+   * @param body
+   * @return String signature
+   */
+  private String sign(String method, String uri, CharSequence canonicalKeyValues, String body) {
+    Trace trace = Tracers.getTracer().startSigning(method, uri, body.length());
+    try {
+      return hexSignature(method, uri, canonicalKeyValues, body);
+    } finally {
+      trace.end();
+    }
+  }
+
+  private String hexSignature(String method, String uri, CharSequence canonicalKeyValues, String body) {
+    String stringToSign = new StringBuilder(256 + canonicalKeyValues.length())
+        .append(method).append('\n')
+        .append(uri).append('\n')
+        .append(canonicalKeyValues).append('\n')
+        .append(body.trim())
+        .toString();
 
     byte[] signature = null;
     try {
-      signature = initSigner().doFinal(stringToSign.getBytes("UTF-8"));
+      signature = signers.get().doFinal(stringToSign.getBytes("UTF-8"));
     } catch (IllegalStateException | UnsupportedEncodingException e) {
-      e.printStackTrace();
+      ErrorReporters.report(ErrorEvent.Kind.SIGNING, "Could not sign " + method + " " + uri, e);
     }
 
     return DatatypeConverter.printHexBinary(signature).toLowerCase();
@@ -0,0 +1,103 @@
+package io.paymenthighway.security;
+
+import io.paymenthighway.trace.Trace;
+import io.paymenthighway.trace.Tracers;
+
+import javax.crypto.Mac;
+
+/**
+ * Signs messages with a fixed method and URI, such as the forms of one type.
+ * <p/>
+ * The HMAC state after the key setup and the "method\nuri\n" prefix is calculated once. Every signature starts
+ * from a copy of that state and only the parameters and the body are fed to the MAC, encoded straight from the
+ * given characters. Templates are created with {@link SecureSigner#getTemplate(String, String)} and are thread safe.
+ */
+public final class SigningTemplate {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final SecureSigner signer;
+  private final String method;
+  private final String uri;
+  private final String signaturePrefix;
+  private final Mac midstate;
+
+  /**
+   * Every thread copies the midstate from its own instance
+   */
+  private final ThreadLocal<Mac> midstates = new ThreadLocal<Mac>() {
+    @Override
+    protected Mac initialValue() {
+      return copy(midstate);
+    }
+  };
+
+  SigningTemplate(SecureSigner signer, String method, String uri) {
+    this.signer = signer;
+    this.method = method;
+    this.uri = uri;
+    this.signaturePrefix = SecureSigner.SignatureScheme + " " + signer.getSecretKeyId() + " ";
+
+    Mac mac = copy(signer.getMac());
+    if (mac != null) {
+      MacEncoder encoder = new MacEncoder(mac);
+      encoder.write(method);
+      encoder.write('\n');
+      encoder.write(uri);
+      encoder.write('\n');
+      encoder.flush();
+    }
+    this.midstate = mac;
+  }
+
+  /**
+   * Create signature
+   *
+   * @param canonicalKeyValues The "sph-" parameters sorted by name, as lower case "name:value" lines
+   * @param body
+   * @return String eg:
+   * "SPH1 testKey 51dcbaf5a9323daed24c0cdc5bb5d344f321aa84435b64e5da3d8f6c49370532"
+   */
+  public String createSignature(CharSequence canonicalKeyValues, String body) {
+    Mac mac = midstate != null ? copy(midstates.get()) : null;
+    if (mac == null) {
+      return signer.createSignature(method, uri, canonicalKeyValues, body);
+    }
+
+    byte[] signature;
+    Trace trace = Tracers.getTracer().startSigning(method, uri, body.length());
+    try {
+      MacEncoder encoder = new MacEncoder(mac);
+      encoder.write(canonicalKeyValues);
+      encoder.write('\n');
+      encoder.write(body.trim());
+      encoder.flush();
+      signature = mac.doFinal();
+    } finally {
+      trace.end();
+    }
+
+    char[] signatureChars = new char[signaturePrefix.length() + 2 * signature.length];
+    signaturePrefix.getChars(0, signaturePrefix.length(), signatureChars, 0);
+    int position = signaturePrefix.length();
+    for (byte b : signature) {
+      signatureChars[position++] = HEX[(b >> 4) & 0xf];
+      signatureChars[position++] = HEX[b & 0xf];
+    }
+    return new String(signatureChars);
+  }
+
+  /**
+   * @return A copy of the MAC state, or null if the provider does not support copying
+   */
+  private static Mac copy(Mac mac) {
+    if (mac == null) {
+      return null;
+    }
+    try {
+      return (Mac) mac.clone();
+    } catch (CloneNotSupportedException e) {
+      return null;
+    }
+  }
+}
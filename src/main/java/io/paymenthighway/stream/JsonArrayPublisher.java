@@ -0,0 +1,84 @@
+package io.paymenthighway.stream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Publishes the elements of an array field of a JSON response, e.g. the settlements of a report.
+ * <p/>
+ * The response is fetched for each subscriber on its first request. The elements are then decoded one at a time,
+ * as they are requested, so the whole array is never held as objects. The response body itself is read in full,
+ * as its signature must be verified before any of it is trusted.
+ *
+ * @param <T> The element type
+ */
+public class JsonArrayPublisher<T> extends PullPublisher<T> {
+
+  private final Callable<String> response;
+  private final String field;
+  private final ObjectReader reader;
+
+  /**
+   * @param response Fetches the verified response body
+   * @param field The name of the top level array field
+   * @param type The element type
+   */
+  public JsonArrayPublisher(Callable<String> response, String field, Class<T> type) {
+    this.response = response;
+    this.field = field;
+    this.reader = io.paymenthighway.json.JsonParser.readerFor(type);
+  }
+
+  @Override
+  protected Cursor<T> open() throws Exception {
+    String json = response.call();
+    final JsonParser parser = reader.getFactory().createParser(json);
+    final boolean found = findArray(parser);
+
+    return new Cursor<T>() {
+      private boolean done = !found;
+
+      @Override
+      public T next() throws IOException {
+        while (!done) {
+          JsonToken token = parser.nextToken();
+          if (token == null || token == JsonToken.END_ARRAY) {
+            done = true;
+          } else if (token != JsonToken.VALUE_NULL) {
+            return reader.readValue(parser);
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public void close() throws IOException {
+        parser.close();
+      }
+    };
+  }
+
+  /**
+   * Move the parser to the start of the array field
+   *
+   * @return false if the response has no such array
+   */
+  private boolean findArray(JsonParser parser) throws IOException {
+    if (parser.nextToken() != JsonToken.START_OBJECT) {
+      throw new IOException("Response is not a JSON object");
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken value = parser.nextToken();
+      if (name.equals(field) && value == JsonToken.START_ARRAY) {
+        return true;
+      }
+      parser.skipChildren();
+    }
+    return false;
+  }
+}
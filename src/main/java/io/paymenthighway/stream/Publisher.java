@@ -0,0 +1,20 @@
+package io.paymenthighway.stream;
+
+/**
+ * A source of items that are sent only as fast as its subscribers ask for them.
+ * <p/>
+ * Has the same methods and rules as <code>org.reactivestreams.Publisher</code> and
+ * <code>java.util.concurrent.Flow.Publisher</code>, so adapting to either is a matter of delegating each method.
+ *
+ * @param <T> The item type
+ */
+public interface Publisher<T> {
+
+  /**
+   * Start sending items to the subscriber, beginning with {@link Subscriber#onSubscribe(Subscription)}. Nothing
+   * is fetched before the subscriber requests items.
+   *
+   * @param subscriber The subscriber
+   */
+  void subscribe(Subscriber<? super T> subscriber);
+}
@@ -0,0 +1,163 @@
+package io.paymenthighway.stream;
+
+import io.paymenthighway.error.ErrorEvent;
+import io.paymenthighway.error.ErrorReporters;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A publisher that reads its items one at a time from a cursor, and only while the subscriber has demand.
+ * <p/>
+ * The cursor is opened for each subscriber on its first request, so nothing is fetched for a subscriber that never
+ * asks. The items are sent on the thread that requests them. A request made in {@link Subscriber#onNext(Object)}
+ * only adds to the demand, it does not recurse.
+ *
+ * @param <T> The item type
+ */
+public abstract class PullPublisher<T> implements Publisher<T> {
+
+  /**
+   * The items of a single subscription
+   *
+   * @param <T> The item type
+   */
+  public interface Cursor<T> extends Closeable {
+
+    /**
+     * @return The next item, or null after the last one
+     * @throws IOException
+     */
+    T next() throws IOException;
+  }
+
+  /**
+   * Open a cursor over the items
+   *
+   * @return The cursor
+   * @throws Exception if the items can not be fetched, passed to {@link Subscriber#onError(Throwable)}
+   */
+  protected abstract Cursor<T> open() throws Exception;
+
+  @Override
+  public void subscribe(Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("subscriber");
+    }
+    PullSubscription subscription = new PullSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+  }
+
+  private final class PullSubscription implements Subscription {
+
+    private final Subscriber<? super T> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private volatile boolean cancelled = false;
+    private volatile IllegalArgumentException invalidRequest;
+
+    // only touched by the thread that holds the work counter
+    private Cursor<T> cursor;
+    private boolean finished = false;
+
+    PullSubscription(Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("The number of requested items must be positive, was " + n);
+      } else {
+        long current;
+        long next;
+        do {
+          current = demand.get();
+          next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!demand.compareAndSet(current, next));
+      }
+      drain();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      drain();
+    }
+
+    /**
+     * Emit in the calling thread unless another thread is already emitting, in which case that thread picks up
+     * the new demand before it leaves
+     */
+    private void drain() {
+      if (work.getAndIncrement() != 0) {
+        return;
+      }
+      int missed = 1;
+      do {
+        emit();
+        missed = work.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void emit() {
+      if (finished) {
+        return;
+      }
+      if (cancelled) {
+        finish();
+        return;
+      }
+      if (invalidRequest != null) {
+        finish();
+        subscriber.onError(invalidRequest);
+        return;
+      }
+
+      while (demand.get() > 0 && !cancelled && invalidRequest == null) {
+        T item;
+        try {
+          if (cursor == null) {
+            cursor = open();
+          }
+          item = cursor.next();
+        } catch (Throwable t) {
+          finish();
+          subscriber.onError(t);
+          return;
+        }
+        if (item == null) {
+          finish();
+          subscriber.onComplete();
+          return;
+        }
+        if (demand.get() != Long.MAX_VALUE) {
+          demand.decrementAndGet();
+        }
+        try {
+          subscriber.onNext(item);
+        } catch (RuntimeException e) {
+          // a subscriber must not throw, it is treated as cancelled
+          ErrorReporters.report(ErrorEvent.Kind.CALLBACK, "Subscriber failed", e);
+          finish();
+          return;
+        }
+      }
+      // a cancel or an invalid request made meanwhile is picked up by the next round of the drain loop
+    }
+
+    private void finish() {
+      finished = true;
+      if (cursor != null) {
+        try {
+          cursor.close();
+        } catch (IOException e) {
+          ErrorReporters.report(ErrorEvent.Kind.DECODING, "Could not close the cursor", e);
+        }
+        cursor = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,35 @@
+package io.paymenthighway.stream;
+
+/**
+ * Receives the items of a {@link Publisher}. The methods are never called concurrently.
+ *
+ * @param <T> The item type
+ */
+public interface Subscriber<T> {
+
+  /**
+   * Called first, with the subscription to request items from
+   *
+   * @param subscription The subscription
+   */
+  void onSubscribe(Subscription subscription);
+
+  /**
+   * Called for each item, never more times than requested
+   *
+   * @param item The item, never null
+   */
+  void onNext(T item);
+
+  /**
+   * Called last if the items could not be produced
+   *
+   * @param error The error
+   */
+  void onError(Throwable error);
+
+  /**
+   * Called last when all the items have been sent
+   */
+  void onComplete();
+}
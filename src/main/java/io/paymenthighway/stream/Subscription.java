@@ -0,0 +1,19 @@
+package io.paymenthighway.stream;
+
+/**
+ * The link between a {@link Publisher} and one of its subscribers
+ */
+public interface Subscription {
+
+  /**
+   * Ask for more items. May be called from {@link Subscriber#onNext(Object)}.
+   *
+   * @param n The number of items, must be positive. {@link Long#MAX_VALUE} means no limit.
+   */
+  void request(long n);
+
+  /**
+   * Stop sending items. Items already on their way may still arrive.
+   */
+  void cancel();
+}
@@ -0,0 +1,4 @@
+/**
+ * Publishing reports and bulk outcomes item by item, with the demand of the subscriber limiting the pace
+ */
+package io.paymenthighway.stream;
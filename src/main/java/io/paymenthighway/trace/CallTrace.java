@@ -0,0 +1,35 @@
+package io.paymenthighway.trace;
+
+/**
+ * A Payment API call being traced, up to the verified response. Decoding the response and its result code are
+ * traced separately. The phases are reported in order; a failed call skips the rest of them.
+ */
+public interface CallTrace extends Trace {
+
+  /**
+   * The request has been signed
+   *
+   * @param requestBytes The length of the request body
+   */
+  void signed(int requestBytes);
+
+  /**
+   * The response has been read
+   *
+   * @param status The HTTP status code
+   * @param responseBytes The length of the response body
+   */
+  void responded(int status, int responseBytes);
+
+  /**
+   * The signature of the response has been checked
+   */
+  void verified();
+
+  /**
+   * The call failed
+   *
+   * @param error The error
+   */
+  void failed(Throwable error);
+}
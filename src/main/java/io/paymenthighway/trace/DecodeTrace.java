@@ -0,0 +1,14 @@
+package io.paymenthighway.trace;
+
+/**
+ * The decoding of a Payment API response being traced
+ */
+public interface DecodeTrace extends Trace {
+
+  /**
+   * The response has been decoded
+   *
+   * @param resultCode The result code of the response, or null if it has none
+   */
+  void decoded(String resultCode);
+}
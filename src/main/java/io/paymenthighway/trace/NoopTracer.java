@@ -0,0 +1,59 @@
+package io.paymenthighway.trace;
+
+/**
+ * A tracer that records nothing
+ */
+public final class NoopTracer implements Tracer {
+
+  public static final NoopTracer INSTANCE = new NoopTracer();
+
+  static final NoopTrace NONE = new NoopTrace();
+
+  private NoopTracer() {
+  }
+
+  @Override
+  public CallTrace startCall(String method, String uri) {
+    return NONE;
+  }
+
+  @Override
+  public Trace startSigning(String method, String uri, int bodyLength) {
+    return NONE;
+  }
+
+  @Override
+  public DecodeTrace startDecoding(Class<?> type, int length) {
+    return NONE;
+  }
+
+  static final class NoopTrace implements CallTrace, DecodeTrace {
+
+    private NoopTrace() {
+    }
+
+    @Override
+    public void signed(int requestBytes) {
+    }
+
+    @Override
+    public void responded(int status, int responseBytes) {
+    }
+
+    @Override
+    public void verified() {
+    }
+
+    @Override
+    public void failed(Throwable error) {
+    }
+
+    @Override
+    public void decoded(String resultCode) {
+    }
+
+    @Override
+    public void end() {
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package io.paymenthighway.trace;
+
+/**
+ * Creates the default tracer of the running platform. On Java 11 and later the multi-release jar replaces this
+ * class with one that records Java Flight Recorder events.
+ */
+final class PlatformTracer {
+
+  private PlatformTracer() {
+  }
+
+  static Tracer create() {
+    return NoopTracer.INSTANCE;
+  }
+}
@@ -0,0 +1,12 @@
+package io.paymenthighway.trace;
+
+/**
+ * A piece of work being traced
+ */
+public interface Trace {
+
+  /**
+   * The work is done. Called once, also when the work failed.
+   */
+  void end();
+}
@@ -0,0 +1,34 @@
+package io.paymenthighway.trace;
+
+/**
+ * Receives the timings of Payment API calls, signatures and response decoding, e.g. to record them with a profiler.
+ * <p/>
+ * The methods are called on the hot path of every request, so a tracer that is not recording should return its
+ * traces without allocating or reading the clock. Implementations must be thread safe.
+ *
+ * @see Tracers
+ */
+public interface Tracer {
+
+  /**
+   * @param method The HTTP method
+   * @param uri The request URI
+   * @return The trace of the call
+   */
+  CallTrace startCall(String method, String uri);
+
+  /**
+   * @param method The HTTP method of the signed message
+   * @param uri The URI of the signed message
+   * @param bodyLength The length of the signed body
+   * @return The trace of creating or checking a signature
+   */
+  Trace startSigning(String method, String uri, int bodyLength);
+
+  /**
+   * @param type The type the JSON is decoded to
+   * @param length The length of the JSON
+   * @return The trace of the decoding
+   */
+  DecodeTrace startDecoding(Class<?> type, int length);
+}
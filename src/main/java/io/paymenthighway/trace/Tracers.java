@@ -0,0 +1,31 @@
+package io.paymenthighway.trace;
+
+/**
+ * Holds the tracer of the library.
+ * <p/>
+ * On Java 11 and later the default tracer records Java Flight Recorder events, which cost next to nothing while no
+ * recording is running. On earlier versions the default tracer records nothing.
+ */
+public final class Tracers {
+
+  private static volatile Tracer tracer = PlatformTracer.create();
+
+  private Tracers() {
+  }
+
+  /**
+   * @return The current tracer
+   */
+  public static Tracer getTracer() {
+    return tracer;
+  }
+
+  /**
+   * Replace the tracer
+   *
+   * @param tracer The tracer, or null to record nothing
+   */
+  public static void setTracer(Tracer tracer) {
+    Tracers.tracer = tracer != null ? tracer : NoopTracer.INSTANCE;
+  }
+}
@@ -0,0 +1,4 @@
+/**
+ * Tracing the Payment API calls, signatures and response decoding, with Java Flight Recorder events on Java 11+
+ */
+package io.paymenthighway.trace;
@@ -0,0 +1,55 @@
+package io.paymenthighway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("io.paymenthighway.ApiCall")
+@Label("Payment API Call")
+@Description("A request to the Payment Highway Payment API, with the time spent in each phase up to the verified response")
+@Category("Payment Highway")
+@StackTrace(false)
+class ApiCallEvent extends Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("Endpoint")
+  @Description("The request path with the ids replaced by {id}")
+  String endpoint;
+
+  @Label("URI")
+  String uri;
+
+  @Label("HTTP Status")
+  int status;
+
+  @Label("Request Size")
+  @DataAmount
+  long requestSize;
+
+  @Label("Response Size")
+  @DataAmount
+  long responseSize;
+
+  @Label("Signing Time")
+  @Timespan
+  long signingTime;
+
+  @Label("Exchange Time")
+  @Description("Sending the request and reading the response, including waiting for a connection")
+  @Timespan
+  long exchangeTime;
+
+  @Label("Verification Time")
+  @Timespan
+  long verificationTime;
+
+  @Label("Error")
+  String error;
+}
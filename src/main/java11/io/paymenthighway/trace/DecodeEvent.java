@@ -0,0 +1,25 @@
+package io.paymenthighway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.paymenthighway.Decode")
+@Label("Payment Highway JSON Decoding")
+@Category("Payment Highway")
+@StackTrace(false)
+class DecodeEvent extends Event {
+
+  @Label("Type")
+  Class<?> type;
+
+  @Label("JSON Size")
+  @DataAmount
+  long size;
+
+  @Label("Result Code")
+  String resultCode;
+}
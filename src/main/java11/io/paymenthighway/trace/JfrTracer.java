@@ -0,0 +1,148 @@
+package io.paymenthighway.trace;
+
+import jdk.jfr.Event;
+
+import java.util.regex.Pattern;
+
+/**
+ * Records the traces as Java Flight Recorder events. While the events are not enabled, no trace is allocated.
+ */
+final class JfrTracer implements Tracer {
+
+  private static final Pattern ID = Pattern.compile(
+      "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|(?<=/)[0-9]{8}(?=[/?]|$)");
+
+  JfrTracer() {
+    // fails here rather than on the first call if jdk.jfr is missing
+    new ApiCallEvent().isEnabled();
+  }
+
+  @Override
+  public CallTrace startCall(String method, String uri) {
+    ApiCallEvent event = new ApiCallEvent();
+    if (!event.isEnabled()) {
+      return NoopTracer.NONE;
+    }
+    event.method = method;
+    event.uri = uri;
+    return new JfrCallTrace(event);
+  }
+
+  @Override
+  public Trace startSigning(String method, String uri, int bodyLength) {
+    SignatureEvent event = new SignatureEvent();
+    if (!event.isEnabled()) {
+      return NoopTracer.NONE;
+    }
+    event.method = method;
+    event.uri = uri;
+    event.bodySize = bodyLength;
+    return new EventTrace(event);
+  }
+
+  @Override
+  public DecodeTrace startDecoding(Class<?> type, int length) {
+    DecodeEvent event = new DecodeEvent();
+    if (!event.isEnabled()) {
+      return NoopTracer.NONE;
+    }
+    event.type = type;
+    event.size = length;
+    return new JfrDecodeTrace(event);
+  }
+
+  static String endpoint(String uri) {
+    int query = uri.indexOf('?');
+    String path = query >= 0 ? uri.substring(0, query) : uri;
+    return ID.matcher(path).replaceAll("{id}");
+  }
+
+  private static final class EventTrace implements Trace {
+    private final Event event;
+
+    EventTrace(Event event) {
+      this.event = event;
+      event.begin();
+    }
+
+    @Override
+    public void end() {
+      event.end();
+      if (event.shouldCommit()) {
+        event.commit();
+      }
+    }
+  }
+
+  private static final class JfrDecodeTrace implements DecodeTrace {
+    private final DecodeEvent event;
+
+    JfrDecodeTrace(DecodeEvent event) {
+      this.event = event;
+      event.begin();
+    }
+
+    @Override
+    public void decoded(String resultCode) {
+      event.resultCode = resultCode;
+    }
+
+    @Override
+    public void end() {
+      event.end();
+      if (event.shouldCommit()) {
+        event.commit();
+      }
+    }
+  }
+
+  private static final class JfrCallTrace implements CallTrace {
+    private final ApiCallEvent event;
+    private long phaseStart;
+
+    JfrCallTrace(ApiCallEvent event) {
+      this.event = event;
+      event.begin();
+      this.phaseStart = System.nanoTime();
+    }
+
+    private long phase() {
+      long now = System.nanoTime();
+      long elapsed = now - phaseStart;
+      phaseStart = now;
+      return elapsed;
+    }
+
+    @Override
+    public void signed(int requestBytes) {
+      event.signingTime = phase();
+      event.requestSize = requestBytes;
+    }
+
+    @Override
+    public void responded(int status, int responseBytes) {
+      event.exchangeTime = phase();
+      event.status = status;
+      event.responseSize = responseBytes;
+    }
+
+    @Override
+    public void verified() {
+      event.verificationTime = phase();
+    }
+
+    @Override
+    public void failed(Throwable error) {
+      event.error = error.toString();
+    }
+
+    @Override
+    public void end() {
+      event.end();
+      if (event.shouldCommit()) {
+        event.endpoint = endpoint(event.uri);
+        event.commit();
+      }
+    }
+  }
+}
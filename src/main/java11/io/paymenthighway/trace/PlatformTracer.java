@@ -0,0 +1,19 @@
+package io.paymenthighway.trace;
+
+/**
+ * Creates the default tracer of the running platform: Java Flight Recorder events, unless the runtime was built
+ * without the jdk.jfr module.
+ */
+final class PlatformTracer {
+
+  private PlatformTracer() {
+  }
+
+  static Tracer create() {
+    try {
+      return new JfrTracer();
+    } catch (LinkageError e) {
+      return NoopTracer.INSTANCE;
+    }
+  }
+}
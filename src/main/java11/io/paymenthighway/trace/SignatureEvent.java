@@ -0,0 +1,25 @@
+package io.paymenthighway.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("io.paymenthighway.Signature")
+@Label("Payment Highway Signature")
+@Category("Payment Highway")
+@StackTrace(false)
+class SignatureEvent extends Event {
+
+  @Label("Method")
+  String method;
+
+  @Label("URI")
+  String uri;
+
+  @Label("Body Size")
+  @DataAmount
+  long bodySize;
+}
@@ -0,0 +1,144 @@
+package io.paymenthighway;
+
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.Token;
+import io.paymenthighway.model.request.TransactionRequest;
+import io.paymenthighway.model.response.TransactionResponse;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Bytes allocated per operation on the hot paths, measured with the allocation counter of the calling thread.
+ * <p/>
+ * Each path has a budget about half again above what it allocates today, so a change that makes a path allocate
+ * noticeably more fails here. Lower the budget when a path gets cheaper. The paths run offline, and the requests
+ * include what the stub transport allocates for the response.
+ */
+public class AllocationBudgetTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private static final int WARMUP = 5000;
+  private static final int ITERATIONS = 2000;
+
+  private static final long SIGNATURE_BUDGET = 12000;
+  private static final long PAYMENT_FORM_BUDGET = 6000;
+  private static final long DEBIT_BUDGET = 85000;
+
+  private static com.sun.management.ThreadMXBean threads;
+
+  /**
+   * An operation to measure
+   */
+  private interface Operation {
+    void run() throws Exception;
+  }
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+      threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    }
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private static long bytesPerOperation(Operation operation) throws Exception {
+    for (int i = 0; i < WARMUP; i++) {
+      operation.run();
+    }
+    long thread = Thread.currentThread().getId();
+    long start = threads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < ITERATIONS; i++) {
+      operation.run();
+    }
+    return (threads.getThreadAllocatedBytes(thread) - start) / ITERATIONS;
+  }
+
+  private static void assertWithinBudget(String path, long budget, long bytes) {
+    assertTrue(path + " allocates " + bytes + " bytes per operation, over its budget of " + budget,
+        bytes <= budget);
+  }
+
+  @Test
+  public void testCreateSignature() throws Exception {
+    final SecureSigner signer = new SecureSigner(KEY_ID, SECRET);
+    final List<NameValuePair> headers = new ArrayList<>();
+    headers.add(new BasicNameValuePair("sph-account", "test"));
+    headers.add(new BasicNameValuePair("sph-merchant", "test_merchantId"));
+    headers.add(new BasicNameValuePair("sph-timestamp", PaymentHighwayUtility.getUtcTimestamp()));
+    headers.add(new BasicNameValuePair("sph-request-id", PaymentHighwayUtility.createRequestId()));
+    final String body = "{\"amount\":100,\"currency\":\"EUR\",\"token\":{\"id\":\"" + UUID.randomUUID() + "\"}}";
+
+    long bytes = bytesPerOperation(new Operation() {
+      @Override
+      public void run() {
+        signer.createSignature("POST", "/transaction/" + KEY_ID + "/debit", headers, body);
+      }
+    });
+    assertWithinBudget("SecureSigner.createSignature", SIGNATURE_BUDGET, bytes);
+  }
+
+  @Test
+  public void testGeneratePaymentParameters() throws Exception {
+    final FormBuilder formBuilder = new FormBuilder("POST", KEY_ID, SECRET, "test", "test_merchantId",
+        "https://v1-hub-staging.sph-test-solinor.com");
+
+    long bytes = bytesPerOperation(new Operation() {
+      @Override
+      public void run() {
+        formBuilder.generatePaymentParameters("https://example.com/success", "https://example.com/failure",
+            "https://example.com/cancel", "EN", "1990", "EUR", "order-1", "Payment");
+      }
+    });
+    assertWithinBudget("FormBuilder.generatePaymentParameters", PAYMENT_FORM_BUDGET, bytes);
+  }
+
+  @Test
+  public void testDebitTransaction() throws Exception {
+    final PaymentAPI paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET,
+        "test", "test_merchantId");
+    paymentAPI.setHttpClient(new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"}}");
+      }
+    }));
+    final UUID transactionId = UUID.randomUUID();
+    final TransactionRequest request = new TransactionRequest(new Token(UUID.randomUUID()), "1990", "EUR");
+
+    long bytes = bytesPerOperation(new Operation() {
+      @Override
+      public void run() throws Exception {
+        TransactionResponse response = paymentAPI.debitTransaction(transactionId, request);
+        assertEquals("100", response.getResult().getCode());
+      }
+    });
+    assertWithinBudget("PaymentAPIConnection.executePost", DEBIT_BUDGET, bytes);
+  }
+}
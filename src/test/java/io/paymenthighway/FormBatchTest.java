@@ -0,0 +1,129 @@
+package io.paymenthighway;
+
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.junit.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FormBatchTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private FormBuilder formBuilder;
+  private SecureSigner signer;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    formBuilder = new FormBuilder("GET", KEY_ID, SECRET, "test", "test_merchantId", "https://v1-hub-staging.sph-test-solinor.com");
+    signer = new SecureSigner(KEY_ID, SECRET);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private FormPlan paymentPlan() {
+    return formBuilder.compile(new FormSpec.Builder(FormSpec.Type.PAYMENT, "https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN").setSkipFormNotifications(true).build());
+  }
+
+  private static List<FormBatch.Payment> payments(int count) {
+    List<FormBatch.Payment> payments = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      payments.add(new FormBatch.Payment(Integer.toString(100 + i), "EUR", "order-" + i, "Invoice " + i));
+    }
+    return payments;
+  }
+
+  @Test
+  public void testAllFormsAreGeneratedAndSigned() throws Exception {
+    final Map<String, FormContainer> forms = new HashMap<>();
+    FormBatch batch = new FormBatch(paymentPlan(), null, 4);
+
+    long generated = batch.generate(payments(1000), new FormBatch.Sink() {
+      @Override
+      public void accept(FormBatch.Payment payment, FormContainer form) {
+        forms.put(payment.getOrderId(), form);
+      }
+    });
+
+    assertEquals(1000, generated);
+    assertEquals(1000, forms.size());
+    Set<String> requestIds = new HashSet<>();
+    for (int i = 0; i < 1000; i++) {
+      FormContainer form = forms.get("order-" + i);
+      assertTrue(signer.validateSignature("GET", "/form/view/pay_with_card", form.getFields(), ""));
+      assertTrue(requestIds.add(form.getRequestId()));
+      assertEquals(Integer.toString(100 + i), value(form.getFields(), "sph-amount"));
+    }
+  }
+
+  @Test
+  public void testSignedUrl() throws Exception {
+    final List<String> urls = new ArrayList<>();
+    new FormBatch(paymentPlan()).generate(payments(3), new FormBatch.Sink() {
+      @Override
+      public void accept(FormBatch.Payment payment, FormContainer form) {
+        urls.add(form.getUrl());
+      }
+    });
+
+    assertEquals(3, urls.size());
+    for (String url : urls) {
+      assertTrue(url.startsWith("https://v1-hub-staging.sph-test-solinor.com/form/view/pay_with_card?"));
+      List<NameValuePair> fields = URLEncodedUtils.parse(URI.create(url), "UTF-8");
+      assertTrue(signer.validateSignature("GET", "/form/view/pay_with_card", fields, ""));
+      assertTrue(value(fields, "description").startsWith("Invoice "));
+    }
+  }
+
+  @Test
+  public void testSinkFailureStopsBatch() throws Exception {
+    final int[] accepted = {0};
+    try {
+      new FormBatch(paymentPlan(), null, 2).generate(payments(10000), new FormBatch.Sink() {
+        @Override
+        public void accept(FormBatch.Payment payment, FormContainer form) throws IOException {
+          if (++accepted[0] == 10) {
+            throw new IOException("disk full");
+          }
+        }
+      });
+      Assert.fail("Expected IOException");
+    } catch (IOException e) {
+      assertEquals("disk full", e.getMessage());
+    }
+    assertTrue(accepted[0] < 10000);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddCardPlanIsRejected() {
+    new FormBatch(formBuilder.compile(new FormSpec.Builder(FormSpec.Type.ADD_CARD, "https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN").build()));
+  }
+
+  private static String value(List<NameValuePair> fields, String name) {
+    for (NameValuePair field : fields) {
+      if (field.getName().equals(name)) {
+        return field.getValue();
+      }
+    }
+    return null;
+  }
+}
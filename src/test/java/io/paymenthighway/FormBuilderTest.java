@@ -1,6 +1,7 @@
 package io.paymenthighway;
 
 import io.paymenthighway.connect.FormAPIConnection;
+import io.paymenthighway.security.SecureSigner;
 import org.apache.http.NameValuePair;
 import org.junit.*;
 
@@ -10,6 +11,7 @@ import java.util.List;
 import java.util.Properties;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
@@ -710,4 +712,133 @@ public class FormBuilderTest {
     assertNotNull(response);
     assertTrue(response.contains("card_number_formatted"));
   }
+
+  private void assertValidSignature(FormContainer formContainer) {
+    SecureSigner ss = new SecureSigner(this.signatureKeyId, this.signatureSecret);
+    String uri = formContainer.getAction().substring(this.serviceUrl.length());
+
+    assertTrue(ss.validateSignature(formContainer.getMethod(), uri, formContainer.getFields(), ""));
+  }
+
+  /**
+   * Forms generated from templates must be signed the same way as arbitrary parameters.
+   */
+  @Test
+  public void testTemplateSignatures() {
+    FormBuilder formBuilder = new FormBuilder("POST", this.signatureKeyId, this.signatureSecret,
+        "test", "test_merchantId", this.serviceUrl);
+    UUID token = UUID.fromString("71435029-fbb6-4506-aa86-8529efb640b0");
+
+    assertValidSignature(formBuilder.generateAddCardParameters("https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN"));
+    assertValidSignature(formBuilder.generateAddCardParameters("https://example.com/success",
+        null, "https://example.com/cancel", null, true, null, false, true, null));
+    assertValidSignature(formBuilder.generatePaymentParameters("https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "FI", "1990", "EUR", "1000123A",
+        "A Box of Dreams. 19,90€", true, false, null, true));
+    assertValidSignature(formBuilder.generateAddCardAndPaymentParameters("https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN", "1990", "EUR", null, null));
+    assertValidSignature(formBuilder.generatePayWithTokenAndCvcParameters(token, "https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN", "1990", "EUR", "1000123A", "desc",
+        null, null, true, false));
+    assertValidSignature(formBuilder.generatePayWithMobilePayParameters("https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN", "1990", "EUR", "1000123A", "desc",
+        true));
+  }
+
+  /**
+   * The fields are in the same order as they have always been added.
+   */
+  @Test
+  public void testFieldOrder() {
+    FormBuilder formBuilder = new FormBuilder("POST", this.signatureKeyId, this.signatureSecret,
+        "test", "test_merchantId", this.serviceUrl);
+
+    FormContainer formContainer = formBuilder.generatePayWithTokenAndCvcParameters(
+        UUID.fromString("71435029-fbb6-4506-aa86-8529efb640b0"), "https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "EN", "1990", "EUR", "1000123A", "desc",
+        true, null, false);
+
+    String[] expected = {"sph-api-version", "sph-account", "sph-merchant", "sph-timestamp", "sph-cancel-url",
+        "sph-failure-url", "sph-success-url", "sph-request-id", "language", "sph-amount", "sph-currency",
+        "sph-order", "sph-token", "description", "sph-skip-form-notifications",
+        "sph-exit-iframe-on-three-d-secure", "signature"};
+    List<NameValuePair> fields = formContainer.getFields();
+    assertEquals(expected.length, fields.size());
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(expected[i], fields.get(i).getName());
+    }
+  }
+
+  @Test
+  public void testCompiledPlanMatchesLegacyForm() {
+    FormBuilder formBuilder = new FormBuilder("POST", this.signatureKeyId, this.signatureSecret,
+        "test", "test_merchantId", this.serviceUrl);
+
+    FormSpec spec = new FormSpec.Builder(FormSpec.Type.PAYMENT, "https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "FI")
+        .setSkipFormNotifications(true)
+        .setExitIframeOn3ds(false)
+        .setUse3ds(true)
+        .build();
+    FormPlan plan = formBuilder.compile(spec);
+
+    FormContainer compiled = plan.generate("1990", "EUR", "1000123A", "A Box of Dreams. 19,90€");
+    FormContainer legacy = formBuilder.generatePaymentParameters("https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "FI", "1990", "EUR", "1000123A",
+        "A Box of Dreams. 19,90€", true, null, false, true);
+
+    assertValidSignature(compiled);
+    assertEquals(legacy.getAction(), compiled.getAction());
+    List<NameValuePair> compiledFields = compiled.getFields();
+    List<NameValuePair> legacyFields = legacy.getFields();
+    assertEquals(legacyFields.size(), compiledFields.size());
+    for (int i = 0; i < legacyFields.size(); i++) {
+      String name = legacyFields.get(i).getName();
+      assertEquals(name, compiledFields.get(i).getName());
+      if (!name.equals("sph-timestamp") && !name.equals("sph-request-id") && !name.equals("signature")) {
+        assertEquals(legacyFields.get(i).getValue(), compiledFields.get(i).getValue());
+      }
+    }
+  }
+
+  @Test
+  public void testCompiledPlanIsReusable() {
+    FormBuilder formBuilder = new FormBuilder("POST", this.signatureKeyId, this.signatureSecret,
+        "test", "test_merchantId", this.serviceUrl);
+    UUID token = UUID.fromString("71435029-fbb6-4506-aa86-8529efb640b0");
+
+    FormPlan addCard = formBuilder.compile(new FormSpec.Builder(FormSpec.Type.ADD_CARD,
+        "https://example.com/success", "https://example.com/failure", "https://example.com/cancel", "EN")
+        .setAcceptCvcRequired(true)
+        .build());
+    FormPlan payWithToken = formBuilder.compile(FormSpec.Builder(FormSpec.Type.PAY_WITH_TOKEN_AND_CVC,
+        "https://example.com/success", "https://example.com/failure", "https://example.com/cancel", "EN")
+        .build());
+
+    FormContainer first = addCard.generate();
+    FormContainer second = addCard.generate();
+    assertValidSignature(first);
+    assertValidSignature(second);
+    assertTrue(!first.getRequestId().equals(second.getRequestId()));
+
+    assertValidSignature(payWithToken.generate(token, "1990", "EUR", "1000123A", "desc"));
+    assertValidSignature(payWithToken.generate(token, "2990", "EUR", "1000124A", null));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCompiledPlanRejectsWrongParameters() {
+    FormBuilder formBuilder = new FormBuilder("POST", this.signatureKeyId, this.signatureSecret,
+        "test", "test_merchantId", this.serviceUrl);
+
+    FormPlan plan = formBuilder.compile(new FormSpec.Builder(FormSpec.Type.ADD_CARD,
+        "https://example.com/success", "https://example.com/failure", "https://example.com/cancel", "EN").build());
+    plan.generate("1990", "EUR", "1000123A", "desc");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSpecRejectsUnsupportedSetting() {
+    new FormSpec.Builder(FormSpec.Type.MOBILEPAY, "https://example.com/success", "https://example.com/failure",
+        "https://example.com/cancel", "EN").setUse3ds(true);
+  }
 }
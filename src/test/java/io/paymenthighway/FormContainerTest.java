@@ -1,8 +1,14 @@
 package io.paymenthighway;
 
 import org.apache.http.NameValuePair;
+import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.message.BasicNameValuePair;
 import org.junit.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
@@ -818,4 +824,62 @@ public class FormContainerTest {
     // check that all fields were tested
     assertEquals(0, i);
   }
+
+  @Test
+  public void testUrlMatchesUrlEncodedUtils() throws Exception {
+    FormBuilder formBuilder = new FormBuilder("GET", "testKey", "testSecret", "test", "test_merchantId",
+        "https://v1-hub-staging.sph-test-solinor.com");
+
+    FormContainer formContainer = formBuilder.generatePaymentParameters("https://example.com/success?a=1&b=2",
+        null, "https://example.com/cancel", "FI", "1990", "EUR", "1000123A",
+        "A Box of Dreams. 19,90€ ~!'()* \"<tag>\" \uD83D\uDE00 \uD83D end");
+
+    String expected = formContainer.getAction() + "?" +
+        URLEncodedUtils.format(formContainer.getFields(), StandardCharsets.UTF_8);
+    assertEquals(expected, formContainer.getUrl());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    formContainer.writeUrl(out);
+    assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testHtmlForm() throws Exception {
+    List<NameValuePair> fields = new ArrayList<>();
+    fields.add(new BasicNameValuePair("sph-order", "1000123A"));
+    fields.add(new BasicNameValuePair("description", "<b>\"Fish & chips\"</b> 'n' more"));
+    fields.add(new BasicNameValuePair("sph-failure-url", null));
+    FormContainer formContainer = new FormContainer("POST", "https://example.com", "/form/view/pay_with_card",
+        fields, "id");
+
+    StringWriter writer = new StringWriter();
+    formContainer.writeHtmlForm(writer);
+
+    assertEquals("<form method=\"POST\" action=\"https://example.com/form/view/pay_with_card\">\n" +
+        "<input type=\"hidden\" name=\"sph-order\" value=\"1000123A\">\n" +
+        "<input type=\"hidden\" name=\"description\" " +
+        "value=\"&lt;b&gt;&quot;Fish &amp; chips&quot;&lt;/b&gt; &#39;n&#39; more\">\n" +
+        "<input type=\"hidden\" name=\"sph-failure-url\" value=\"\">\n" +
+        "</form>\n", writer.toString());
+  }
+
+  @Test
+  public void testHtmlInputsOfGeneratedForm() throws Exception {
+    FormBuilder formBuilder = new FormBuilder("POST", "testKey", "testSecret", "test", "test_merchantId",
+        "https://v1-hub-staging.sph-test-solinor.com");
+    FormContainer formContainer = formBuilder.generatePaymentParameters("https://example.com/success",
+        "https://example.com/failure", "https://example.com/cancel", "FI", "1990", "EUR", "1000123A",
+        "Fish & chips");
+
+    StringBuilder expected = new StringBuilder();
+    for (NameValuePair field : formContainer.getFields()) {
+      expected.append("<input type=\"hidden\" name=\"").append(field.getName()).append("\" value=\"")
+          .append(field.getValue().replace("&", "&amp;")).append("\">\n");
+    }
+
+    StringBuilder html = new StringBuilder();
+    formContainer.writeHtmlInputs(html);
+    assertEquals(expected.toString(), html.toString());
+  }
 }
+
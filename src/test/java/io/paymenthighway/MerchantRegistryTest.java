@@ -0,0 +1,104 @@
+package io.paymenthighway;
+
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.TransactionStatusResponse;
+import io.paymenthighway.security.SecureSigner;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class MerchantRegistryTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private final AtomicInteger closed = new AtomicInteger();
+  private StubHttpClient httpClient;
+  private MerchantRegistry registry;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    httpClient = new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"},\"transaction\":"
+            + "{\"id\":\"" + uri.split("/")[2] + "\",\"status\":{\"state\":\"ok\",\"code\":\"4000\"}}}");
+      }
+    }) {
+      @Override
+      public void close() {
+        closed.incrementAndGet();
+      }
+    };
+    registry = new MerchantRegistry("https://v1-hub-staging.sph-test-solinor.com", httpClient);
+    registry.addKey(KEY_ID, SECRET);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    registry.close();
+  }
+
+  @Test
+  public void testMerchantsShareTheClientAndSigner() throws Exception {
+    for (int i = 0; i < 200; i++) {
+      PaymentAPI paymentAPI = registry.getPaymentAPI(KEY_ID, "test", "merchant-" + i);
+      assertSame(paymentAPI, registry.getPaymentAPI(KEY_ID, "test", "merchant-" + i));
+
+      UUID transactionId = UUID.randomUUID();
+      TransactionStatusResponse response = paymentAPI.transactionStatus(transactionId);
+      assertEquals(transactionId, response.getTransaction().getId());
+    }
+
+    assertEquals(200, registry.getMerchantCount());
+    assertEquals(200, httpClient.getRequests());
+
+    // closing a handle leaves the shared pool open
+    registry.getPaymentAPI(KEY_ID, "test", "merchant-0").close();
+    assertEquals(0, closed.get());
+    registry.close();
+    assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void testReplacedKeyDropsItsHandles() throws Exception {
+    registry.addKey("otherKey", "otherSecret");
+    PaymentAPI first = registry.getPaymentAPI(KEY_ID, "test", "merchant");
+    PaymentAPI other = registry.getPaymentAPI("otherKey", "test", "merchant");
+    SecureSigner signer = registry.getSigner(KEY_ID);
+
+    registry.addKey(KEY_ID, SECRET);
+    assertSame(first, registry.getPaymentAPI(KEY_ID, "test", "merchant"));
+    assertSame(signer, registry.getSigner(KEY_ID));
+
+    registry.addKey(KEY_ID, "rotatedSecret");
+    assertNotSame(first, registry.getPaymentAPI(KEY_ID, "test", "merchant"));
+    assertNotSame(signer, registry.getSigner(KEY_ID));
+    assertSame(other, registry.getPaymentAPI("otherKey", "test", "merchant"));
+  }
+
+  @Test
+  public void testUnknownKeyIsRejected() {
+    try {
+      registry.getPaymentAPI("unknownKey", "test", "merchant");
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals(0, registry.getMerchantCount());
+    }
+  }
+}
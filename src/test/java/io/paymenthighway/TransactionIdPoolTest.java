@@ -0,0 +1,134 @@
+package io.paymenthighway;
+
+import io.paymenthighway.clock.ManualUtcClock;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.InitTransactionResponse;
+import io.paymenthighway.security.SecureSigner;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransactionIdPoolTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+  private static final long NOW = 1465545600000L; // 2016-06-10T08:00:00Z
+
+  private final AtomicInteger initRequests = new AtomicInteger();
+  private volatile boolean failing = false;
+  private PaymentAPI paymentAPI;
+  private ExecutorService executor;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    paymentAPI.setHttpClient(new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        if (failing) {
+          throw new IOException("connection refused");
+        }
+        initRequests.incrementAndGet();
+        return new StubHttpClient.Response(200,
+            "{\"result\":{\"code\":100,\"message\":\"OK\"},\"id\":\"" + UUID.randomUUID() + "\"}");
+      }
+    }));
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testIdsAreTakenFromPool() throws Exception {
+    TransactionIdPool pool = new TransactionIdPool(paymentAPI, 5, 60000, executor);
+    paymentAPI.setTransactionIdPool(pool);
+    pool.prefill();
+    awaitAvailable(pool, 5);
+    assertEquals(5, initRequests.get());
+
+    Set<UUID> ids = new HashSet<>();
+    for (int i = 0; i < 20; i++) {
+      InitTransactionResponse response = paymentAPI.initTransaction();
+      assertEquals("100", response.getResult().getCode());
+      ids.add(response.getId());
+      awaitAvailable(pool, 5);
+    }
+
+    assertEquals(20, ids.size());
+    assertEquals(20, pool.getHits());
+    assertEquals(0, pool.getMisses());
+  }
+
+  @Test
+  public void testEmptyPoolFetchesOnDemand() throws Exception {
+    failing = true;
+    TransactionIdPool pool = new TransactionIdPool(paymentAPI, 3, 60000, executor);
+    paymentAPI.setTransactionIdPool(pool);
+    pool.prefill();
+    drain();
+    assertEquals(0, pool.getAvailable());
+
+    failing = false;
+    assertTrue(paymentAPI.initTransaction().getId() != null);
+    assertEquals(1, pool.getMisses());
+  }
+
+  @Test
+  public void testExpiredIdsAreDiscarded() throws Exception {
+    ManualUtcClock clock = new ManualUtcClock(NOW);
+    TransactionIdPool pool = new TransactionIdPool(paymentAPI, 4, 60000, executor);
+    pool.setClock(clock);
+    pool.prefill();
+    awaitAvailable(pool, 4);
+
+    clock.advance(60000);
+    pool.take();
+    assertEquals(4, pool.getExpired());
+    assertEquals(1, pool.getMisses());
+
+    // the pool is filled again with fresh ids
+    awaitAvailable(pool, 4);
+    pool.take();
+    assertEquals(1, pool.getHits());
+  }
+
+  private void awaitAvailable(TransactionIdPool pool, int count) throws Exception {
+    for (int i = 0; i < 500 && pool.getAvailable() < count; i++) {
+      Thread.sleep(2);
+    }
+    drain();
+    assertEquals(count, pool.getAvailable());
+  }
+
+  /**
+   * Wait until the executor has run the tasks submitted so far
+   */
+  private void drain() throws Exception {
+    executor.submit(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }).get();
+  }
+}
@@ -0,0 +1,170 @@
+package io.paymenthighway;
+
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.TransactionStatus;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class TransactionStatusLookupTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private final Map<UUID, String> orders = new HashMap<>();
+  private StubHttpClient httpClient;
+  private PaymentAPI paymentAPI;
+  private TransactionStatusLookup lookup;
+  private volatile CountDownLatch blocked;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    for (int order = 0; order < 3; order++) {
+      for (int i = 0; i < 50; i++) {
+        orders.put(UUID.randomUUID(), "order-" + order);
+      }
+    }
+
+    paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    httpClient = new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        if (uri.startsWith("/transactions/?order=")) {
+          String order = uri.substring(uri.indexOf('=') + 1);
+          StringBuilder json = new StringBuilder("{\"result\":{\"code\":100,\"message\":\"OK\"},\"transactions\":[");
+          String separator = "";
+          for (Map.Entry<UUID, String> entry : orders.entrySet()) {
+            if (entry.getValue().equals(order)) {
+              json.append(separator).append(status(entry.getKey(), order));
+              separator = ",";
+            }
+          }
+          return new StubHttpClient.Response(200, json.append("]}").toString());
+        }
+        CountDownLatch blocked = TransactionStatusLookupTest.this.blocked;
+        if (blocked != null) {
+          try {
+            blocked.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+        }
+        UUID id = UUID.fromString(uri.split("/")[2]);
+        if (!orders.containsKey(id)) {
+          return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+        }
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"},\"transaction\":"
+            + status(id, orders.get(id)) + "}");
+      }
+    });
+    paymentAPI.setHttpClient(httpClient);
+    lookup = new TransactionStatusLookup(paymentAPI, 100, 4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    lookup.close();
+  }
+
+  private static String status(UUID id, String order) {
+    return "{\"id\":\"" + id + "\",\"order\":\"" + order + "\",\"status\":{\"state\":\"ok\",\"code\":\"4000\"}}";
+  }
+
+  @Test
+  public void testLookupsAreGroupedByOrder() throws Exception {
+    Map<UUID, Future<TransactionStatus>> futures = new HashMap<>();
+    List<UUID> withoutOrder = new ArrayList<>();
+    for (Map.Entry<UUID, String> entry : orders.entrySet()) {
+      boolean orderKnown = withoutOrder.size() >= 5;
+      futures.put(entry.getKey(), lookup.lookup(entry.getKey(), orderKnown ? entry.getValue() : null));
+      if (!orderKnown) {
+        withoutOrder.add(entry.getKey());
+      }
+    }
+
+    for (Map.Entry<UUID, Future<TransactionStatus>> future : futures.entrySet()) {
+      TransactionStatus status = future.getValue().get(5, TimeUnit.SECONDS);
+      assertEquals(future.getKey(), status.getId());
+      assertEquals(orders.get(future.getKey()), status.getOrder());
+    }
+    assertEquals(150, lookup.getLookups());
+    // one search per order and one status request per transaction without an order
+    assertEquals(3 + 5, lookup.getRequests());
+  }
+
+  @Test
+  public void testTransactionMissingFromOrderIsLookedUpAlone() throws Exception {
+    UUID transactionId = orders.keySet().iterator().next();
+    TransactionStatus status = lookup.lookup(transactionId, "wrong-order").get(5, TimeUnit.SECONDS);
+
+    assertEquals(transactionId, status.getId());
+    assertEquals(2, lookup.getRequests());
+  }
+
+  @Test
+  public void testUnknownTransactionFails() throws Exception {
+    try {
+      lookup.lookup(UUID.randomUUID(), null).get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals(404, ((HttpResponseException) e.getCause()).getStatusCode());
+    }
+  }
+
+  @Test
+  public void testWaitingLookupsAreCancelledOnClose() throws Exception {
+    lookup.close();
+    lookup = new TransactionStatusLookup(paymentAPI, TimeUnit.MINUTES.toMillis(1), 1);
+    blocked = new CountDownLatch(1);
+
+    Iterator<Map.Entry<UUID, String>> entries = orders.entrySet().iterator();
+    Future<TransactionStatus> sent = lookup.lookup(entries.next().getKey(), null);
+    while (httpClient.getRequests() == 0) {
+      Thread.sleep(1);
+    }
+    Future<TransactionStatus> waitingForWorker = lookup.lookup(entries.next().getKey(), null);
+    Map.Entry<UUID, String> withOrder = entries.next();
+    Future<TransactionStatus> waitingForWindow = lookup.lookup(withOrder.getKey(), withOrder.getValue());
+
+    lookup.close();
+    for (Future<TransactionStatus> future : Arrays.asList(waitingForWorker, waitingForWindow)) {
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        fail();
+      } catch (CancellationException e) {
+        // expected
+      }
+    }
+
+    blocked.countDown();
+    assertNotNull(sent.get(5, TimeUnit.SECONDS));
+    assertEquals(1, lookup.getRequests());
+  }
+}
@@ -0,0 +1,277 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.CommitTransactionResponse;
+import io.paymenthighway.security.SecureSigner;
+import io.paymenthighway.stream.Subscriber;
+import io.paymenthighway.stream.Subscription;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BulkExecutorTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void testCommitTransactions() throws Exception {
+    final Set<String> declined = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    StubHttpClient client = new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        sleep(2);
+        String id = uri.split("/")[2];
+        if (declined.contains(id)) {
+          return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+        }
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"},"
+            + "\"committed\":true,\"committed_amount\":\"" + body.replaceAll(".*\"amount\":\"([0-9]+)\".*", "$1")
+            + "\"}");
+      }
+    });
+
+    List<CommitItem> items = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      CommitItem item = new CommitItem(UUID.randomUUID(), String.valueOf(100 + i), "EUR");
+      items.add(item);
+      if (i % 10 == 0) {
+        declined.add(item.getTransactionId().toString());
+      }
+    }
+
+    final Map<UUID, BulkOutcome<CommitItem, CommitTransactionResponse>> outcomes = new HashMap<>();
+    PaymentAPI paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET,
+        "test", "test_merchantId");
+    paymentAPI.setHttpClient(client);
+
+    BulkStatistics statistics = paymentAPI.commitTransactions(items, new BulkExecutor(8),
+        new BulkListener<CommitItem, CommitTransactionResponse>() {
+          @Override
+          public void onOutcome(BulkOutcome<CommitItem, CommitTransactionResponse> outcome) {
+            outcomes.put(outcome.getKey().getTransactionId(), outcome);
+          }
+        });
+
+    assertEquals(200, outcomes.size());
+    assertEquals(200, statistics.getStarted());
+    assertEquals(180, statistics.getSucceeded());
+    assertEquals(20, statistics.getFailed());
+    assertEquals(0, statistics.getInFlight());
+    assertTrue(client.getMaxInFlight() > 1 && client.getMaxInFlight() <= 8);
+
+    for (CommitItem item : items) {
+      BulkOutcome<CommitItem, CommitTransactionResponse> outcome = outcomes.get(item.getTransactionId());
+      if (declined.contains(item.getTransactionId().toString())) {
+        assertNull(outcome.getResponse());
+        assertEquals(404, ((HttpResponseException) outcome.getError()).getStatusCode());
+      } else {
+        assertEquals("100", outcome.getResponse().getResult().getCode());
+        assertEquals(item.getAmount(), outcome.getResponse().getCommittedAmount());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrencyIsBounded() throws Exception {
+    final AtomicInteger inFlight = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    BulkStatistics statistics = new BulkExecutor(3).execute(range(50), new BulkOperation<Integer, Integer>() {
+      @Override
+      public Integer execute(Integer key) {
+        int current = inFlight.incrementAndGet();
+        synchronized (maxInFlight) {
+          maxInFlight.set(Math.max(maxInFlight.get(), current));
+        }
+        sleep(2);
+        inFlight.decrementAndGet();
+        return key;
+      }
+    }, new BulkListener<Integer, Integer>() {
+      @Override
+      public void onOutcome(BulkOutcome<Integer, Integer> outcome) {
+      }
+    });
+
+    assertEquals(50, statistics.getSucceeded());
+    assertEquals(3, maxInFlight.get());
+  }
+
+  @Test
+  public void testRateLimit() throws Exception {
+    BulkStatistics statistics = new BulkExecutor(4, 200).execute(range(21), new BulkOperation<Integer, Integer>() {
+      @Override
+      public Integer execute(Integer key) {
+        return key;
+      }
+    }, new BulkListener<Integer, Integer>() {
+      @Override
+      public void onOutcome(BulkOutcome<Integer, Integer> outcome) {
+      }
+    });
+
+    // 20 intervals of 5 ms
+    assertTrue(statistics.getElapsedMillis() >= 95);
+  }
+
+  @Test
+  public void testRateLimiterSpacesReservations() {
+    RateLimiter limiter = new RateLimiter(1000);
+    long now = System.nanoTime() + 1000000000L;
+    assertEquals(0, limiter.reserve(now));
+    assertEquals(1000000, limiter.reserve(now));
+    assertEquals(1000000, limiter.reserve(now + 1000000));
+    // idle time is not saved for bursts
+    assertEquals(0, limiter.reserve(now + 10000000));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testListenerFailureStopsRun() throws Exception {
+    new BulkExecutor(2).execute(range(1000), new BulkOperation<Integer, Integer>() {
+      @Override
+      public Integer execute(Integer key) {
+        return key;
+      }
+    }, new BulkListener<Integer, Integer>() {
+      @Override
+      public void onOutcome(BulkOutcome<Integer, Integer> outcome) {
+        throw new IllegalStateException("failed");
+      }
+    });
+  }
+
+  @Test
+  public void testPublishedOutcomesFollowDemand() throws Exception {
+    final AtomicInteger started = new AtomicInteger();
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+    final Subscription[] subscription = new Subscription[1];
+    final CountDownLatch firstThree = new CountDownLatch(3);
+    final CountDownLatch completed = new CountDownLatch(1);
+
+    new BulkExecutor(4).publish(range(50), new BulkOperation<Integer, Integer>() {
+      @Override
+      public Integer execute(Integer key) {
+        started.incrementAndGet();
+        sleep(1);
+        return key;
+      }
+    }).subscribe(new Subscriber<BulkOutcome<Integer, Integer>>() {
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription[0] = s;
+      }
+
+      @Override
+      public void onNext(BulkOutcome<Integer, Integer> outcome) {
+        received.add(outcome.getResponse());
+        firstThree.countDown();
+      }
+
+      @Override
+      public void onError(Throwable error) {
+      }
+
+      @Override
+      public void onComplete() {
+        completed.countDown();
+      }
+    });
+
+    assertEquals(0, started.get());
+    subscription[0].request(3);
+    assertTrue(firstThree.await(5, TimeUnit.SECONDS));
+    sleep(20);
+    // no request is started without demand for its outcome
+    assertEquals(3, started.get());
+    assertEquals(3, received.size());
+
+    subscription[0].request(Long.MAX_VALUE);
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertEquals(50, started.get());
+    assertEquals(50, new HashSet<>(received).size());
+  }
+
+  @Test
+  public void testRateLimitedPublisherDoesNotBlockRequest() throws Exception {
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<Integer>());
+    final Subscription[] subscription = new Subscription[1];
+    final CountDownLatch completed = new CountDownLatch(1);
+
+    new BulkExecutor(4, 20).publish(range(5), new BulkOperation<Integer, Integer>() {
+      @Override
+      public Integer execute(Integer key) {
+        return key;
+      }
+    }).subscribe(new Subscriber<BulkOutcome<Integer, Integer>>() {
+      @Override
+      public void onSubscribe(Subscription s) {
+        subscription[0] = s;
+      }
+
+      @Override
+      public void onNext(BulkOutcome<Integer, Integer> outcome) {
+        received.add(outcome.getResponse());
+      }
+
+      @Override
+      public void onError(Throwable error) {
+      }
+
+      @Override
+      public void onComplete() {
+        completed.countDown();
+      }
+    });
+
+    long start = System.nanoTime();
+    subscription[0].request(Long.MAX_VALUE);
+    // the requests wait for their slots of 50 ms on the pool threads
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+    assertTrue(completed.await(5, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(195));
+    assertEquals(5, new HashSet<>(received).size());
+  }
+
+  private static Iterator<Integer> range(int count) {
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      keys.add(i);
+    }
+    return keys.iterator();
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
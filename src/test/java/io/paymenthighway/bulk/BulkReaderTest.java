@@ -0,0 +1,140 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.TransactionStatusResponse;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BulkReaderTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void testRepeatedKeysAreReadOnce() throws Exception {
+    StubHttpClient client = new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"},\"transaction\":"
+            + "{\"id\":\"" + uri.split("/")[2] + "\",\"status\":{\"state\":\"ok\",\"code\":\"4000\"}}}");
+      }
+    });
+    PaymentAPI paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET,
+        "test", "test_merchantId");
+    paymentAPI.setHttpClient(client);
+
+    List<UUID> ids = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      UUID id = UUID.randomUUID();
+      ids.add(id);
+      ids.add(id);
+      ids.add(UUID.fromString(id.toString()));
+    }
+
+    final Set<UUID> read = new HashSet<>();
+    ReadStatistics statistics = new BulkReader(8).readTransactionStatuses(paymentAPI, ids.iterator(),
+        new BulkListener<UUID, TransactionStatusResponse>() {
+          @Override
+          public void onOutcome(BulkOutcome<UUID, TransactionStatusResponse> outcome) {
+            assertEquals(outcome.getKey(), outcome.getResponse().getTransaction().getId());
+            read.add(outcome.getKey());
+          }
+        });
+
+    assertEquals(100, read.size());
+    assertEquals(100, client.getRequests());
+    assertEquals(100, statistics.getSucceeded());
+    assertEquals(200, statistics.getDuplicates());
+    assertTrue(client.getMaxInFlight() <= 8);
+  }
+
+  @Test
+  public void testConcurrencyShrinksUnderOverload() throws Exception {
+    final AtomicInteger inFlight = new AtomicInteger();
+    List<Integer> keys = new ArrayList<>();
+    for (int i = 0; i < 400; i++) {
+      keys.add(i);
+    }
+
+    ReadStatistics statistics = new BulkReader(16).read(keys.iterator(), new BulkOperation<Integer, Integer>() {
+      @Override
+      public Integer execute(Integer key) throws IOException {
+        try {
+          // the server takes three requests at a time
+          if (inFlight.incrementAndGet() > 3) {
+            throw new HttpResponseException(503, "Service Unavailable");
+          }
+          sleep(1);
+          return key;
+        } finally {
+          inFlight.decrementAndGet();
+        }
+      }
+    }, new BulkListener<Integer, Integer>() {
+      @Override
+      public void onOutcome(BulkOutcome<Integer, Integer> outcome) {
+      }
+    });
+
+    assertEquals(400, statistics.getCompleted());
+    assertTrue(statistics.getOverloaded() > 0);
+    assertTrue(statistics.getOverloaded() < 200);
+    assertTrue(statistics.getConcurrencyLimit() < 8);
+  }
+
+  @Test
+  public void testLimitGrowsWhileLatencyIsLow() {
+    AdaptiveLimit limit = new AdaptiveLimit(1, 10, 4);
+    for (int i = 0; i < 100; i++) {
+      limit.onSample(1000, false);
+    }
+    assertEquals(10, limit.get());
+
+    // a round of slow responses cuts the limit once
+    limit.onSample(5000, false);
+    assertEquals(7, limit.get());
+    for (int i = 0; i < 7; i++) {
+      limit.onSample(5000, false);
+    }
+    assertEquals(7, limit.get());
+    limit.onSample(5000, true);
+    assertEquals(5, limit.get());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package io.paymenthighway.bulk;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.Token;
+import io.paymenthighway.security.SecureSigner;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecurringChargeRunnerTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+  private static final String OK = "{\"result\":{\"code\":100,\"message\":\"OK\"}";
+
+  private File progressFile;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    progressFile = File.createTempFile("charges", ".progress");
+    progressFile.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    progressFile.delete();
+  }
+
+  /**
+   * Payment Highway stand-in that remembers the debited transactions
+   */
+  private static class Gateway implements StubHttpClient.Handler {
+    final Map<String, String> debited = new ConcurrentHashMap<>();
+    final AtomicInteger debits = new AtomicInteger();
+    final Set<String> lostResponses = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final Set<String> lostRequests = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final Set<String> throttled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    @Override
+    public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+      String[] path = uri.split("/");
+      if (uri.equals("/transaction")) {
+        return new StubHttpClient.Response(200, OK + ",\"id\":\"" + UUID.randomUUID() + "\"}");
+      }
+      String id = path[2];
+      if (uri.endsWith("/debit")) {
+        String amount = body.replaceAll(".*\"amount\":\"?([0-9]+)\"?.*", "$1");
+        if (lostRequests.remove(amount)) {
+          throw new IOException("connection reset");
+        }
+        if (throttled.remove(amount)) {
+          return new StubHttpClient.Response(429, "{\"result\":{\"code\":900,\"message\":\"Too many requests\"}}");
+        }
+        if (debited.containsKey(id)) {
+          return new StubHttpClient.Response(409, "{\"result\":{\"code\":900,\"message\":\"Already debited\"}}");
+        }
+        debits.incrementAndGet();
+        boolean declined = amount.endsWith("7");
+        debited.put(id, declined ? "failed" : "ok");
+        if (lostResponses.remove(amount)) {
+          throw new IOException("connection reset");
+        }
+        return new StubHttpClient.Response(200, declined
+            ? "{\"result\":{\"code\":200,\"message\":\"Authorization failed\"}}" : OK + "}");
+      }
+      String state = debited.get(id);
+      if (state == null) {
+        return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+      }
+      return new StubHttpClient.Response(200, OK + ",\"transaction\":{\"id\":\"" + id + "\",\"status\":{\"state\":\""
+          + state + "\",\"code\":\"" + ("ok".equals(state) ? 4000 : 7000) + "\"}}}");
+    }
+  }
+
+  private static PaymentAPI paymentAPI(Gateway gateway) {
+    PaymentAPI paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET,
+        "test", "test_merchantId");
+    paymentAPI.setHttpClient(new StubHttpClient(new SecureSigner(KEY_ID, SECRET), gateway));
+    return paymentAPI;
+  }
+
+  private static List<RecurringCharge> charges(int count) {
+    List<RecurringCharge> charges = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      charges.add(new RecurringCharge("subscription-" + i + "/2016-06", new Token(UUID.randomUUID()),
+          String.valueOf(1000 + i), "EUR"));
+    }
+    return charges;
+  }
+
+  private static class Outcomes implements BulkListener<RecurringCharge, ChargeOutcome> {
+    final Map<String, BulkOutcome<RecurringCharge, ChargeOutcome>> outcomes = new HashMap<>();
+
+    @Override
+    public void onOutcome(BulkOutcome<RecurringCharge, ChargeOutcome> outcome) {
+      outcomes.put(outcome.getKey().getChargeId(), outcome);
+    }
+  }
+
+  @Test
+  public void testChargesAndDeclines() throws Exception {
+    Gateway gateway = new Gateway();
+    Outcomes outcomes = new Outcomes();
+
+    ChargeStatistics statistics;
+    try (RecurringChargeRunner runner = new RecurringChargeRunner(paymentAPI(gateway), new BulkExecutor(8),
+        progressFile)) {
+      statistics = runner.run(charges(100), outcomes);
+    }
+
+    assertEquals(100, gateway.debits.get());
+    assertEquals(90, statistics.getCharged());
+    assertEquals(10, statistics.getDeclined());
+    assertEquals(0, statistics.getFailed());
+    assertEquals(100, outcomes.outcomes.size());
+    assertEquals(ChargeOutcome.State.DECLINED, outcomes.outcomes.get("subscription-7/2016-06").getResponse().getState());
+    assertEquals("200", outcomes.outcomes.get("subscription-7/2016-06").getResponse().getResultCode());
+
+    // everything is skipped when run again
+    try (RecurringChargeRunner runner = new RecurringChargeRunner(paymentAPI(gateway), new BulkExecutor(8),
+        progressFile)) {
+      statistics = runner.run(charges(100), new Outcomes());
+    }
+    assertEquals(100, gateway.debits.get());
+    assertEquals(100, statistics.getSkipped());
+    assertEquals(0, statistics.getStarted());
+  }
+
+  @Test
+  public void testInterruptedChargesAreNotChargedTwice() throws Exception {
+    Gateway gateway = new Gateway();
+    // debited, but the response never arrives
+    gateway.lostResponses.add("1003");
+    gateway.lostResponses.add("1017");
+    // the debit never reaches the gateway
+    gateway.lostRequests.add("1005");
+
+    ChargeStatistics statistics;
+    try (RecurringChargeRunner runner = new RecurringChargeRunner(paymentAPI(gateway), new BulkExecutor(4),
+        progressFile)) {
+      statistics = runner.run(charges(40), new Outcomes());
+    }
+    assertEquals(3, statistics.getFailed());
+    assertEquals(39, gateway.debits.get());
+
+    Outcomes outcomes = new Outcomes();
+    try (RecurringChargeRunner runner = new RecurringChargeRunner(paymentAPI(gateway), new BulkExecutor(4),
+        progressFile)) {
+      statistics = runner.run(charges(40), outcomes);
+    }
+    assertEquals(37, statistics.getSkipped());
+    assertEquals(3, statistics.getSucceeded());
+    assertEquals(40, gateway.debits.get());
+
+    ChargeOutcome recovered = outcomes.outcomes.get("subscription-3/2016-06").getResponse();
+    assertTrue(recovered.isRecovered());
+    assertEquals(ChargeOutcome.State.CHARGED, recovered.getState());
+    assertEquals(ChargeOutcome.State.DECLINED, outcomes.outcomes.get("subscription-17/2016-06").getResponse().getState());
+
+    ChargeOutcome retried = outcomes.outcomes.get("subscription-5/2016-06").getResponse();
+    assertEquals(false, retried.isRecovered());
+    assertEquals(ChargeOutcome.State.CHARGED, retried.getState());
+  }
+
+  @Test
+  public void testThrottledChargesAreRetried() throws Exception {
+    Gateway gateway = new Gateway();
+    gateway.throttled.add("1002");
+    gateway.throttled.add("1006");
+
+    ChargeStatistics statistics;
+    try (RecurringChargeRunner runner = new RecurringChargeRunner(paymentAPI(gateway), new BulkExecutor(4),
+        progressFile)) {
+      statistics = runner.run(charges(10), new Outcomes());
+    }
+    assertEquals(2, statistics.getFailed());
+    assertEquals(8, gateway.debits.get());
+
+    Outcomes outcomes = new Outcomes();
+    try (RecurringChargeRunner runner = new RecurringChargeRunner(paymentAPI(gateway), new BulkExecutor(4),
+        progressFile)) {
+      statistics = runner.run(charges(10), outcomes);
+    }
+    assertEquals(8, statistics.getSkipped());
+    assertEquals(2, statistics.getSucceeded());
+    assertEquals(10, gateway.debits.get());
+    assertEquals(ChargeOutcome.State.CHARGED, outcomes.outcomes.get("subscription-2/2016-06").getResponse().getState());
+  }
+
+  @Test
+  public void testTornRecordIsDropped() throws Exception {
+    ChargeJournal journal = new ChargeJournal(progressFile);
+    UUID transactionId = UUID.randomUUID();
+    journal.started("a", transactionId);
+    journal.finished("a", transactionId, ChargeJournal.CHARGED, "100");
+    journal.started("b", UUID.randomUUID());
+    journal.close();
+
+    try (RandomAccessFile file = new RandomAccessFile(progressFile, "rw")) {
+      file.setLength(file.length() - 3);
+    }
+
+    journal = new ChargeJournal(progressFile);
+    assertEquals(1, journal.size());
+    assertEquals(ChargeJournal.CHARGED, journal.get("a").state);
+    assertEquals(transactionId, journal.get("a").transactionId);
+
+    journal.started("c", UUID.randomUUID());
+    journal.close();
+    assertEquals(2, new ChargeJournal(progressFile).size());
+  }
+
+  @Test
+  public void testZeroFilledTailIsDropped() throws Exception {
+    ChargeJournal journal = new ChargeJournal(progressFile);
+    UUID transactionId = UUID.randomUUID();
+    journal.started("a", transactionId);
+    journal.close();
+
+    try (RandomAccessFile file = new RandomAccessFile(progressFile, "rw")) {
+      file.setLength(file.length() + 4096);
+    }
+
+    journal = new ChargeJournal(progressFile);
+    assertEquals(1, journal.size());
+    assertEquals(transactionId, journal.get("a").transactionId);
+    journal.started("b", UUID.randomUUID());
+    journal.close();
+    assertEquals(2, new ChargeJournal(progressFile).size());
+  }
+
+  @Test
+  public void testMalformedTailIsDropped() throws Exception {
+    ChargeJournal journal = new ChargeJournal(progressFile);
+    journal.started("a", UUID.randomUUID());
+    journal.close();
+
+    try (RandomAccessFile file = new RandomAccessFile(progressFile, "rw")) {
+      file.seek(file.length());
+      // a started record whose charge id is not valid modified UTF-8
+      file.write(new byte[]{ChargeJournal.STARTED, 0, 2, (byte) 0xff, (byte) 0xff});
+    }
+
+    journal = new ChargeJournal(progressFile);
+    assertEquals(1, journal.size());
+    journal.close();
+  }
+}
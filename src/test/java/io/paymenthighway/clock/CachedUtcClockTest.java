@@ -0,0 +1,75 @@
+package io.paymenthighway.clock;
+
+import org.junit.*;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CachedUtcClockTest {
+
+  private static final long NOW = 1465545600000L; // 2016-06-10T08:00:00Z
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void testFormatMatchesDateFormat() {
+    SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+    Random random = new Random(1);
+    for (int i = 0; i < 10000; i++) {
+      long second = (random.nextLong() & Long.MAX_VALUE) % 4102444800L;
+      assertEquals(dateFormat.format(new Date(second * 1000)), CachedUtcClock.format(second));
+    }
+    assertEquals("1970-01-01T00:00:00Z", CachedUtcClock.format(0));
+    assertEquals("2016-02-29T23:59:59Z", CachedUtcClock.format(1456790399));
+    assertEquals("1969-12-31T23:59:59Z", CachedUtcClock.format(-1));
+  }
+
+  @Test
+  public void testTimestampIsCachedForOneSecond() {
+    ManualUtcClock clock = new ManualUtcClock(NOW);
+    String timestamp = clock.getUtcTimestamp();
+    assertEquals("2016-06-10T08:00:00Z", timestamp);
+
+    clock.advance(999);
+    assertSame(timestamp, clock.getUtcTimestamp());
+
+    clock.advance(1);
+    assertEquals("2016-06-10T08:00:01Z", clock.getUtcTimestamp());
+
+    clock.setTimeMillis(NOW - 1);
+    assertEquals("2016-06-10T07:59:59Z", clock.getUtcTimestamp());
+  }
+
+  @Test
+  public void testSystemClock() {
+    long before = System.currentTimeMillis() / 1000;
+    String timestamp = CachedUtcClock.INSTANCE.getUtcTimestamp();
+    long after = System.currentTimeMillis() / 1000;
+
+    boolean inRange = false;
+    for (long second = before; second <= after; second++) {
+      inRange |= CachedUtcClock.format(second).equals(timestamp);
+    }
+    assertEquals(true, inRange);
+  }
+}
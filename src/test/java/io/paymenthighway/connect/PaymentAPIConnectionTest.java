@@ -1452,4 +1452,41 @@ public class PaymentAPIConnectionTest {
 
   }
 
+  @Test
+  public void testTypedCallsGoThroughExecuteHooks() throws Exception {
+    final List<String> calls = new ArrayList<>();
+    PaymentAPIConnection hooked = new PaymentAPIConnection(serviceUrl, signatureKeyId, signatureSecret, account,
+        merchant) {
+      @Override
+      protected String executeGet(String requestUri, List<NameValuePair> nameValuePairs) throws IOException {
+        calls.add("GET " + requestUri);
+        return super.executeGet(requestUri, nameValuePairs);
+      }
+
+      @Override
+      protected String executePost(String requestUri, List<NameValuePair> nameValuePairs, Request requestBody)
+          throws IOException {
+        calls.add("POST " + requestUri);
+        return super.executePost(requestUri, nameValuePairs, requestBody);
+      }
+    };
+    hooked.setHttpClient(new StubHttpClient(new SecureSigner(signatureKeyId, signatureSecret),
+        new StubHttpClient.Handler() {
+          @Override
+          public StubHttpClient.Response handle(String method, String uri, String body) {
+            return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"}}");
+          }
+        }));
+
+    UUID transactionId = UUID.randomUUID();
+    hooked.initTransactionHandle();
+    hooked.transactionStatus(transactionId);
+    Card card = new Card("4153013999700024", "2017", "11", "024");
+    hooked.debitTransaction(transactionId, new TransactionRequest(card, "99", "EUR"));
+    hooked.close();
+
+    assertEquals(Arrays.asList("POST /transaction", "GET /transaction/" + transactionId,
+        "POST /transaction/" + transactionId + "/debit"), calls);
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package io.paymenthighway.connect;
+
+import io.paymenthighway.PaymentHighwayUtility;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP client that answers Payment API requests in memory, with responses signed like Payment Highway signs them.
+ * Lets the connection classes be tested offline.
+ */
+public class StubHttpClient extends CloseableHttpClient {
+
+  /**
+   * Creates the response to a request
+   */
+  public interface Handler {
+
+    /**
+     * @param method The HTTP method
+     * @param uri The request path and query, as signed
+     * @param body The request body, or an empty string
+     * @return Response
+     * @throws IOException to fail the request as a network error would
+     */
+    Response handle(String method, String uri, String body) throws IOException;
+  }
+
+  /**
+   * Status and JSON body of a stub response
+   */
+  public static class Response {
+    final int status;
+    final String body;
+
+    public Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  private final SecureSigner signer;
+  private final Handler handler;
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+
+  /**
+   * @param signer Signs the responses, use the same key as the client under test
+   * @param handler Creates the responses
+   */
+  public StubHttpClient(SecureSigner signer, Handler handler) {
+    this.signer = signer;
+    this.handler = handler;
+  }
+
+  /**
+   * @return The number of requests received
+   */
+  public int getRequests() {
+    return requests.get();
+  }
+
+  /**
+   * @return The highest number of requests handled at the same time
+   */
+  public int getMaxInFlight() {
+    return maxInFlight.get();
+  }
+
+  @Override
+  protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+      throws IOException {
+
+    requests.incrementAndGet();
+    int current = inFlight.incrementAndGet();
+    int max = maxInFlight.get();
+    while (current > max && !maxInFlight.compareAndSet(max, current)) {
+      max = maxInFlight.get();
+    }
+
+    try {
+      String method = request.getRequestLine().getMethod();
+      URI requestUri = URI.create(request.getRequestLine().getUri());
+      String uri = requestUri.getRawQuery() != null
+          ? requestUri.getRawPath() + "?" + requestUri.getRawQuery()
+          : requestUri.getRawPath();
+      String body = "";
+      if (request instanceof HttpEntityEnclosingRequest && ((HttpEntityEnclosingRequest) request).getEntity() != null) {
+        body = EntityUtils.toString(((HttpEntityEnclosingRequest) request).getEntity(), "UTF-8");
+      }
+
+      Response response = handler.handle(method, uri, body);
+      return signedResponse(method, uri, response);
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  private CloseableHttpResponse signedResponse(String method, String uri, Response response) {
+    List<NameValuePair> headers = new ArrayList<>();
+    headers.add(new BasicNameValuePair("sph-response-id", PaymentHighwayUtility.createRequestId()));
+    headers.add(new BasicNameValuePair("sph-timestamp", PaymentHighwayUtility.getUtcTimestamp()));
+    headers.add(new BasicNameValuePair("sph-request-id", PaymentHighwayUtility.createRequestId()));
+
+    StubResponse httpResponse = new StubResponse(response.status);
+    for (NameValuePair header : headers) {
+      httpResponse.addHeader(header.getName(), header.getValue());
+    }
+    httpResponse.addHeader("Signature", signer.createSignature(method, uri, headers, response.body));
+    httpResponse.setEntity(new StringEntity(response.body, ContentType.APPLICATION_JSON));
+    return httpResponse;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public HttpParams getParams() {
+    return new BasicHttpParams();
+  }
+
+  @Override
+  @SuppressWarnings("deprecation")
+  public ClientConnectionManager getConnectionManager() {
+    throw new UnsupportedOperationException();
+  }
+
+  private static class StubResponse extends BasicHttpResponse implements CloseableHttpResponse {
+    StubResponse(int status) {
+      super(HttpVersion.HTTP_1_1, status, status < 300 ? "OK" : "Error");
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package io.paymenthighway.error;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class AsyncErrorReporterTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private final List<ErrorEvent> events = Collections.synchronizedList(new ArrayList<ErrorEvent>());
+  private ErrorReporter defaultReporter;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    defaultReporter = ErrorReporters.getReporter();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ErrorReporters.setReporter(defaultReporter);
+  }
+
+  @Test
+  public void testEventsAreDeliveredInOrderOnClose() throws Exception {
+    AsyncErrorReporter reporter = new AsyncErrorReporter(new ErrorReporter() {
+      @Override
+      public void report(ErrorEvent event) {
+        events.add(event);
+      }
+    }, 100);
+
+    for (int i = 0; i < 50; i++) {
+      reporter.report(new ErrorEvent(ErrorEvent.Kind.REQUEST, "event " + i, null));
+    }
+    reporter.close();
+
+    assertEquals(50, events.size());
+    for (int i = 0; i < 50; i++) {
+      assertEquals("event " + i, events.get(i).getMessage());
+    }
+    assertEquals(50, reporter.getDelivered());
+    assertEquals(0, reporter.getDropped());
+  }
+
+  @Test
+  public void testFullQueueDropsAndCountsEvents() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    AsyncErrorReporter reporter = new AsyncErrorReporter(new ErrorReporter() {
+      @Override
+      public void report(ErrorEvent event) {
+        events.add(event);
+        blocked.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }, 10);
+
+    // the first event is taken by the thread, which blocks in the sink
+    reporter.report(new ErrorEvent(ErrorEvent.Kind.REQUEST, "first", null));
+    blocked.await();
+    for (int i = 0; i < 100; i++) {
+      reporter.report(new ErrorEvent(ErrorEvent.Kind.REQUEST, "event " + i, null));
+    }
+    assertEquals(90, reporter.getDropped());
+
+    release.countDown();
+    reporter.close();
+
+    assertEquals(11, reporter.getDelivered());
+    ErrorEvent dropped = events.get(events.size() - 1);
+    assertEquals(ErrorEvent.Kind.DROPPED, dropped.getKind());
+    assertEquals("90 events dropped", dropped.getMessage());
+  }
+
+  @Test
+  public void testErrorResponseIsReportedWithItsFields() throws Exception {
+    ErrorReporters.setReporter(new ErrorReporter() {
+      @Override
+      public void report(ErrorEvent event) {
+        events.add(event);
+      }
+    });
+    PaymentAPI paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    paymentAPI.setHttpClient(new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+      }
+    }));
+
+    UUID transactionId = UUID.randomUUID();
+    try {
+      paymentAPI.transactionStatus(transactionId);
+      fail();
+    } catch (HttpResponseException e) {
+      assertEquals(404, e.getStatusCode());
+    }
+
+    assertEquals(1, events.size());
+    ErrorEvent event = events.get(0);
+    assertEquals(ErrorEvent.Kind.HTTP_STATUS, event.getKind());
+    assertEquals("GET", event.getMethod());
+    assertEquals("/transaction/" + transactionId, event.getEndpoint());
+    assertEquals(404, event.getStatus());
+    assertEquals("900", event.getResultCode());
+    assertNotNull(event.getRequestId());
+    assertNull(event.getError());
+  }
+}
@@ -0,0 +1,75 @@
+package io.paymenthighway.id;
+
+import org.junit.*;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class BufferedRequestIdGeneratorTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void testIdsAreRandomUuids() {
+    RequestIdGenerator generator = new BufferedRequestIdGenerator();
+    for (int i = 0; i < 1000; i++) {
+      String id = generator.createRequestId();
+      assertEquals(36, id.length());
+
+      UUID uuid = UUID.fromString(id);
+      assertEquals(id, uuid.toString());
+      assertEquals(4, uuid.version());
+      assertEquals(2, uuid.variant());
+    }
+  }
+
+  @Test
+  public void testIdsAreUniqueAcrossThreads() throws Exception {
+    final RequestIdGenerator generator = new BufferedRequestIdGenerator();
+    final Set<String> ids = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    final AtomicInteger created = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(8);
+
+    for (int t = 0; t < 8; t++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 0; i < 20000; i++) {
+            ids.add(generator.createRequestId());
+            created.incrementAndGet();
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+
+    assertEquals(created.get(), ids.size());
+  }
+
+  @Test
+  public void testSharedInstance() {
+    String id = BufferedRequestIdGenerator.INSTANCE.createRequestId();
+    assertEquals(4, UUID.fromString(id).version());
+  }
+}
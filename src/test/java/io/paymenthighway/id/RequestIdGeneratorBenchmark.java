@@ -0,0 +1,55 @@
+package io.paymenthighway.id;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the request id generators with several threads creating ids at the same time.
+ * <p/>
+ * Not a unit test, run with e.g. {@code java -cp ... io.paymenthighway.id.RequestIdGeneratorBenchmark 8 1000000}
+ */
+public class RequestIdGeneratorBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    int idsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+    RequestIdGenerator[] generators = {UuidRequestIdGenerator.INSTANCE, BufferedRequestIdGenerator.INSTANCE};
+    for (int round = 0; round < 3; round++) {
+      for (RequestIdGenerator generator : generators) {
+        long nanos = run(generator, threads, idsPerThread);
+        System.out.printf("%-28s %2d threads %8.0f ids/ms%n", generator.getClass().getSimpleName(), threads,
+            (double) threads * idsPerThread / (nanos / 1e6));
+      }
+    }
+  }
+
+  private static long run(final RequestIdGenerator generator, int threads, final int idsPerThread)
+      throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          int length = 0;
+          for (int i = 0; i < idsPerThread; i++) {
+            length += generator.createRequestId().length();
+          }
+          if (length == 0) {
+            System.out.println();
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    return System.nanoTime() - begin;
+  }
+}
@@ -0,0 +1,253 @@
+package io.paymenthighway.journal;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.Token;
+import io.paymenthighway.model.request.TransactionRequest;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class PaymentJournalTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+  private static final String OK = "{\"result\":{\"code\":100,\"message\":\"OK\"}";
+
+  private File journalFile;
+  private final Set<String> debited = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile boolean connectionLost = false;
+  private volatile boolean unavailable = false;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    journalFile = File.createTempFile("payments", ".journal");
+    journalFile.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    journalFile.delete();
+  }
+
+  private PaymentAPI paymentAPI() {
+    PaymentAPI paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    paymentAPI.setHttpClient(new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        String id = uri.split("/")[2];
+        if (uri.endsWith("/debit")) {
+          if (body.contains("\"amount\":\"400\"")) {
+            return new StubHttpClient.Response(400, "{\"result\":{\"code\":900,\"message\":\"Bad request\"}}");
+          }
+          debited.add(id);
+          if (unavailable) {
+            return new StubHttpClient.Response(503, "Service Unavailable");
+          }
+          if (connectionLost) {
+            throw new IOException("connection reset");
+          }
+          return new StubHttpClient.Response(200, OK + "}");
+        }
+        if (!debited.contains(id)) {
+          return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+        }
+        return new StubHttpClient.Response(200, OK + ",\"transaction\":{\"id\":\"" + id
+            + "\",\"status\":{\"state\":\"ok\",\"code\":\"4000\"}}}");
+      }
+    }));
+    return paymentAPI;
+  }
+
+  private static TransactionRequest debit(String amount) {
+    return new TransactionRequest(new Token(UUID.randomUUID()), amount, "EUR");
+  }
+
+  @Test
+  public void testCompletedOperationsAreResolved() throws Exception {
+    PaymentJournal journal = new PaymentJournal(journalFile);
+    PaymentAPI paymentAPI = paymentAPI();
+    paymentAPI.setJournal(journal);
+
+    paymentAPI.debitTransaction(UUID.randomUUID(), debit("100"));
+    try {
+      paymentAPI.debitTransaction(UUID.randomUUID(), debit("400"));
+      fail();
+    } catch (IOException e) {
+      // rejected requests are resolved
+    }
+    assertEquals(0, journal.getUnresolved().size());
+    journal.close();
+
+    assertEquals(0, new PaymentJournal(journalFile).getUnresolved().size());
+  }
+
+  @Test
+  public void testLostResponsesAreRecovered() throws Exception {
+    PaymentJournal journal = new PaymentJournal(journalFile);
+    PaymentAPI paymentAPI = paymentAPI();
+    paymentAPI.setJournal(journal);
+
+    UUID lost = UUID.randomUUID();
+    connectionLost = true;
+    try {
+      paymentAPI.debitTransaction(lost, debit("100"));
+      fail();
+    } catch (IOException e) {
+      // outcome unknown
+    }
+    connectionLost = false;
+    paymentAPI.debitTransaction(UUID.randomUUID(), debit("200"));
+    // the process dies without closing the journal
+
+    journal = new PaymentJournal(journalFile);
+    List<JournalEntry> unresolved = journal.getUnresolved();
+    assertEquals(1, unresolved.size());
+    assertEquals(lost, unresolved.get(0).getTransactionId());
+    assertEquals(JournalEntry.Operation.DEBIT, unresolved.get(0).getOperation());
+
+    List<JournalEntry> recovered = journal.recover(paymentAPI());
+    assertEquals(1, recovered.size());
+    assertEquals("ok", recovered.get(0).getTransactionStatus().getStatus().getState());
+    assertEquals(0, journal.getUnresolved().size());
+    journal.close();
+
+    assertEquals(0, new PaymentJournal(journalFile).getUnresolved().size());
+  }
+
+  @Test
+  public void testUnavailableResponsesAreRecovered() throws Exception {
+    PaymentJournal journal = new PaymentJournal(journalFile);
+    PaymentAPI paymentAPI = paymentAPI();
+    paymentAPI.setJournal(journal);
+
+    UUID unknown = UUID.randomUUID();
+    unavailable = true;
+    try {
+      paymentAPI.debitTransaction(unknown, debit("100"));
+      fail();
+    } catch (HttpResponseException e) {
+      assertEquals(503, e.getStatusCode());
+    }
+    unavailable = false;
+
+    // the debit may have been done before the error, only a status lookup tells
+    List<JournalEntry> unresolved = journal.getUnresolved();
+    assertEquals(1, unresolved.size());
+    assertEquals(unknown, unresolved.get(0).getTransactionId());
+
+    List<JournalEntry> recovered = journal.recover(paymentAPI);
+    assertEquals(1, recovered.size());
+    assertEquals("ok", recovered.get(0).getTransactionStatus().getStatus().getState());
+    assertEquals(0, journal.getUnresolved().size());
+    journal.close();
+  }
+
+  @Test
+  public void testUnknownTransactionIsResolvedWithoutStatus() throws Exception {
+    PaymentJournal journal = new PaymentJournal(journalFile);
+    journal.recordIntent(JournalEntry.Operation.COMMIT, UUID.randomUUID(), "not-a-uuid");
+
+    List<JournalEntry> recovered = journal.recover(paymentAPI());
+    assertEquals(1, recovered.size());
+    assertNull(recovered.get(0).getTransactionStatus());
+    assertEquals(UUID.nameUUIDFromBytes("not-a-uuid".getBytes("UTF-8")), recovered.get(0).getRequestId());
+  }
+
+  @Test
+  public void testFullJournalIsCompacted() throws Exception {
+    // room for 7 records after the header
+    PaymentJournal journal = new PaymentJournal(journalFile, 8 * 64);
+    UUID pending = UUID.randomUUID();
+    journal.recordIntent(JournalEntry.Operation.REVERT, pending, UUID.randomUUID().toString());
+    for (int i = 0; i < 100; i++) {
+      UUID transactionId = UUID.randomUUID();
+      String requestId = UUID.randomUUID().toString();
+      journal.recordIntent(JournalEntry.Operation.DEBIT, transactionId, requestId);
+      journal.recordCompleted(JournalEntry.Operation.DEBIT, transactionId, requestId, "100");
+    }
+    journal.close();
+
+    journal = new PaymentJournal(journalFile, 8 * 64);
+    assertEquals(1, journal.getUnresolved().size());
+    assertEquals(pending, journal.getUnresolved().get(0).getTransactionId());
+  }
+
+  @Test
+  public void testCompactionIgnoresLeftoverTempFile() throws Exception {
+    // a compaction that died before the rename leaves a temp file full of records
+    File temp = new File(journalFile.getPath() + ".tmp");
+    try {
+      PaymentJournal stale = new PaymentJournal(temp, 8 * 64);
+      for (int i = 0; i < 7; i++) {
+        stale.recordIntent(JournalEntry.Operation.DEBIT, UUID.randomUUID(), UUID.randomUUID().toString());
+      }
+      stale.close();
+
+      PaymentJournal journal = new PaymentJournal(journalFile, 8 * 64);
+      UUID pending = UUID.randomUUID();
+      journal.recordIntent(JournalEntry.Operation.REVERT, pending, UUID.randomUUID().toString());
+      // the fourth debit fills the journal and compacts it once
+      for (int i = 0; i < 4; i++) {
+        UUID transactionId = UUID.randomUUID();
+        String requestId = UUID.randomUUID().toString();
+        journal.recordIntent(JournalEntry.Operation.DEBIT, transactionId, requestId);
+        journal.recordCompleted(JournalEntry.Operation.DEBIT, transactionId, requestId, "100");
+      }
+      journal.close();
+
+      journal = new PaymentJournal(journalFile, 8 * 64);
+      assertEquals(1, journal.getUnresolved().size());
+      assertEquals(pending, journal.getUnresolved().get(0).getTransactionId());
+    } finally {
+      temp.delete();
+    }
+  }
+
+  @Test
+  public void testDamagedRecordEndsTheJournal() throws Exception {
+    PaymentJournal journal = new PaymentJournal(journalFile, 64 * 64);
+    UUID first = UUID.randomUUID();
+    journal.recordIntent(JournalEntry.Operation.DEBIT, first, UUID.randomUUID().toString());
+    journal.recordIntent(JournalEntry.Operation.DEBIT, UUID.randomUUID(), UUID.randomUUID().toString());
+    journal.recordIntent(JournalEntry.Operation.DEBIT, UUID.randomUUID(), UUID.randomUUID().toString());
+    journal.close();
+
+    // tear the second record
+    try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+      raf.seek(2 * 64 + 20);
+      raf.write(0xff);
+    }
+
+    journal = new PaymentJournal(journalFile, 64 * 64);
+    assertEquals(1, journal.getUnresolved().size());
+    assertEquals(first, journal.getUnresolved().get(0).getTransactionId());
+
+    // the records after the damaged one are cleared, new records take their place
+    journal.recordIntent(JournalEntry.Operation.COMMIT, UUID.randomUUID(), UUID.randomUUID().toString());
+    journal.close();
+    assertEquals(2, new PaymentJournal(journalFile, 64 * 64).getUnresolved().size());
+  }
+}
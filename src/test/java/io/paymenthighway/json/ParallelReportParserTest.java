@@ -0,0 +1,112 @@
+package io.paymenthighway.json;
+
+import io.paymenthighway.model.response.ReconciliationReportResponse;
+import io.paymenthighway.model.response.ReconciliationSettlement;
+import org.junit.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ParallelReportParserTest {
+
+  private static ForkJoinPool pool;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    pool = new ForkJoinPool(4);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    pool.shutdown();
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private static String settlement(int i) {
+    return "{\"acquirer_batch_id\":\"" + i + "\",\"status\":{\"state\":\"ok\",\"code\":4000},\"batch\":\"0000" + i + "\"," +
+        "\"date_processed\":\"2016-06-1" + (i % 10) + "T08:00:00Z\",\"reference\":\"1160610000000" + i + "\"," +
+        "\"acquirer\":{\"id\":\"nets\",\"name\":\"Nets\"},\"transaction_count\":2,\"net_amount\":" + (i * 100) + "," +
+        "\"currency\":\"EUR\",\"unknown\":[{\"nested\":\"}]\"}],\"transactions\":[" +
+        "{\"transaction_id\":\"f9a48e02-4301-49ff-a4f1-65749435924a\",\"date_processed\":\"2016-06-10T08:00:00Z\"," +
+        "\"transaction_type\":\"debit\",\"amount\":" + i + ",\"currency\":\"EUR\",\"status\":{\"state\":\"ok\",\"code\":4000}}]," +
+        "\"unallocated_transactions_count\":0,\"unallocated_transactions\":[]}";
+  }
+
+  private static String report(int settlements) {
+    StringBuilder json = new StringBuilder("{\"result\":{\"code\":100,\"message\":\"OK\"},\"settlements\":[");
+    for (int i = 0; i < settlements; i++) {
+      if (i > 0) {
+        json.append(", ");
+      }
+      json.append(settlement(i));
+    }
+    json.append("],\"commission_settlements\":[{\"net_amount\":10}]}");
+    return json.toString();
+  }
+
+  private static void assertSameAsSequential(String json, ReconciliationReportResponse response) {
+    ReconciliationReportResponse expected = new JsonParser().mapResponse(json, ReconciliationReportResponse.class);
+    JsonGenerator generator = new JsonGenerator();
+    assertEquals(generator.createTransactionJson(expected), generator.createTransactionJson(response));
+  }
+
+  @Test
+  public void testParallelMatchesSequential() {
+    String json = report(57);
+
+    ParallelReportParser parser = new ParallelReportParser(pool, 3);
+    ReconciliationReportResponse response = parser.mapReconciliationReportResponse(json);
+
+    assertEquals("100", response.getResult().getCode());
+    ReconciliationSettlement[] settlements = response.getReconciliationSettlements();
+    assertEquals(57, settlements.length);
+    for (int i = 0; i < settlements.length; i++) {
+      assertEquals(Integer.toString(i), settlements[i].getAcquirerBatchId());
+      assertEquals(Integer.toString(i * 100), settlements[i].getNetAmount());
+    }
+    assertEquals(1, response.getCommissionSettlements().length);
+    assertSameAsSequential(json, response);
+  }
+
+  @Test
+  public void testSmallReport() {
+    String json = report(1);
+
+    ReconciliationReportResponse response = new ParallelReportParser().mapReconciliationReportResponse(json);
+
+    assertEquals(1, response.getReconciliationSettlements().length);
+    assertSameAsSequential(json, response);
+  }
+
+  @Test
+  public void testNullAndMissingSettlements() {
+    String json = "{\"settlements\":[null," + settlement(1) + ",null],\"result\":{\"code\":100,\"message\":\"OK\"}}";
+    ParallelReportParser parser = new ParallelReportParser(pool, 1);
+
+    ReconciliationReportResponse response = parser.mapReconciliationReportResponse(json);
+    assertNull(response.getReconciliationSettlements()[0]);
+    assertEquals("1", response.getReconciliationSettlements()[1].getAcquirerBatchId());
+    assertSameAsSequential(json, response);
+
+    json = "{\"settlements\":null,\"result\":{\"code\":100,\"message\":\"OK\"}}";
+    response = parser.mapReconciliationReportResponse(json);
+    assertNull(response.getReconciliationSettlements());
+    assertSameAsSequential(json, response);
+  }
+
+  @Test
+  public void testInvalidSettlement() {
+    String json = report(20).replace("\"net_amount\":500", "\"net_amount\":{\"value\":5}");
+
+    assertNull(new ParallelReportParser(pool, 2).mapReconciliationReportResponse(json));
+  }
+}
@@ -0,0 +1,91 @@
+package io.paymenthighway.load;
+
+import org.junit.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void testBucketsKeepTheRelativeError() {
+    Random random = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      long value = random.nextLong() >>> (1 + random.nextInt(63));
+      int index = LatencyHistogram.index(value);
+      long highest = LatencyHistogram.highestEquivalent(index);
+      assertTrue(value + " " + highest, highest >= value);
+      assertTrue(value + " " + highest, highest - value <= value / 64);
+      assertEquals(index, LatencyHistogram.index(highest));
+    }
+    assertEquals(Long.MAX_VALUE, LatencyHistogram.highestEquivalent(LatencyHistogram.index(Long.MAX_VALUE)));
+  }
+
+  @Test
+  public void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 10000; i++) {
+      histogram.record(i * 1000L);
+    }
+
+    assertEquals(10000, histogram.getCount());
+    assertEquals(10000000, histogram.getMax());
+    assertEquals(5000500, histogram.getMean(), 0.001);
+    assertEquals(5000000, histogram.getValueAtPercentile(50), 5000000 / 64);
+    assertEquals(9900000, histogram.getValueAtPercentile(99), 9900000 / 64);
+    assertEquals(10000000, histogram.getValueAtPercentile(100));
+    assertEquals(1000, histogram.getValueAtPercentile(0), 1000 / 64);
+  }
+
+  @Test
+  public void testHistogramsAreAdded() {
+    LatencyHistogram fast = new LatencyHistogram();
+    LatencyHistogram slow = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      fast.record(1000);
+    }
+    slow.record(1000000);
+
+    fast.add(slow);
+    assertEquals(100, fast.getCount());
+    assertEquals(1000000, fast.getMax());
+    assertEquals(1000, fast.getValueAtPercentile(99), 1000 / 64);
+    assertEquals(1000000, fast.getValueAtPercentile(99.5));
+  }
+
+  @Test
+  public void testPercentileDistributionEndsAtTheMaximum() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i * 1000000L);
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    histogram.printPercentiles(new PrintStream(bytes), 1e6);
+    String[] lines = bytes.toString().split("\n");
+
+    assertTrue(lines[0].contains("Percentile"));
+    assertEquals("1000.000 1.000000000000 1000", lines[lines.length - 3].trim().replaceAll(" +", " "));
+    assertEquals("#[Total count    =         1000]", lines[lines.length - 1]);
+  }
+}
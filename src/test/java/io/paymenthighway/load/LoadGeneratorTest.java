@@ -0,0 +1,97 @@
+package io.paymenthighway.load;
+
+import io.paymenthighway.FormBuilder;
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.security.SecureSigner;
+import org.junit.*;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LoadGeneratorTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private StubServer server;
+  private PaymentAPI paymentAPI;
+  private FormBuilder formBuilder;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    server = new StubServer(new SecureSigner(KEY_ID, SECRET), 0, 4, 0);
+    paymentAPI = new PaymentAPI(server.getUrl(), KEY_ID, SECRET, "test", "test_merchantId");
+    formBuilder = new FormBuilder("POST", KEY_ID, SECRET, "test", "test_merchantId", server.getUrl());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    paymentAPI.close();
+    server.close();
+  }
+
+  @Test
+  public void testWorkloadIsParsed() {
+    Workload workload = Workload.parse("debit=70, status=20,commit=10");
+    assertEquals(Integer.valueOf(70), workload.getWeights().get(Workload.Operation.DEBIT));
+    assertEquals("debit=70,commit=10,status=20", workload.toString());
+
+    Random random = new Random(1);
+    int debits = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (workload.next(random) == Workload.Operation.DEBIT) {
+        debits++;
+      }
+    }
+    assertEquals(7000, debits, 300);
+
+    try {
+      Workload.parse("debit=0");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // no operations
+    }
+  }
+
+  @Test
+  public void testMixRunsAgainstStubServer() throws Exception {
+    Workload workload = Workload.parse("init=1,debit=1,commit=1,status=1,result=1,form=1");
+    LoadReport report = new LoadGenerator(paymentAPI, formBuilder, workload).run(4, 0, 500, 1000);
+
+    for (Workload.Operation operation : Workload.Operation.values()) {
+      assertEquals(operation + " failed with " + report.getLastError(operation), 0, report.getErrors(operation));
+    }
+    assertTrue(report.getCompleted() > 0);
+    assertTrue(report.getDurationMillis() >= 1000);
+  }
+
+  @Test
+  public void testPacedRunMeasuresFromTheDueTime() throws Exception {
+    StubServer slowServer = new StubServer(new SecureSigner(KEY_ID, SECRET), 0, 4, 50);
+    PaymentAPI slowAPI = new PaymentAPI(slowServer.getUrl(), KEY_ID, SECRET, "test", "test_merchantId");
+    try {
+      // one thread can do about 20 requests per second, at 100 per second the operations fall behind
+      LoadReport report = new LoadGenerator(slowAPI, formBuilder, Workload.parse("status=1"))
+          .run(1, 100, 0, 1000);
+
+      LatencyHistogram histogram = report.getHistogram(Workload.Operation.STATUS);
+      assertEquals(100, histogram.getCount());
+      assertTrue(histogram.getMax() > 2000000000L);
+      assertTrue(report.getDurationMillis() > 4000);
+    } finally {
+      slowAPI.close();
+      slowServer.close();
+    }
+  }
+}
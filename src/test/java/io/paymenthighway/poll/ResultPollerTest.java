@@ -0,0 +1,152 @@
+package io.paymenthighway.poll;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.TransactionResultResponse;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ResultPollerTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private final ConcurrentHashMap<String, AtomicInteger> polls = new ConcurrentHashMap<>();
+  private volatile int pendingPolls = 3;
+  private volatile int status = 200;
+  private StubHttpClient httpClient;
+  private PaymentAPI paymentAPI;
+  private ResultPoller poller;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    httpClient = new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        String id = uri.split("/")[2];
+        polls.putIfAbsent(id, new AtomicInteger());
+        int count = polls.get(id).incrementAndGet();
+        if (status != 200) {
+          return new StubHttpClient.Response(status, "{\"result\":{\"code\":900,\"message\":\"Error\"}}");
+        }
+        if (count == 1) {
+          return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+        }
+        String code = count <= pendingPolls ? "250" : "100";
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":" + code + ",\"message\":\"OK\"},"
+            + "\"committed\":false}");
+      }
+    });
+    paymentAPI.setHttpClient(httpClient);
+    poller = new ResultPoller(paymentAPI, 2, 5, 20, 60000);
+    poller.setPendingCodes("250");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    poller.close();
+  }
+
+  @Test
+  public void testPendingTransactionsArePolledUntilFinal() throws Exception {
+    List<PendingResult> results = new ArrayList<>();
+    for (int i = 0; i < 300; i++) {
+      results.add(poller.poll(UUID.randomUUID()));
+    }
+
+    for (PendingResult result : results) {
+      TransactionResultResponse response = result.get(30, TimeUnit.SECONDS);
+      assertEquals("100", response.getResult().getCode());
+      assertEquals(4, result.getAttempts());
+    }
+    assertEquals(0, poller.getPending());
+    assertEquals(1200, poller.getPolls());
+    assertTrue(httpClient.getMaxInFlight() <= 2);
+  }
+
+  @Test
+  public void testTransactionIsPolledOnce() throws Exception {
+    UUID transactionId = UUID.randomUUID();
+    PendingResult result = poller.poll(transactionId);
+    assertSame(result, poller.poll(transactionId));
+
+    assertTrue(result.cancel(false));
+    PendingResult again = poller.poll(transactionId);
+    assertNotSame(result, again);
+    assertEquals("100", again.get(5, TimeUnit.SECONDS).getResult().getCode());
+  }
+
+  @Test
+  public void testListenerIsCalled() throws Exception {
+    final CountDownLatch called = new CountDownLatch(2);
+    ResultListener listener = new ResultListener() {
+      @Override
+      public void onResult(PendingResult result) {
+        called.countDown();
+      }
+    };
+    PendingResult result = poller.poll(UUID.randomUUID());
+    result.addListener(listener);
+    result.get(5, TimeUnit.SECONDS);
+    // a listener added later is called at once, the first one may still be running on the poller thread
+    result.addListener(listener);
+    assertTrue(called.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testClientErrorEndsPolling() throws Exception {
+    status = 400;
+    PendingResult result = poller.poll(UUID.randomUUID());
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertEquals(400, ((HttpResponseException) e.getCause()).getStatusCode());
+    }
+    assertEquals(1, result.getAttempts());
+  }
+
+  @Test
+  public void testPollingTimesOut() throws Exception {
+    poller.close();
+    poller = new ResultPoller(paymentAPI, 2, 5, 20, 100);
+    status = 503;
+    PendingResult result = poller.poll(UUID.randomUUID());
+    try {
+      result.get(5, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TimeoutException);
+      assertTrue(e.getCause().getCause() instanceof HttpResponseException);
+    }
+    assertTrue(result.getAttempts() > 1);
+  }
+}
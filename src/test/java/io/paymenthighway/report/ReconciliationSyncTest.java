@@ -0,0 +1,151 @@
+package io.paymenthighway.report;
+
+import io.paymenthighway.json.JsonParser;
+import io.paymenthighway.model.response.ReconciliationReportResponse;
+import io.paymenthighway.model.response.ReconciliationSettlement;
+import org.junit.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReconciliationSyncTest {
+
+  private File checkpointFile;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    checkpointFile = File.createTempFile("settlements", ".checkpoint");
+    checkpointFile.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    checkpointFile.delete();
+  }
+
+  private static ReconciliationReportResponse report(String... states) {
+    StringBuilder json = new StringBuilder("{\"result\":{\"code\":100,\"message\":\"OK\"},\"settlements\":[");
+    for (int i = 0; i < states.length; i++) {
+      if (i > 0) {
+        json.append(",");
+      }
+      json.append("{\"acquirer_batch_id\":\"").append(i).append("\",\"reference\":\"ref").append(i)
+          .append("\",\"date_processed\":\"2016-06-10T08:00:00Z\",\"status\":{\"state\":\"").append(states[i])
+          .append("\",\"code\":4000},\"net_amount\":100,\"currency\":\"EUR\"}");
+    }
+    json.append("]}");
+    return new JsonParser().mapResponse(json.toString(), ReconciliationReportResponse.class);
+  }
+
+  @Test
+  public void testOnlyChangesAreReturned() throws IOException {
+    try (ReconciliationSync sync = new ReconciliationSync(null, checkpointFile)) {
+      List<ReconciliationSettlement> changes = sync.findChanges(report("ok", "ok", "ok"));
+      assertEquals(3, changes.size());
+
+      sync.markProcessed(changes);
+      assertEquals(0, sync.findChanges(report("ok", "ok", "ok")).size());
+
+      changes = sync.findChanges(report("ok", "failed", "ok", "ok"));
+      assertEquals(2, changes.size());
+      assertEquals("1", changes.get(0).getAcquirerBatchId());
+      assertEquals("3", changes.get(1).getAcquirerBatchId());
+      sync.markProcessed(changes);
+    }
+
+    try (ReconciliationSync sync = new ReconciliationSync(null, checkpointFile)) {
+      assertEquals(0, sync.findChanges(report("ok", "failed", "ok", "ok")).size());
+      assertEquals(1, sync.findChanges(report("ok", "ok", "ok", "ok")).size());
+    }
+  }
+
+  @Test
+  public void testPartiallyWrittenEntryIsDropped() throws IOException {
+    try (ReconciliationSync sync = new ReconciliationSync(null, checkpointFile)) {
+      ReconciliationReportResponse report = report("ok", "ok");
+      sync.markProcessed(sync.findChanges(report));
+    }
+
+    long length = checkpointFile.length();
+    try (FileOutputStream out = new FileOutputStream(checkpointFile, true)) {
+      out.write(new byte[]{0, 5, 'a', 'b'});
+    }
+
+    try (SettlementCheckpoint checkpoint = new SettlementCheckpoint(checkpointFile)) {
+      assertEquals(2, checkpoint.size());
+    }
+    assertEquals(length, checkpointFile.length());
+  }
+
+  @Test
+  public void testMalformedEntryIsDropped() throws IOException {
+    try (ReconciliationSync sync = new ReconciliationSync(null, checkpointFile)) {
+      sync.markProcessed(sync.findChanges(report("ok", "ok")));
+    }
+
+    long length = checkpointFile.length();
+    try (FileOutputStream out = new FileOutputStream(checkpointFile, true)) {
+      // an acquirer batch id that is not valid modified UTF-8
+      out.write(new byte[]{0, 2, (byte) 0xff, (byte) 0xff, 0, 0});
+    }
+
+    try (SettlementCheckpoint checkpoint = new SettlementCheckpoint(checkpointFile)) {
+      assertEquals(2, checkpoint.size());
+    }
+    assertEquals(length, checkpointFile.length());
+  }
+
+  @Test
+  public void testOldSettlementsExpire() throws IOException {
+    try (SettlementCheckpoint checkpoint = new SettlementCheckpoint(checkpointFile)) {
+      for (int i = 0; i < 2000; i++) {
+        checkpoint.record(settlement("old" + i, "2016-01-01T08:00:00Z"));
+      }
+      checkpoint.record(settlement("recent", "2016-06-01T08:00:00Z"));
+      checkpoint.record(settlement("latest", "2016-06-10T08:00:00Z"));
+    }
+    long length = checkpointFile.length();
+
+    try (SettlementCheckpoint checkpoint = new SettlementCheckpoint(checkpointFile, 30)) {
+      assertEquals(2, checkpoint.size());
+      assertEquals(true, checkpoint.isProcessed(settlement("recent", "2016-06-01T08:00:00Z")));
+      assertEquals(false, checkpoint.isProcessed(settlement("old0", "2016-01-01T08:00:00Z")));
+    }
+    assertEquals(true, checkpointFile.length() < length / 100);
+
+    try (SettlementCheckpoint checkpoint = new SettlementCheckpoint(checkpointFile)) {
+      assertEquals(2, checkpoint.size());
+    }
+  }
+
+  @Test
+  public void testSettlementsBeyondTheRetentionAreReturnedAgain() throws IOException {
+    try (ReconciliationSync sync = new ReconciliationSync(null, checkpointFile, 30)) {
+      sync.markProcessed(sync.findChanges(report("ok", "ok")));
+      sync.markProcessed(Collections.singletonList(settlement("latest", "2016-08-01T08:00:00Z")));
+    }
+
+    try (ReconciliationSync sync = new ReconciliationSync(null, checkpointFile, 30)) {
+      assertEquals(2, sync.findChanges(report("ok", "ok")).size());
+    }
+  }
+
+  private static ReconciliationSettlement settlement(String acquirerBatchId, String dateProcessed) {
+    return new JsonParser().mapResponse("{\"acquirer_batch_id\":\"" + acquirerBatchId + "\",\"reference\":\"ref\","
+        + "\"date_processed\":\"" + dateProcessed + "\",\"status\":{\"state\":\"ok\",\"code\":4000}}",
+        ReconciliationSettlement.class);
+  }
+}
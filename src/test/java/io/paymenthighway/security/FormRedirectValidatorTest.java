@@ -0,0 +1,113 @@
+package io.paymenthighway.security;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FormRedirectValidatorTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private SecureSigner signer;
+  private FormRedirectValidator validator;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    signer = new SecureSigner(KEY_ID, SECRET);
+    validator = new FormRedirectValidator(signer);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private Map<String, String[]> signedRedirect(String signatureName) {
+    List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("sph-account", "test"));
+    parameters.add(new BasicNameValuePair("sph-merchant", "test_merchantId"));
+    parameters.add(new BasicNameValuePair("sph-order", "1000123A"));
+    parameters.add(new BasicNameValuePair("sph-request-id", "f47ac10b-58cc-4372-a567-0e02b2c3d479"));
+    parameters.add(new BasicNameValuePair("sph-amount", "990"));
+    parameters.add(new BasicNameValuePair("sph-currency", "EUR"));
+    parameters.add(new BasicNameValuePair("sph-timestamp", "2016-06-10T08:00:00Z"));
+    parameters.add(new BasicNameValuePair("SPH-Transaction-Id", "f23a13b6-5d2c-4b2e-8b4d-1a0d0e6d5f3c"));
+    parameters.add(new BasicNameValuePair("sph-description", "Kärsämäki € 😀"));
+    parameters.add(new BasicNameValuePair("language", "FI"));
+
+    Map<String, String[]> map = new HashMap<>();
+    for (NameValuePair parameter : parameters) {
+      map.put(parameter.getName(), new String[]{parameter.getValue()});
+    }
+    map.put(signatureName, new String[]{signer.createSignature("GET", "", parameters, "")});
+    return map;
+  }
+
+  private boolean validateWithSigner(Map<String, String[]> parameters) {
+    List<NameValuePair> pairs = new ArrayList<>();
+    for (Map.Entry<String, String[]> entry : parameters.entrySet()) {
+      pairs.add(new BasicNameValuePair(entry.getKey(), entry.getValue()[0]));
+    }
+    return signer.validateFormRedirect(pairs);
+  }
+
+  @Test
+  public void testValidRedirect() {
+    Map<String, String[]> parameters = signedRedirect("signature");
+    assertTrue(validateWithSigner(parameters));
+    assertTrue(validator.validate(parameters));
+    assertTrue(new FormRedirectValidator(KEY_ID, SECRET).validate(signedRedirect("Signature")));
+  }
+
+  @Test
+  public void testTamperedRedirect() {
+    Map<String, String[]> parameters = signedRedirect("signature");
+    parameters.put("sph-amount", new String[]{"99"});
+    assertFalse(validateWithSigner(parameters));
+    assertFalse(validator.validate(parameters));
+
+    parameters = signedRedirect("signature");
+    parameters.put("sph-extra", new String[]{"1"});
+    assertFalse(validator.validate(parameters));
+
+    parameters = signedRedirect("signature");
+    parameters.put("language", new String[]{"EN"});
+    assertTrue(validator.validate(parameters));
+  }
+
+  @Test
+  public void testInvalidSignatures() {
+    Map<String, String[]> parameters = signedRedirect("signature");
+    String signature = parameters.get("signature")[0];
+
+    parameters.put("signature", new String[]{signature.toUpperCase()});
+    assertFalse(validator.validate(parameters));
+
+    parameters.put("signature", new String[]{signature.replace(KEY_ID, "otherKey")});
+    assertFalse(validator.validate(parameters));
+
+    parameters.put("signature", new String[]{signature.substring(0, signature.length() - 1)});
+    assertFalse(validator.validate(parameters));
+
+    parameters.remove("signature");
+    assertFalse(validator.validate(parameters));
+
+    assertFalse(new FormRedirectValidator(KEY_ID, "otherSecret").validate(signedRedirect("signature")));
+  }
+}
@@ -0,0 +1,103 @@
+package io.paymenthighway.security;
+
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class KeyRingTest {
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private static List<NameValuePair> signedRedirect(SecureSigner signer) {
+    List<NameValuePair> parameters = new ArrayList<>();
+    parameters.add(new BasicNameValuePair("sph-account", "test"));
+    parameters.add(new BasicNameValuePair("sph-order", "1000123A"));
+    parameters.add(new BasicNameValuePair("sph-request-id", "f47ac10b-58cc-4372-a567-0e02b2c3d479"));
+    parameters.add(new BasicNameValuePair("sph-timestamp", "2016-06-10T08:00:00Z"));
+    parameters.add(new BasicNameValuePair("signature", signer.createSignature("GET", "", parameters, "")));
+    return parameters;
+  }
+
+  private static Map<String, String[]> toMap(List<NameValuePair> parameters) {
+    Map<String, String[]> map = new HashMap<>();
+    for (NameValuePair parameter : parameters) {
+      map.put(parameter.getName(), new String[]{parameter.getValue()});
+    }
+    return map;
+  }
+
+  @Test
+  public void testRotation() {
+    SecureSigner oldKey = new SecureSigner("key-2016", "oldSecret");
+    SecureSigner newKey = new SecureSigner("key-2017", "newSecret");
+
+    KeyRing ring = new KeyRing("key-2016", "oldSecret");
+    assertTrue(ring.validateFormRedirect(signedRedirect(oldKey)));
+    assertFalse(ring.validateFormRedirect(signedRedirect(newKey)));
+
+    ring.addKey("key-2017", "newSecret");
+    assertTrue(ring.validateFormRedirect(signedRedirect(oldKey)));
+    assertTrue(ring.validateFormRedirect(signedRedirect(newKey)));
+    assertTrue(ring.validateFormRedirect(toMap(signedRedirect(oldKey))));
+    assertTrue(ring.validateFormRedirect(toMap(signedRedirect(newKey))));
+    assertEquals("key-2016", ring.getSigner().getSecretKeyId());
+
+    ring.setSigningKey("key-2017");
+    assertEquals("key-2017", ring.getSigner().getSecretKeyId());
+    ring.removeKey("key-2016");
+    assertNull(ring.getSigner("key-2016"));
+    assertFalse(ring.validateFormRedirect(signedRedirect(oldKey)));
+    assertTrue(ring.validateSignature("GET", "", signedRedirect(newKey), ""));
+  }
+
+  @Test
+  public void testWrongSecretWithKnownKeyId() {
+    KeyRing ring = new KeyRing("key-2016", "oldSecret");
+    List<NameValuePair> forged = signedRedirect(new SecureSigner("key-2016", "guess"));
+
+    assertFalse(ring.validateFormRedirect(forged));
+    assertFalse(ring.validateFormRedirect(toMap(forged)));
+  }
+
+  @Test
+  public void testMalformedSignature() {
+    KeyRing ring = new KeyRing("key-2016", "oldSecret");
+    Map<String, String[]> parameters = toMap(signedRedirect(ring.getSigner()));
+
+    parameters.put("signature", new String[]{"SPH1"});
+    assertFalse(ring.validateFormRedirect(parameters));
+    parameters.put("signature", new String[]{"SPH2 key-2016 abc"});
+    assertFalse(ring.validateFormRedirect(parameters));
+    parameters.remove("signature");
+    assertFalse(ring.validateFormRedirect(parameters));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testSigningKeyCanNotBeRemoved() {
+    new KeyRing("key-2016", "oldSecret").removeKey("key-2016");
+  }
+}
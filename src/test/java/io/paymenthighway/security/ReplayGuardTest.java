@@ -0,0 +1,139 @@
+package io.paymenthighway.security;
+
+import io.paymenthighway.PaymentHighwayUtility;
+import io.paymenthighway.clock.CachedUtcClock;
+import io.paymenthighway.clock.ManualUtcClock;
+import org.junit.*;
+
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReplayGuardTest {
+
+  private static final long NOW = 1465545600000L; // 2016-06-10T08:00:00Z
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private static String timestamp(long millis) {
+    return CachedUtcClock.format(millis / 1000);
+  }
+
+  @Test
+  public void testParseTimestamp() throws Exception {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    Random random = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      long millis = (random.nextLong() & Long.MAX_VALUE) % 4102444800000L;
+      String timestamp = timestamp(millis);
+      assertEquals(timestamp, format.parse(timestamp).getTime() / 1000, ReplayGuard.parseTimestamp(timestamp));
+    }
+    assertEquals(Long.MIN_VALUE, ReplayGuard.parseTimestamp("2016-06-10 08:00:00Z"));
+    assertEquals(Long.MIN_VALUE, ReplayGuard.parseTimestamp("2016-13-10T08:00:00Z"));
+    assertEquals(Long.MIN_VALUE, ReplayGuard.parseTimestamp("2016-06-10T08:0a:00Z"));
+    assertEquals(Long.MIN_VALUE, ReplayGuard.parseTimestamp(null));
+  }
+
+  @Test
+  public void testReplayIsRejected() {
+    ManualUtcClock clock = new ManualUtcClock(NOW);
+    ReplayGuard guard = new ReplayGuard(300, 100, clock);
+    String requestId = UUID.randomUUID().toString();
+
+    assertEquals(ReplayGuard.Result.ACCEPTED, guard.check(requestId, timestamp(NOW - 5000)));
+    clock.advance(1000);
+    assertEquals(ReplayGuard.Result.REPLAYED, guard.check(requestId, timestamp(NOW - 5000)));
+    assertEquals(ReplayGuard.Result.ACCEPTED, guard.check(UUID.randomUUID().toString(), timestamp(NOW)));
+  }
+
+  @Test
+  public void testWindow() {
+    ManualUtcClock clock = new ManualUtcClock(NOW);
+    ReplayGuard guard = new ReplayGuard(300, 100, clock);
+
+    assertEquals(ReplayGuard.Result.EXPIRED, guard.check("a", timestamp(NOW - 301000)));
+    assertEquals(ReplayGuard.Result.EXPIRED, guard.check("b", timestamp(NOW + 301000)));
+    assertEquals(ReplayGuard.Result.ACCEPTED, guard.check("c", timestamp(NOW - 300000)));
+    assertEquals(ReplayGuard.Result.INVALID, guard.check("d", "yesterday"));
+    assertEquals(ReplayGuard.Result.INVALID, guard.check(null, timestamp(NOW)));
+
+    // the slices are reused as time passes
+    for (long t = NOW; t < NOW + 3600000; t += 1000) {
+      clock.setTimeMillis(t);
+      assertEquals(ReplayGuard.Result.ACCEPTED, guard.check("id-" + t, timestamp(t - 2000)));
+      clock.setTimeMillis(t + 1000);
+      assertEquals(ReplayGuard.Result.REPLAYED, guard.check("id-" + t, timestamp(t - 2000)));
+    }
+  }
+
+  @Test
+  public void testParameterMap() {
+    ReplayGuard guard = new ReplayGuard(300, 100);
+    Map<String, String[]> parameters = new HashMap<>();
+    parameters.put("sph-request-id", new String[]{UUID.randomUUID().toString()});
+    parameters.put("sph-timestamp", new String[]{PaymentHighwayUtility.getUtcTimestamp()});
+
+    assertEquals(ReplayGuard.Result.ACCEPTED, guard.check(parameters));
+    assertEquals(ReplayGuard.Result.REPLAYED, guard.check(parameters));
+    assertEquals(ReplayGuard.Result.INVALID, guard.check(new HashMap<String, String[]>()));
+  }
+
+  @Test
+  public void testCapacity() {
+    ReplayGuard guard = new ReplayGuard(8, 16, new ManualUtcClock(NOW));
+    int accepted = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (guard.check("id-" + i, timestamp(NOW)) == ReplayGuard.Result.ACCEPTED) {
+        accepted++;
+      }
+    }
+    assertEquals(true, accepted >= 16 && accepted < 1000);
+  }
+
+  @Test
+  public void testConcurrentChecks() throws Exception {
+    final ReplayGuard guard = new ReplayGuard(60, 100000, new ManualUtcClock(NOW));
+    final List<String> requestIds = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      requestIds.add(UUID.randomUUID().toString());
+    }
+    final String timestamp = timestamp(NOW);
+    final AtomicInteger accepted = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(4);
+
+    for (int t = 0; t < 4; t++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (String requestId : requestIds) {
+            if (guard.check(requestId, timestamp) == ReplayGuard.Result.ACCEPTED) {
+              accepted.incrementAndGet();
+            }
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+
+    assertEquals(requestIds.size(), accepted.get());
+  }
+}
@@ -0,0 +1,93 @@
+package io.paymenthighway.security;
+
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class SigningTemplateTest {
+
+  private SecureSigner signer;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    signer = new SecureSigner("testKey", "testSecret");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  private static String randomKeyValues(Random random) {
+    String[] values = {"990", "EUR", "https://example.com/success?a=1&b=2", "Kärsämäki € 😀", " spaced ", ""};
+    StringBuilder keyValues = new StringBuilder();
+    int count = random.nextInt(12);
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        keyValues.append('\n');
+      }
+      keyValues.append("sph-field-").append(i).append(':').append(values[random.nextInt(values.length)]);
+    }
+    // longer than the encoder buffer
+    if (random.nextBoolean()) {
+      for (int i = 0; i < 100; i++) {
+        keyValues.append("ä");
+      }
+    }
+    return keyValues.toString();
+  }
+
+  @Test
+  public void testSameSignatureAsSecureSigner() {
+    SigningTemplate template = signer.getTemplate("POST", "/form/view/pay_with_card");
+    Random random = new Random(7);
+    for (int i = 0; i < 200; i++) {
+      String keyValues = randomKeyValues(random);
+      String body = random.nextBoolean() ? "" : " {\"amount\":990} ";
+      assertEquals(signer.createSignature("POST", "/form/view/pay_with_card", keyValues, body),
+          template.createSignature(keyValues, body));
+    }
+  }
+
+  @Test
+  public void testTemplatesAreCached() {
+    assertSame(signer.getTemplate("POST", "/form/view/add_card"), signer.getTemplate("POST", "/form/view/add_card"));
+  }
+
+  @Test
+  public void testConcurrentSigning() throws Exception {
+    final SigningTemplate template = signer.getTemplate("GET", "/form/view/mobilepay");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<String[]>> results = new ArrayList<>();
+      for (int i = 0; i < 1000; i++) {
+        final String keyValues = "sph-order:" + i;
+        results.add(executor.submit(new Callable<String[]>() {
+          @Override
+          public String[] call() {
+            return new String[]{keyValues, template.createSignature(keyValues, "")};
+          }
+        }));
+      }
+      for (Future<String[]> result : results) {
+        String[] signed = result.get();
+        assertEquals(signer.createSignature("GET", "/form/view/mobilepay", signed[0], ""), signed[1]);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}
@@ -0,0 +1,166 @@
+package io.paymenthighway.stream;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.Settlement;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonArrayPublisherTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private volatile int status = 200;
+  private StubHttpClient httpClient;
+  private PaymentAPI paymentAPI;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    httpClient = new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        if (status != 200) {
+          return new StubHttpClient.Response(status, "{\"result\":{\"code\":900,\"message\":\"Error\"}}");
+        }
+        StringBuilder json = new StringBuilder("{\"settlements\":[");
+        for (int i = 0; i < 5; i++) {
+          json.append(i > 0 ? "," : "").append("{\"id\":\"").append(UUID.randomUUID())
+              .append("\",\"batch\":\"00000").append(i).append("\",\"unknown\":{\"nested\":[1,2]},\"transactions\":[]}");
+        }
+        json.append(",null],\"result\":{\"code\":100,\"message\":\"OK\"}}");
+        return new StubHttpClient.Response(200, json.toString());
+      }
+    });
+    paymentAPI.setHttpClient(httpClient);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+  }
+
+  @Test
+  public void testSettlementsFollowDemand() throws Exception {
+    RecordingSubscriber<Settlement> subscriber = new RecordingSubscriber<>();
+    Publisher<Settlement> publisher = paymentAPI.publishDailyReport("20160610");
+    publisher.subscribe(subscriber);
+    assertEquals(0, httpClient.getRequests());
+
+    subscriber.subscription.request(2);
+    assertEquals(2, subscriber.items.size());
+    assertEquals("000001", subscriber.items.get(1).getBatch());
+    assertFalse(subscriber.completed);
+
+    subscriber.subscription.request(Long.MAX_VALUE);
+    assertEquals(5, subscriber.items.size());
+    assertTrue(subscriber.completed);
+    assertNull(subscriber.error);
+    assertEquals(1, httpClient.getRequests());
+  }
+
+  @Test
+  public void testRequestFromOnNextDoesNotRecurse() throws Exception {
+    final int[] depth = {0, 0};
+    RecordingSubscriber<Settlement> subscriber = new RecordingSubscriber<Settlement>() {
+      @Override
+      public void onNext(Settlement item) {
+        super.onNext(item);
+        depth[0]++;
+        depth[1] = Math.max(depth[1], depth[0]);
+        subscription.request(1);
+        depth[0]--;
+      }
+    };
+    paymentAPI.publishDailyReport("20160610").subscribe(subscriber);
+    subscriber.subscription.request(1);
+
+    assertEquals(5, subscriber.items.size());
+    assertEquals(1, depth[1]);
+    assertTrue(subscriber.completed);
+  }
+
+  @Test
+  public void testCancelStopsItems() throws Exception {
+    RecordingSubscriber<Settlement> subscriber = new RecordingSubscriber<Settlement>() {
+      @Override
+      public void onNext(Settlement item) {
+        super.onNext(item);
+        subscription.cancel();
+      }
+    };
+    paymentAPI.publishDailyReport("20160610").subscribe(subscriber);
+    subscriber.subscription.request(10);
+
+    assertEquals(1, subscriber.items.size());
+    assertFalse(subscriber.completed);
+  }
+
+  @Test
+  public void testFailedFetchIsSignalled() throws Exception {
+    status = 500;
+    RecordingSubscriber<Settlement> subscriber = new RecordingSubscriber<>();
+    paymentAPI.publishDailyReport("20160610").subscribe(subscriber);
+    subscriber.subscription.request(1);
+
+    assertEquals(500, ((HttpResponseException) subscriber.error).getStatusCode());
+    assertEquals(0, subscriber.items.size());
+  }
+
+  @Test
+  public void testInvalidRequestIsSignalled() throws Exception {
+    RecordingSubscriber<Settlement> subscriber = new RecordingSubscriber<>();
+    paymentAPI.publishDailyReport("20160610").subscribe(subscriber);
+    subscriber.subscription.request(0);
+
+    assertTrue(subscriber.error instanceof IllegalArgumentException);
+    assertEquals(0, httpClient.getRequests());
+  }
+
+  static class RecordingSubscriber<T> implements Subscriber<T> {
+    final List<T> items = new ArrayList<>();
+    Subscription subscription;
+    Throwable error;
+    boolean completed;
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(T item) {
+      items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completed = true;
+    }
+  }
+}
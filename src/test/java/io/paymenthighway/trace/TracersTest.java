@@ -0,0 +1,173 @@
+package io.paymenthighway.trace;
+
+import io.paymenthighway.PaymentAPI;
+import io.paymenthighway.connect.StubHttpClient;
+import io.paymenthighway.model.response.TransactionStatusResponse;
+import io.paymenthighway.security.FormRedirectValidator;
+import io.paymenthighway.security.SecureSigner;
+import org.apache.http.client.HttpResponseException;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TracersTest {
+
+  private static final String KEY_ID = "testKey";
+  private static final String SECRET = "testSecret";
+
+  private final List<String> events = new ArrayList<>();
+  private PaymentAPI paymentAPI;
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    paymentAPI = new PaymentAPI("https://v1-hub-staging.sph-test-solinor.com", KEY_ID, SECRET, "test",
+        "test_merchantId");
+    paymentAPI.setHttpClient(new StubHttpClient(new SecureSigner(KEY_ID, SECRET), new StubHttpClient.Handler() {
+      @Override
+      public StubHttpClient.Response handle(String method, String uri, String body) throws IOException {
+        if (uri.contains("00000000-0000-0000-0000-000000000000")) {
+          return new StubHttpClient.Response(404, "{\"result\":{\"code\":900,\"message\":\"Not found\"}}");
+        }
+        return new StubHttpClient.Response(200, "{\"result\":{\"code\":100,\"message\":\"OK\"},\"transaction\":"
+            + "{\"id\":\"" + uri.split("/")[2] + "\",\"status\":{\"state\":\"ok\",\"code\":\"4000\"}}}");
+      }
+    }));
+    Tracers.setTracer(new RecordingTracer());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Tracers.setTracer(null);
+  }
+
+  @Test
+  public void testCallIsTracedThroughEachPhase() throws Exception {
+    UUID transactionId = UUID.randomUUID();
+    TransactionStatusResponse response = paymentAPI.transactionStatus(transactionId);
+    assertEquals(transactionId, response.getTransaction().getId());
+
+    String uri = "/transaction/" + transactionId;
+    assertEquals("call GET " + uri, events.get(0));
+    assertEquals("signing GET " + uri, events.get(1));
+    assertEquals("end", events.get(2));
+    assertEquals("signed 0", events.get(3));
+    // the stub signs its response with a signer of its own
+    assertEquals("signing GET " + uri, events.get(4));
+    assertEquals("end", events.get(5));
+    assertTrue(events.get(6).startsWith("responded 200 "));
+    assertEquals("signing GET " + uri, events.get(7));
+    assertEquals("end", events.get(8));
+    assertEquals("verified", events.get(9));
+    assertEquals("end", events.get(10));
+    assertEquals("decoding TransactionStatusResponse", events.get(11));
+    assertEquals("decoded 100", events.get(12));
+    assertEquals("end", events.get(13));
+    assertEquals(14, events.size());
+  }
+
+  @Test
+  public void testFailedCallIsTraced() throws Exception {
+    try {
+      paymentAPI.transactionStatus(UUID.fromString("00000000-0000-0000-0000-000000000000"));
+      fail();
+    } catch (HttpResponseException e) {
+      assertEquals(404, e.getStatusCode());
+    }
+
+    assertTrue(events.get(events.size() - 2).startsWith("failed " + HttpResponseException.class.getName()));
+    assertEquals("end", events.get(events.size() - 1));
+  }
+
+  @Test
+  public void testFormSigningAndRedirectValidationAreTraced() throws Exception {
+    SecureSigner signer = new SecureSigner(KEY_ID, SECRET);
+    String signature = signer.getTemplate("POST", "/form/view/pay_with_card")
+        .createSignature("sph-account:test", "");
+
+    Map<String, String[]> parameters = new HashMap<>();
+    parameters.put("sph-account", new String[]{"test"});
+    parameters.put("signature", new String[]{signature});
+    new FormRedirectValidator(signer).validate(parameters);
+
+    assertEquals(Arrays.asList("signing POST /form/view/pay_with_card", "end", "signing GET ", "end"), events);
+  }
+
+  @Test
+  public void testNullTracerRecordsNothing() throws Exception {
+    Tracers.setTracer(null);
+    assertTrue(Tracers.getTracer() instanceof NoopTracer);
+
+    paymentAPI.transactionStatus(UUID.randomUUID());
+    assertTrue(events.isEmpty());
+  }
+
+  private class RecordingTracer implements Tracer {
+    @Override
+    public CallTrace startCall(String method, String uri) {
+      events.add("call " + method + " " + uri);
+      return new RecordingTrace();
+    }
+
+    @Override
+    public Trace startSigning(String method, String uri, int bodyLength) {
+      events.add("signing " + method + " " + uri);
+      return new RecordingTrace();
+    }
+
+    @Override
+    public DecodeTrace startDecoding(Class<?> type, int length) {
+      events.add("decoding " + type.getSimpleName());
+      return new RecordingTrace();
+    }
+  }
+
+  private class RecordingTrace implements CallTrace, DecodeTrace {
+    @Override
+    public void signed(int requestBytes) {
+      events.add("signed " + requestBytes);
+    }
+
+    @Override
+    public void responded(int status, int responseBytes) {
+      events.add("responded " + status + " " + responseBytes);
+    }
+
+    @Override
+    public void verified() {
+      events.add("verified");
+    }
+
+    @Override
+    public void failed(Throwable error) {
+      events.add("failed " + error);
+    }
+
+    @Override
+    public void decoded(String resultCode) {
+      events.add("decoded " + resultCode);
+    }
+
+    @Override
+    public void end() {
+      events.add("end");
+    }
+  }
+}